@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+/**
+ * Batched conversions between packed rgb pixels (0xrrggbb) and planar hue, saturation and brightness arrays.
+ * <p>
+ * The conversions compute the same float expressions of {@link java.awt.Color#RGBtoHSB} and
+ * {@link java.awt.Color#HSBtoRGB} on whole rows, with the branches replaced by selections
+ * so the loops can be auto-vectorized.
+ * If the module jdk.incubator.vector is available the rows are converted with the Vector API
+ * (see {@link ConvolutionEngine#VECTOR_ENABLED}).
+ * </p>
+ */
+public final class ColorConversions {
+
+    /**
+     * Converts hsb components to packed rgb pixels
+     *
+     * @param hue        the hue components
+     * @param saturation the saturation components
+     * @param brightness the brightness components
+     * @param hsbOffset  the offset of the first hsb components
+     * @param rgb        the rgb pixels
+     * @param rgbOffset  the offset of the first rgb pixel
+     * @param n          the number of pixels
+     */
+    public static void hsbToRgb(float[] hue, float[] saturation, float[] brightness, int hsbOffset, int[] rgb, int rgbOffset, int n) {
+        if (ConvolutionEngine.VECTOR_ENABLED) {
+            VectorColorConversions.hsbToRgb(hue, saturation, brightness, hsbOffset, rgb, rgbOffset, n);
+        } else {
+            hsbToRgbScalar(hue, saturation, brightness, hsbOffset, rgb, rgbOffset, n, 0);
+        }
+    }
+
+    /**
+     * Converts hsb components to packed rgb pixels without the Vector API
+     *
+     * @param hue        the hue components
+     * @param saturation the saturation components
+     * @param brightness the brightness components
+     * @param hsbOffset  the offset of the first hsb components
+     * @param rgb        the rgb pixels
+     * @param rgbOffset  the offset of the first rgb pixel
+     * @param n          the number of pixels
+     * @param from       the first pixel to convert
+     */
+    static void hsbToRgbScalar(float[] hue, float[] saturation, float[] brightness, int hsbOffset, int[] rgb, int rgbOffset, int n, int from) {
+        for (int i = from; i < n; i++) {
+            float h0 = hue[hsbOffset + i];
+            float s = saturation[hsbOffset + i];
+            float v = brightness[hsbOffset + i];
+            float h = (h0 - (float) Math.floor(h0)) * 6f;
+            float f = h - (float) Math.floor(h);
+            float p = v * (1f - s);
+            float q = v * (1f - s * f);
+            float t = v * (1f - (s * (1f - f)));
+            // The saturation 0 produces p = q = t = v as the gray case of Color.HSBtoRGB
+            int sector = Math.min((int) h, 5);
+            float r = sector == 0 || sector == 5 ? v : sector == 1 ? q : sector == 4 ? t : p;
+            float g = sector == 1 || sector == 2 ? v : sector == 0 ? t : sector == 3 ? q : p;
+            float b = sector == 3 || sector == 4 ? v : sector == 2 ? t : sector == 5 ? q : p;
+            rgb[rgbOffset + i] = ((int) (r * 255f + 0.5f) << 16)
+                    | ((int) (g * 255f + 0.5f) << 8)
+                    | (int) (b * 255f + 0.5f);
+        }
+    }
+
+    /**
+     * Converts packed rgb pixels to hsb components
+     *
+     * @param rgb        the rgb pixels
+     * @param rgbOffset  the offset of the first rgb pixel
+     * @param hue        the hue components
+     * @param saturation the saturation components
+     * @param brightness the brightness components
+     * @param hsbOffset  the offset of the first hsb components
+     * @param n          the number of pixels
+     */
+    public static void rgbToHsb(int[] rgb, int rgbOffset, float[] hue, float[] saturation, float[] brightness, int hsbOffset, int n) {
+        if (ConvolutionEngine.VECTOR_ENABLED) {
+            VectorColorConversions.rgbToHsb(rgb, rgbOffset, hue, saturation, brightness, hsbOffset, n);
+        } else {
+            rgbToHsbScalar(rgb, rgbOffset, hue, saturation, brightness, hsbOffset, n, 0);
+        }
+    }
+
+    /**
+     * Converts packed rgb pixels to hsb components without the Vector API
+     *
+     * @param rgb        the rgb pixels
+     * @param rgbOffset  the offset of the first rgb pixel
+     * @param hue        the hue components
+     * @param saturation the saturation components
+     * @param brightness the brightness components
+     * @param hsbOffset  the offset of the first hsb components
+     * @param n          the number of pixels
+     * @param from       the first pixel to convert
+     */
+    static void rgbToHsbScalar(int[] rgb, int rgbOffset, float[] hue, float[] saturation, float[] brightness, int hsbOffset, int n, int from) {
+        for (int i = from; i < n; i++) {
+            int px = rgb[rgbOffset + i];
+            int r = (px >> 16) & 0xff;
+            int g = (px >> 8) & 0xff;
+            int b = px & 0xff;
+            int cmax = Math.max(Math.max(r, g), b);
+            int cmin = Math.min(Math.min(r, g), b);
+            float delta = cmax - cmin;
+            float s = cmax != 0 ? delta / cmax : 0;
+            float redc = (cmax - r) / delta;
+            float greenc = (cmax - g) / delta;
+            float bluec = (cmax - b) / delta;
+            float h = r == cmax ? bluec - greenc
+                    : g == cmax ? 2f + redc - bluec
+                    : 4f + greenc - redc;
+            h = h / 6f;
+            h = h < 0 ? h + 1f : h;
+            hue[hsbOffset + i] = s == 0 ? 0 : h;
+            saturation[hsbOffset + i] = s;
+            brightness[hsbOffset + i] = cmax / 255f;
+        }
+    }
+
+    /**
+     * Creates the conversions
+     */
+    private ColorConversions() {
+    }
+}
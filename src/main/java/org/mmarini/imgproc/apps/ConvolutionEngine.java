@@ -0,0 +1,409 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.mmarini.imgproc.apps.ImageProcessors.Convolution;
+import org.mmarini.imgproc.apps.TiledExecutor.TileTask;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Computes the convolution of output tiles choosing the loop by the kernel descriptor (see {@link Kernel}).
+ * The kernels that are not {@link Kernel} run the general color mix loop.
+ * The pixel (tx, ty) of the output image is the convolution of the window at (tx, ty) of the source image.
+ */
+public interface ConvolutionEngine {
+    /**
+     * True if the scalar-diagonal kernels are computed with the Vector API (see {@link VectorConvolution}).
+     * It requires the module jdk.incubator.vector (JVM option --add-modules jdk.incubator.vector)
+     * and can be disabled by the system property imgproc.vector=false
+     */
+    boolean VECTOR_ENABLED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !"false".equals(System.getProperty("imgproc.vector"));
+
+    /**
+     * Returns the tile task computing the convolution
+     *
+     * @param in             the source image
+     * @param out            the output image
+     * @param ww             the window width
+     * @param wh             the window height
+     * @param matrixSupplier the supplier of color matrix
+     */
+    static TileTask create(FloatImage in, FloatImage out, int ww, int wh, Function<Convolution, float[][]> matrixSupplier) {
+        Convolution conv = new Convolution();
+        conv.width = in.width();
+        conv.height = in.height();
+        conv.ww = ww;
+        conv.wh = wh;
+        if (matrixSupplier instanceof LucriKernelBank bank) {
+            // The region of the bank origin must be inside the image of the bank
+            if (bank.originX() < 0 || bank.originY() < 0
+                    || bank.originX() + in.width() > bank.width() || bank.originY() + in.height() > bank.height()
+                    || bank.size() != ww || bank.size() != wh) {
+                throw new IllegalArgumentException("Kernel bank does not match the image and window sizes");
+            }
+            return VECTOR_ENABLED
+                    ? VectorConvolution.bank(in, out, bank)
+                    : (x0, y0, x1, y1) -> bank(in, out, bank, x0, y0, x1, y1);
+        }
+        if (matrixSupplier instanceof Kernel kernel && kernel.isShiftInvariant()) {
+            Taps taps = Taps.create(conv, kernel);
+            if (!(kernel instanceof ScalarKernel)) {
+                return (x0, y0, x1, y1) -> invariantMatrix(in, out, taps, x0, y0, x1, y1);
+            }
+            return VECTOR_ENABLED
+                    ? VectorConvolution.invariant(in, out, taps)
+                    : (x0, y0, x1, y1) -> invariantScalar(in, out, taps, x0, y0, x1, y1);
+        }
+        if (matrixSupplier instanceof ScalarKernel kernel) {
+            return kernel.isSparse()
+                    ? (x0, y0, x1, y1) -> sparseScalar(in, out, conv, kernel, x0, y0, x1, y1)
+                    : (x0, y0, x1, y1) -> scalar(in, out, conv, kernel, x0, y0, x1, y1);
+        }
+        return (x0, y0, x1, y1) -> matrix(in, out, conv, matrixSupplier, x0, y0, x1, y1);
+    }
+
+    /**
+     * Computes the convolution with the weight tables of the kernel bank skipping the zero taps
+     */
+    private static void bank(FloatImage in, FloatImage out, LucriKernelBank bank, int x0, int y0, int x1, int y1) {
+        int size = bank.size();
+        int w = bank.width();
+        int ox = bank.originX();
+        int oy = bank.originY();
+        float[] weights = bank.weights();
+        int[] levelOffsets = bank.levelOffsets();
+        float[] red = in.red();
+        float[] green = in.green();
+        float[] blue = in.blue();
+        float[] outRed = out.red();
+        float[] outGreen = out.green();
+        float[] outBlue = out.blue();
+        for (int ty = y0; ty < y1; ty++) {
+            for (int tx = x0; tx < x1; tx++) {
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int dy = 0; dy < size; dy++) {
+                    int sy = ty + dy;
+                    int tap = dy * size;
+                    int row = in.index(tx, sy);
+                    for (int dx = 0; dx < size; dx++) {
+                        float wgt = weights[levelOffsets[(sy + oy) * w + ox + tx + dx] + tap + dx];
+                        if (wgt != 0) {
+                            int i = row + dx;
+                            r += red[i] * wgt;
+                            g += green[i] * wgt;
+                            b += blue[i] * wgt;
+                        }
+                    }
+                }
+                int o = out.index(tx, ty);
+                outRed[o] = r;
+                outGreen[o] = g;
+                outBlue[o] = b;
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution with precomputed color matrices
+     */
+    private static void invariantMatrix(FloatImage in, FloatImage out, Taps taps, int x0, int y0, int x1, int y1) {
+        int n = taps.dx.length;
+        int[] offsets = taps.offsets(in.stride());
+        float[] ms = taps.weights;
+        float[] red = in.red();
+        float[] green = in.green();
+        float[] blue = in.blue();
+        float[] outRed = out.red();
+        float[] outGreen = out.green();
+        float[] outBlue = out.blue();
+        for (int ty = y0; ty < y1; ty++) {
+            for (int tx = x0; tx < x1; tx++) {
+                int base = in.index(tx, ty);
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int i = 0; i < n; i++) {
+                    int k = base + offsets[i];
+                    float sr = red[k];
+                    float sg = green[k];
+                    float sb = blue[k];
+                    int j = i * 9;
+                    r += sr * ms[j] + sg * ms[j + 3] + sb * ms[j + 6];
+                    g += sr * ms[j + 1] + sg * ms[j + 4] + sb * ms[j + 7];
+                    b += sr * ms[j + 2] + sg * ms[j + 5] + sb * ms[j + 8];
+                }
+                int o = out.index(tx, ty);
+                outRed[o] = r;
+                outGreen[o] = g;
+                outBlue[o] = b;
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution with precomputed scalar weights
+     */
+    private static void invariantScalar(FloatImage in, FloatImage out, Taps taps, int x0, int y0, int x1, int y1) {
+        int n = taps.dx.length;
+        int[] offsets = taps.offsets(in.stride());
+        float[] ws = taps.weights;
+        float[] red = in.red();
+        float[] green = in.green();
+        float[] blue = in.blue();
+        float[] outRed = out.red();
+        float[] outGreen = out.green();
+        float[] outBlue = out.blue();
+        for (int ty = y0; ty < y1; ty++) {
+            for (int tx = x0; tx < x1; tx++) {
+                int base = in.index(tx, ty);
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int i = 0; i < n; i++) {
+                    int k = base + offsets[i];
+                    float w = ws[i];
+                    r += red[k] * w;
+                    g += green[k] * w;
+                    b += blue[k] * w;
+                }
+                int o = out.index(tx, ty);
+                outRed[o] = r;
+                outGreen[o] = g;
+                outBlue[o] = b;
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution with the general color mix skipping the zero taps
+     */
+    private static void matrix(FloatImage in, FloatImage out, Convolution conv, Function<Convolution, float[][]> matrixSupplier,
+                               int x0, int y0, int x1, int y1) {
+        int ww = conv.ww;
+        int wh = conv.wh;
+        float[] red = in.red();
+        float[] green = in.green();
+        float[] blue = in.blue();
+        float[] outRed = out.red();
+        float[] outGreen = out.green();
+        float[] outBlue = out.blue();
+        for (int ty = y0; ty < y1; ty++) {
+            conv.target.y = ty + wh / 2;
+            for (int tx = x0; tx < x1; tx++) {
+                conv.target.x = tx + ww / 2;
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int sy = ty; sy < ty + wh; sy++) {
+                    conv.source.y = sy;
+                    for (int sx = tx; sx < tx + ww; sx++) {
+                        conv.source.x = sx;
+                        float[][] m = matrixSupplier.apply(conv);
+                        if (m != ImageProcessors.zeros) {
+                            int k = in.index(sx, sy);
+                            float sr = red[k];
+                            float sg = green[k];
+                            float sb = blue[k];
+                            r += sr * m[0][0] + sg * m[1][0] + sb * m[2][0];
+                            g += sr * m[0][1] + sg * m[1][1] + sb * m[2][1];
+                            b += sr * m[0][2] + sg * m[1][2] + sb * m[2][2];
+                        }
+                    }
+                }
+                int o = out.index(tx, ty);
+                outRed[o] = r;
+                outGreen[o] = g;
+                outBlue[o] = b;
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution with scalar weights
+     */
+    private static void scalar(FloatImage in, FloatImage out, Convolution conv, ScalarKernel kernel,
+                               int x0, int y0, int x1, int y1) {
+        int ww = conv.ww;
+        int wh = conv.wh;
+        float[] red = in.red();
+        float[] green = in.green();
+        float[] blue = in.blue();
+        float[] outRed = out.red();
+        float[] outGreen = out.green();
+        float[] outBlue = out.blue();
+        for (int ty = y0; ty < y1; ty++) {
+            conv.target.y = ty + wh / 2;
+            for (int tx = x0; tx < x1; tx++) {
+                conv.target.x = tx + ww / 2;
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int sy = ty; sy < ty + wh; sy++) {
+                    conv.source.y = sy;
+                    for (int sx = tx; sx < tx + ww; sx++) {
+                        conv.source.x = sx;
+                        float w = kernel.weight(conv);
+                        int k = in.index(sx, sy);
+                        r += red[k] * w;
+                        g += green[k] * w;
+                        b += blue[k] * w;
+                    }
+                }
+                int o = out.index(tx, ty);
+                outRed[o] = r;
+                outGreen[o] = g;
+                outBlue[o] = b;
+            }
+        }
+    }
+
+    /**
+     * Computes the convolution with scalar weights skipping the zero taps
+     */
+    private static void sparseScalar(FloatImage in, FloatImage out, Convolution conv, ScalarKernel kernel,
+                                     int x0, int y0, int x1, int y1) {
+        int ww = conv.ww;
+        int wh = conv.wh;
+        float[] red = in.red();
+        float[] green = in.green();
+        float[] blue = in.blue();
+        float[] outRed = out.red();
+        float[] outGreen = out.green();
+        float[] outBlue = out.blue();
+        for (int ty = y0; ty < y1; ty++) {
+            conv.target.y = ty + wh / 2;
+            for (int tx = x0; tx < x1; tx++) {
+                conv.target.x = tx + ww / 2;
+                float r = 0;
+                float g = 0;
+                float b = 0;
+                for (int sy = ty; sy < ty + wh; sy++) {
+                    conv.source.y = sy;
+                    for (int sx = tx; sx < tx + ww; sx++) {
+                        conv.source.x = sx;
+                        float w = kernel.weight(conv);
+                        if (w != 0) {
+                            int k = in.index(sx, sy);
+                            r += red[k] * w;
+                            g += green[k] * w;
+                            b += blue[k] * w;
+                        }
+                    }
+                }
+                int o = out.index(tx, ty);
+                outRed[o] = r;
+                outGreen[o] = g;
+                outBlue[o] = b;
+            }
+        }
+    }
+
+    /**
+     * The non-zero taps of a shift-invariant kernel
+     */
+    class Taps {
+        /**
+         * Returns the non-zero taps of the shift-invariant kernel
+         *
+         * @param conv   the convolution context
+         * @param kernel the kernel
+         */
+        static Taps create(Convolution conv, Kernel kernel) {
+            int ww = conv.ww;
+            int wh = conv.wh;
+            ScalarKernel scalar = kernel instanceof ScalarKernel k ? k : null;
+            int stride = scalar != null ? 1 : 9;
+            int[] dx = new int[ww * wh];
+            int[] dy = new int[ww * wh];
+            float[] weights = new float[ww * wh * stride];
+            int n = 0;
+            conv.target.x = ww / 2;
+            conv.target.y = wh / 2;
+            for (int sy = 0; sy < wh; sy++) {
+                conv.source.y = sy;
+                for (int sx = 0; sx < ww; sx++) {
+                    conv.source.x = sx;
+                    boolean zero = true;
+                    if (scalar != null) {
+                        float w = scalar.weight(conv);
+                        weights[n] = w;
+                        zero = w == 0;
+                    } else {
+                        float[][] m = kernel.apply(conv);
+                        for (int i = 0; i < 3; i++) {
+                            for (int j = 0; j < 3; j++) {
+                                weights[n * 9 + i * 3 + j] = m[i][j];
+                                zero &= m[i][j] == 0;
+                            }
+                        }
+                    }
+                    if (!zero) {
+                        dx[n] = sx;
+                        dy[n] = sy;
+                        n++;
+                    }
+                }
+            }
+            return new Taps(Arrays.copyOf(dx, n), Arrays.copyOf(dy, n),
+                    Arrays.copyOf(weights, n * stride));
+        }
+
+        final int[] dx;
+        final int[] dy;
+        final float[] weights;
+
+        /**
+         * Creates the taps
+         *
+         * @param dx      the x offsets
+         * @param dy      the y offsets
+         * @param weights the weights (scalar or 3x3 row-major matrix per tap)
+         */
+        Taps(int[] dx, int[] dy, float[] weights) {
+            this.dx = dx;
+            this.dy = dy;
+            this.weights = weights;
+        }
+
+        /**
+         * Returns the index offsets of the taps in planes with the given stride
+         *
+         * @param stride the row stride
+         */
+        int[] offsets(int stride) {
+            int[] result = new int[dx.length];
+            for (int i = 0; i < dx.length; i++) {
+                result[i] = dy[i] * stride + dx[i];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.mmarini.imgproc.apps.ImageProcessors.Convolution;
+
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static java.lang.Math.*;
+
+/**
+ * Convolution of shift-invariant kernels computed by FFT.
+ * <p>
+ * The image is split in blocks that are transformed with a radix-2 FFT of fixed size,
+ * multiplied by the kernel spectra and added back to the output (overlap-add),
+ * so the memory of the transforms does not depend on the image size.
+ * The output has the same "valid" geometry of {@link ImageProcessors#convolution}.
+ * </p>
+ */
+public final class FftConvolution {
+    /**
+     * The kernel side above which the FFT is used by default
+     */
+    public static final int DEFAULT_THRESHOLD = 15;
+    /**
+     * The minimum FFT size
+     */
+    public static final int MIN_FFT_SIZE = 256;
+
+    /**
+     * Returns the FFT convolution processor
+     *
+     * @param ww     the window width
+     * @param wh     the window height
+     * @param kernel the shift-invariant kernel
+     */
+    public static UnaryOperator<FloatImage> convolution(int ww, int wh, Kernel kernel) {
+        return convolution(ww, wh, kernel, fftSize(ww, wh));
+    }
+
+    /**
+     * Returns the FFT convolution processor
+     *
+     * @param ww      the window width
+     * @param wh      the window height
+     * @param kernel  the shift-invariant kernel
+     * @param fftSize the FFT size (power of 2 greater than the window size)
+     */
+    public static UnaryOperator<FloatImage> convolution(int ww, int wh, Kernel kernel, int fftSize) {
+        if (!kernel.isShiftInvariant()) {
+            throw new IllegalArgumentException("Kernel must be shift invariant");
+        }
+        if (Integer.bitCount(fftSize) != 1 || fftSize < max(ww, wh) * 2) {
+            throw new IllegalArgumentException("FFT size must be a power of 2 at least twice the window size");
+        }
+        FftConvolution fft = new FftConvolution(fftSize, ww, wh, kernel);
+        return fft::apply;
+    }
+
+    /**
+     * Returns the default FFT size for a window
+     *
+     * @param ww the window width
+     * @param wh the window height
+     */
+    public static int fftSize(int ww, int wh) {
+        return max(MIN_FFT_SIZE, Integer.highestOneBit(max(ww, wh) * 4 - 1) << 1);
+    }
+
+    /**
+     * Returns true if the convolution should be computed by FFT
+     *
+     * @param ww             the window width
+     * @param wh             the window height
+     * @param matrixSupplier the matrix supplier
+     * @param threshold      the kernel side threshold
+     */
+    public static boolean isConvenient(int ww, int wh, Function<Convolution, float[][]> matrixSupplier, int threshold) {
+        return matrixSupplier instanceof Kernel kernel
+                && kernel.isShiftInvariant()
+                && ww * wh > threshold * threshold;
+    }
+
+    /**
+     * Transforms in place a complex sequence with the radix-2 FFT
+     *
+     * @param re      the real parts
+     * @param im      the imaginary parts
+     * @param offset  the offset of first element
+     * @param stride  the stride of elements
+     * @param n       the number of elements (power of 2)
+     * @param cos     the cosine table
+     * @param sin     the sine table
+     * @param inverse true for inverse transform (not scaled)
+     */
+    static void fft(double[] re, double[] im, int offset, int stride, int n, double[] cos, double[] sin, boolean inverse) {
+        // Bit reversal permutation
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                int a = offset + i * stride;
+                int b = offset + j * stride;
+                double t = re[a];
+                re[a] = re[b];
+                re[b] = t;
+                t = im[a];
+                im[a] = im[b];
+                im[b] = t;
+            }
+        }
+        double sign = inverse ? 1 : -1;
+        for (int len = 2; len <= n; len <<= 1) {
+            int half = len >> 1;
+            int step = n / len;
+            for (int i = 0; i < n; i += len) {
+                for (int k = 0; k < half; k++) {
+                    double wr = cos[k * step];
+                    double wi = sign * sin[k * step];
+                    int a = offset + (i + k) * stride;
+                    int b = a + half * stride;
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    private final int n;
+    private final int ww;
+    private final int wh;
+    private final double[] cos;
+    private final double[] sin;
+    /**
+     * The spectra of kernel color mix coefficients [j * 3 + i] from input channel j to output channel i,
+     * null if the coefficient is zero
+     */
+    private final double[][] kernelRe;
+    private final double[][] kernelIm;
+
+    /**
+     * Creates the FFT convolution
+     *
+     * @param n      the FFT size
+     * @param ww     the window width
+     * @param wh     the window height
+     * @param kernel the kernel
+     */
+    private FftConvolution(int n, int ww, int wh, Kernel kernel) {
+        this.n = n;
+        this.ww = ww;
+        this.wh = wh;
+        this.cos = new double[n / 2];
+        this.sin = new double[n / 2];
+        for (int i = 0; i < n / 2; i++) {
+            cos[i] = Math.cos(2 * PI * i / n);
+            sin[i] = Math.sin(2 * PI * i / n);
+        }
+        this.kernelRe = new double[9][];
+        this.kernelIm = new double[9][];
+        Convolution conv = new Convolution();
+        conv.ww = ww;
+        conv.wh = wh;
+        conv.target.x = ww / 2;
+        conv.target.y = wh / 2;
+        // The correlation is the convolution with the flipped kernel
+        for (int dy = 0; dy < wh; dy++) {
+            conv.source.y = dy;
+            for (int dx = 0; dx < ww; dx++) {
+                conv.source.x = dx;
+                int idx = (wh - 1 - dy) * n + (ww - 1 - dx);
+                if (kernel instanceof ScalarKernel scalar) {
+                    float w = scalar.weight(conv);
+                    for (int c = 0; c < 3; c++) {
+                        setCoefficient(c * 3 + c, idx, w);
+                    }
+                } else {
+                    float[][] m = kernel.apply(conv);
+                    for (int j = 0; j < 3; j++) {
+                        for (int i = 0; i < 3; i++) {
+                            setCoefficient(j * 3 + i, idx, m[j][i]);
+                        }
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < 9; k++) {
+            if (kernelRe[k] != null) {
+                fft2(kernelRe[k], kernelIm[k], false);
+            }
+        }
+    }
+
+    /**
+     * Returns the convolution of the image
+     *
+     * @param source the source image
+     */
+    private FloatImage apply(FloatImage source) {
+        int w = source.width();
+        int h = source.height();
+        int ow = w - ww + 1;
+        int oh = h - wh + 1;
+        FloatImage result = FloatImage.create(ow, oh);
+        int block = n - max(ww, wh) + 1;
+        double[][] inRe = new double[3][n * n];
+        double[][] inIm = new double[3][n * n];
+        double[] outRe = new double[n * n];
+        double[] outIm = new double[n * n];
+        double scale = 1d / n / n;
+        for (int by = 0; by < h; by += block) {
+            int bh = min(block, h - by);
+            for (int bx = 0; bx < w; bx += block) {
+                int bw = min(block, w - bx);
+                // Loads and transforms the block
+                for (int c = 0; c < 3; c++) {
+                    Arrays.fill(inRe[c], 0);
+                    Arrays.fill(inIm[c], 0);
+                }
+                for (int c = 0; c < 3; c++) {
+                    float[] plane = source.plane(c);
+                    for (int y = 0; y < bh; y++) {
+                        int i = source.index(bx, by + y);
+                        for (int x = 0; x < bw; x++) {
+                            inRe[c][y * n + x] = plane[i + x];
+                        }
+                    }
+                }
+                for (int c = 0; c < 3; c++) {
+                    fft2(inRe[c], inIm[c], false);
+                }
+                // Mixes the channels and adds the valid part of the block to the output
+                int x0 = max(bx, ww - 1);
+                int y0 = max(by, wh - 1);
+                int x1 = min(bx + bw + ww - 1, w);
+                int y1 = min(by + bh + wh - 1, h);
+                for (int i = 0; i < 3; i++) {
+                    Arrays.fill(outRe, 0);
+                    Arrays.fill(outIm, 0);
+                    boolean zero = true;
+                    for (int j = 0; j < 3; j++) {
+                        double[] kr = kernelRe[j * 3 + i];
+                        if (kr != null) {
+                            double[] ki = kernelIm[j * 3 + i];
+                            double[] xr = inRe[j];
+                            double[] xi = inIm[j];
+                            for (int k = 0; k < n * n; k++) {
+                                outRe[k] += xr[k] * kr[k] - xi[k] * ki[k];
+                                outIm[k] += xr[k] * ki[k] + xi[k] * kr[k];
+                            }
+                            zero = false;
+                        }
+                    }
+                    if (zero) {
+                        continue;
+                    }
+                    fft2(outRe, outIm, true);
+                    float[] out = result.plane(i);
+                    for (int y = y0; y < y1; y++) {
+                        for (int x = x0; x < x1; x++) {
+                            out[(y - wh + 1) * ow + x - ww + 1] += (float) (outRe[(y - by) * n + x - bx] * scale);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Transforms in place a n x n complex matrix
+     *
+     * @param re      the real parts
+     * @param im      the imaginary parts
+     * @param inverse true for inverse transform (not scaled)
+     */
+    private void fft2(double[] re, double[] im, boolean inverse) {
+        for (int y = 0; y < n; y++) {
+            fft(re, im, y * n, 1, n, cos, sin, inverse);
+        }
+        for (int x = 0; x < n; x++) {
+            fft(re, im, x, n, n, cos, sin, inverse);
+        }
+    }
+
+    /**
+     * Sets a kernel coefficient
+     *
+     * @param k     the color mix index
+     * @param idx   the spatial index
+     * @param value the value
+     */
+    private void setCoefficient(int k, int idx, float value) {
+        if (value != 0) {
+            if (kernelRe[k] == null) {
+                kernelRe[k] = new double[n * n];
+                kernelIm[k] = new double[n * n];
+            }
+            kernelRe[k][idx] = value;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import java.util.function.IntUnaryOperator;
+
+import static java.lang.Math.round;
+
+/**
+ * Hue filter of packed rgb pixels (0xrrggbb) computed in 16.16 fixed-point integer arithmetic.
+ * <p>
+ * It is the integer version of {@link PixelProcessors#hueFilter} including the rgb to hsb conversions
+ * of {@link java.awt.Color}: the divisions by the color range are replaced by a table of reciprocals
+ * and the pixel path has no floating point operation.
+ * The hue has a resolution of 2^-16 turns, so the results are not bit-identical to the float version:
+ * on all the 2^24 colors the result components differ at most by 1 (8-bit LSB),
+ * with 89% of colors identical for the HorseView parameters (0.5, 0.2, 0.4, 0.5)
+ * and 99% for (0, 0.1, 0.3, 0.2).
+ * The filter is about 2.5 times faster than the float hsb processor.
+ * </p>
+ */
+public final class FixedHueFilter implements IntUnaryOperator {
+    private static final int SHIFT = 16;
+    private static final int ONE = 1 << SHIFT;
+    private static final int HALF = ONE / 2;
+    /**
+     * The reciprocals 2^32 / d of the color ranges
+     */
+    private static final long[] RECIPROCALS = new long[256];
+
+    static {
+        for (int d = 1; d < 256; d++) {
+            RECIPROCALS[d] = ((1L << 32) + d / 2) / d;
+        }
+    }
+
+    /**
+     * Returns the fixed-point hue filter (see {@link PixelProcessors#hueFilter})
+     *
+     * @param h0  the filtered hue
+     * @param dh1 the hue difference with full sensitivity
+     * @param dh0 the hue difference with zero sensitivity
+     * @param b0  the brightness of zero sensitivity
+     */
+    public static FixedHueFilter create(double h0, double dh1, double dh0, double b0) {
+        if (!(dh1 >= 0 && dh0 > dh1)) {
+            throw new IllegalArgumentException("Hue differences must be 0 <= dh1 < dh0");
+        }
+        return new FixedHueFilter(fixed(h0), fixed(dh1), fixed(dh0), fixed(b0), round(ONE / (dh0 - dh1)));
+    }
+
+    /**
+     * Returns the fixed-point value of a real value
+     *
+     * @param value the value
+     */
+    private static int fixed(double value) {
+        return (int) round(value * ONE);
+    }
+
+    /**
+     * Returns the product of fixed-point values
+     *
+     * @param a the first factor
+     * @param b the second factor
+     */
+    private static int mul(long a, long b) {
+        return (int) ((a * b) >> SHIFT);
+    }
+
+    /**
+     * Returns the 8-bit component of a fixed-point value in the 0...1 range
+     *
+     * @param value the value
+     */
+    private static int toByte(int value) {
+        return (value * 255 + HALF) >> SHIFT;
+    }
+
+    private final int h0;
+    private final int dh1;
+    private final int dh0;
+    private final int b0;
+    private final long slope;
+
+    /**
+     * Creates the filter
+     *
+     * @param h0    the filtered hue
+     * @param dh1   the hue difference with full sensitivity
+     * @param dh0   the hue difference with zero sensitivity
+     * @param b0    the brightness of zero sensitivity
+     * @param slope the slope of hysteresis between dh1 and dh0
+     */
+    private FixedHueFilter(int h0, int dh1, int dh0, int b0, long slope) {
+        this.h0 = h0;
+        this.dh1 = dh1;
+        this.dh0 = dh0;
+        this.b0 = b0;
+        this.slope = slope;
+    }
+
+    @Override
+    public int applyAsInt(int rgb) {
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        int cmax = Math.max(r, Math.max(g, b));
+        int cmin = Math.min(r, Math.min(g, b));
+        int delta = cmax - cmin;
+
+        // Rgb to hsb
+        int brightness = (cmax * ONE + 127) / 255;
+        int saturation = cmax != 0 ? (int) ((delta * RECIPROCALS[cmax]) >> SHIFT) : 0;
+        int hue = 0;
+        if (delta != 0) {
+            long reciprocal = RECIPROCALS[delta];
+            int h6 = r == cmax ? (int) (((g - b) * reciprocal) >> SHIFT)
+                    : g == cmax ? 2 * ONE + (int) (((b - r) * reciprocal) >> SHIFT)
+                    : 4 * ONE + (int) (((r - g) * reciprocal) >> SHIFT);
+            hue = h6 / 6;
+            if (hue < 0) {
+                hue += ONE;
+            }
+        }
+
+        // Filter
+        int dh = hue - h0;
+        dh = dh > HALF ? dh - ONE : dh < -HALF ? dh + ONE : dh;
+        int absSens;
+        if (dh >= dh0 || dh <= -dh0) {
+            absSens = ONE - saturation;
+        } else if (dh <= dh1 && dh >= -dh1) {
+            absSens = ONE;
+        } else {
+            int sens = mul(dh0 - Math.abs(dh), slope);
+            absSens = ONE - mul(ONE - sens, saturation);
+        }
+        hue = (hue - mul(dh, ONE - absSens)) & (ONE - 1);
+        saturation = mul(saturation, absSens);
+        brightness = mul(brightness, b0 + mul(ONE - b0, absSens));
+
+        // Hsb to rgb
+        if (saturation == 0) {
+            int v = toByte(brightness);
+            return (v << 16) | (v << 8) | v;
+        }
+        int h6 = hue * 6;
+        int f = h6 & (ONE - 1);
+        int v = toByte(brightness);
+        int p = toByte(mul(brightness, ONE - saturation));
+        int q = toByte(mul(brightness, ONE - mul(saturation, f)));
+        int t = toByte(mul(brightness, ONE - mul(saturation, ONE - f)));
+        return switch (h6 >> SHIFT) {
+            case 0 -> (v << 16) | (t << 8) | p;
+            case 1 -> (q << 16) | (v << 8) | p;
+            case 2 -> (p << 16) | (v << 8) | t;
+            case 3 -> (p << 16) | (q << 8) | v;
+            case 4 -> (t << 16) | (p << 8) | v;
+            default -> (v << 16) | (p << 8) | q;
+        };
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import java.awt.image.BufferedImage;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Planar float rgb image.
+ * <p>
+ * Each color component is a contiguous float array with the value of pixel (x, y) at offset + y * stride + x,
+ * the values are in the 0...255 range of the 8-bit components but are not clipped between the processing stages.
+ * The conversion from and to BufferedImage happens only at the I/O and display boundaries.
+ * </p>
+ */
+public final class FloatImage {
+
+    /**
+     * Returns the empty image
+     *
+     * @param width  the width
+     * @param height the height
+     */
+    public static FloatImage create(int width, int height) {
+        int n = width * height;
+        return new FloatImage(width, height, 0, width, new float[n], new float[n], new float[n]);
+    }
+
+    /**
+     * Returns the planar image of a buffered image
+     *
+     * @param img the buffered image
+     */
+    public static FloatImage of(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        FloatImage result = create(w, h);
+        RgbRaster in = RgbRaster.of(img);
+        for (int y = 0; y < h; y++) {
+            for (int x = 0; x < w; x++) {
+                int px = in.rgb(x, y);
+                int i = y * w + x;
+                result.red[i] = (px >> 16) & 0xff;
+                result.green[i] = (px >> 8) & 0xff;
+                result.blue[i] = px & 0xff;
+            }
+        }
+        return result;
+    }
+
+    private final int width;
+    private final int height;
+    private final int offset;
+    private final int stride;
+    private final float[] red;
+    private final float[] green;
+    private final float[] blue;
+
+    /**
+     * Creates the image
+     *
+     * @param width  the width
+     * @param height the height
+     * @param offset the offset of pixel (0, 0)
+     * @param stride the row stride
+     * @param red    the red plane
+     * @param green  the green plane
+     * @param blue   the blue plane
+     */
+    public FloatImage(int width, int height, int offset, int stride, float[] red, float[] green, float[] blue) {
+        this.width = width;
+        this.height = height;
+        this.offset = offset;
+        this.stride = stride;
+        this.red = requireNonNull(red);
+        this.green = requireNonNull(green);
+        this.blue = requireNonNull(blue);
+        if (width < 0 || height < 0 || stride < width) {
+            throw new IllegalArgumentException("Invalid image geometry");
+        }
+        if (height > 0 && width > 0 && (offset < 0 || index(width - 1, height - 1) >= Math.min(red.length, Math.min(green.length, blue.length)))) {
+            throw new IllegalArgumentException("Planes too short for the image geometry");
+        }
+    }
+
+    /**
+     * Returns the blue plane
+     */
+    public float[] blue() {
+        return blue;
+    }
+
+    /**
+     * Returns the green plane
+     */
+    public float[] green() {
+        return green;
+    }
+
+    /**
+     * Returns the height
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns the index of a pixel in the planes
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     */
+    public int index(int x, int y) {
+        return offset + y * stride + x;
+    }
+
+    /**
+     * Returns the offset of pixel (0, 0)
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Returns the plane of a color component
+     *
+     * @param component the component (0 = red, 1 = green, 2 = blue)
+     */
+    public float[] plane(int component) {
+        return switch (component) {
+            case 0 -> red;
+            case 1 -> green;
+            case 2 -> blue;
+            default -> throw new IllegalArgumentException("Invalid component " + component);
+        };
+    }
+
+    /**
+     * Returns the red plane
+     */
+    public float[] red() {
+        return red;
+    }
+
+    /**
+     * Returns the packed rgb value (0xrrggbb) of a pixel (truncated and clipped to 0...255)
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     */
+    public int rgb(int x, int y) {
+        int i = index(x, y);
+        return RgbRaster.pack(red[i], green[i], blue[i]);
+    }
+
+    /**
+     * Returns the row stride
+     */
+    public int stride() {
+        return stride;
+    }
+
+    /**
+     * Returns the TYPE_INT_RGB image with the components truncated and clipped to 0...255
+     */
+    public BufferedImage toBufferedImage() {
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] data = RgbRaster.data(img);
+        for (int y = 0; y < height; y++) {
+            int i = index(0, y);
+            int j = y * width;
+            for (int x = 0; x < width; x++) {
+                data[j + x] = RgbRaster.pack(red[i + x], green[i + x], blue[i + x]);
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Returns the view of a rectangular region sharing the planes of this image
+     *
+     * @param x      the left coordinate
+     * @param y      the top coordinate
+     * @param width  the width
+     * @param height the height
+     */
+    public FloatImage view(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("View out of image bounds");
+        }
+        return new FloatImage(width, height, index(x, y), stride, red, green, blue);
+    }
+
+    /**
+     * Returns the width
+     */
+    public int width() {
+        return width;
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
+
+import static java.lang.Math.*;
+
+/**
+ * Gaussian pyramid of an image used to approximate the spatially varying blur of the lucri view.
+ * <p>
+ * Each level is the previous level blurred by the 5-tap binomial filter and decimated by 2,
+ * so the level l upsampled to the full resolution is a gaussian blur with variance (4^l - 1) / 3.
+ * The foveation blends for each pixel the two levels enclosing the required blur variance.
+ * </p>
+ */
+public final class FoveationPyramid {
+    /**
+     * The number of quantized eccentricity values of the lucri kernel parameters
+     */
+    private static final int ECCENTRICITY_STEPS = 1024;
+    private static final float[] BINOMIAL = {1f / 16, 4f / 16, 6f / 16, 4f / 16, 1f / 16};
+
+    /**
+     * Returns the pyramid of the image
+     *
+     * @param source   the source image
+     * @param maxLevel the maximum level
+     */
+    public static FoveationPyramid create(FloatImage source, int maxLevel) {
+        int w = source.width();
+        int h = source.height();
+        float[][] planes = new float[3][w * h];
+        for (int c = 0; c < 3; c++) {
+            float[] plane = source.plane(c);
+            for (int y = 0; y < h; y++) {
+                System.arraycopy(plane, source.index(0, y), planes[c], y * w, w);
+            }
+        }
+        List<float[][]> levels = new ArrayList<>();
+        List<int[]> sizes = new ArrayList<>();
+        levels.add(planes);
+        sizes.add(new int[]{w, h});
+        while (levels.size() <= maxLevel && (w > 1 || h > 1)) {
+            int w1 = (w + 1) / 2;
+            int h1 = (h + 1) / 2;
+            float[][] level = new float[3][];
+            for (int c = 0; c < 3; c++) {
+                level[c] = reduce(planes[c], w, h, w1, h1);
+            }
+            levels.add(level);
+            sizes.add(new int[]{w1, h1});
+            planes = level;
+            w = w1;
+            h = h1;
+        }
+        return new FoveationPyramid(levels.toArray(float[][][]::new), sizes.toArray(int[][]::new));
+    }
+
+    /**
+     * Returns the lucri view processor based on the gaussian pyramid.
+     * It has the output geometry of {@link ImageProcessors#lucriView}: for each output pixel the kernel
+     * truncated to the window is replaced by a gaussian blur with the same gain and variance.
+     * The kernel parameters are computed at the target pixel instead of the source pixels.
+     * The processor throws {@link IllegalArgumentException} on images not matching the given size.
+     * <p>
+     * The result is an approximation of the exact convolution with the lucri kernel:
+     * the gaussian blur differs from the truncated kernel at the edges of the periphery
+     * and the gain ignores the sensitivity variation within the window, that is large on small images.
+     * With the parameters of {@link LucriView}, the mean absolute error is about 0.5...1.3 levels of the 0...255 range
+     * and the maximum error about 10...30 levels on photos of 0.2...1.3 Mpixel
+     * (about 3 levels and 18 levels on 128x96 synthetic patterns).
+     * </p>
+     *
+     * @param width          the image width
+     * @param height         the image height
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     */
+    public static UnaryOperator<FloatImage> lucriView(int width, int height, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity) {
+        int size = (int) (round(1 / minAcuity / 2) * 2 + 1);
+        int w = width;
+        int h = height;
+        int cx = w / 2;
+        int cy = h / 2;
+        double radius = (double) (max(w, h) / 2) * alphaRadius / 2;
+        double radius2 = radius * radius * 2;
+        DoubleUnaryOperator mapper = PixelProcessors.map(1, 0, minAcuity, maxAcuity);
+        DoubleUnaryOperator mapper1 = PixelProcessors.map(1, 0, minSensitivity, maxSensitivity);
+
+        // Tabulates gain and variance of the truncated kernel by eccentricity
+        double maxDist2 = (double) max(cx, w - 1 - cx) * max(cx, w - 1 - cx)
+                + (double) max(cy, h - 1 - cy) * max(cy, h - 1 - cy);
+        double minRad = exp(-maxDist2 / radius2);
+        double step = (1 - minRad) / (ECCENTRICITY_STEPS - 1);
+        float[] gains = new float[ECCENTRICITY_STEPS];
+        float[] variances = new float[ECCENTRICITY_STEPS];
+        double maxVariance = 0;
+        for (int i = 0; i < ECCENTRICITY_STEPS; i++) {
+            double rad = minRad + i * step;
+            double acuity = mapper.applyAsDouble(rad);
+            double sumW = 0;
+            double sumWD2 = 0;
+            for (int dy = -size / 2; dy <= size / 2; dy++) {
+                for (int dx = -size / 2; dx <= size / 2; dx++) {
+                    double wgt = ImageProcessors.lucriWeight(acuity, 1, dx * dx + dy * dy);
+                    sumW += wgt;
+                    sumWD2 += wgt * dx * dx;
+                }
+            }
+            gains[i] = (float) sumW;
+            variances[i] = sumW > 0 ? (float) (sumWD2 / sumW) : 0;
+            maxVariance = max(maxVariance, variances[i]);
+        }
+        int maxLevel = 0;
+        while (levelVariance(maxLevel) < maxVariance) {
+            maxLevel++;
+        }
+        int pyramidLevels = maxLevel;
+
+        return source -> {
+            if (source.width() != width || source.height() != height) {
+                throw new IllegalArgumentException("Image size must be " + width + "x" + height);
+            }
+            FoveationPyramid pyramid = create(source, pyramidLevels);
+            int topLevel = pyramid.levels.length - 1;
+            int ow = source.width() - size + 1;
+            int oh = source.height() - size + 1;
+            FloatImage result = FloatImage.create(ow, oh);
+            float[] rgb0 = new float[3];
+            float[] rgb1 = new float[3];
+            for (int ty = 0; ty < oh; ty++) {
+                double dy = ty + size / 2 - cy;
+                for (int tx = 0; tx < ow; tx++) {
+                    double dx = tx + size / 2 - cx;
+                    double rad = exp(-(dx * dx + dy * dy) / radius2);
+                    int idx = min(max((int) round((rad - minRad) / step), 0), ECCENTRICITY_STEPS - 1);
+                    float gain = (float) (gains[idx] * mapper1.applyAsDouble(rad));
+                    float variance = variances[idx];
+                    int level = 0;
+                    while (level < topLevel && levelVariance(level + 1) <= variance) {
+                        level++;
+                    }
+                    int x = tx + size / 2;
+                    int y = ty + size / 2;
+                    pyramid.sample(level, x, y, rgb0);
+                    if (level < topLevel) {
+                        float v0 = levelVariance(level);
+                        float t = min((variance - v0) / (levelVariance(level + 1) - v0), 1f);
+                        pyramid.sample(level + 1, x, y, rgb1);
+                        for (int c = 0; c < 3; c++) {
+                            rgb0[c] += (rgb1[c] - rgb0[c]) * t;
+                        }
+                    }
+                    int o = result.index(tx, ty);
+                    result.red()[o] = rgb0[0] * gain;
+                    result.green()[o] = rgb0[1] * gain;
+                    result.blue()[o] = rgb0[2] * gain;
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Returns the blur variance of a level at full resolution
+     *
+     * @param level the level
+     */
+    static float levelVariance(int level) {
+        return ((1 << (2 * level)) - 1) / 3f;
+    }
+
+    /**
+     * Returns the plane blurred by the binomial filter and decimated by 2
+     *
+     * @param src the source plane
+     * @param w   the source width
+     * @param h   the source height
+     * @param w1  the result width
+     * @param h1  the result height
+     */
+    private static float[] reduce(float[] src, int w, int h, int w1, int h1) {
+        float[] tmp = new float[w1 * h];
+        for (int y = 0; y < h; y++) {
+            for (int i = 0; i < w1; i++) {
+                float acc = 0;
+                for (int k = 0; k < BINOMIAL.length; k++) {
+                    int x = min(max(2 * i + k - 2, 0), w - 1);
+                    acc += src[y * w + x] * BINOMIAL[k];
+                }
+                tmp[y * w1 + i] = acc;
+            }
+        }
+        float[] dst = new float[w1 * h1];
+        for (int j = 0; j < h1; j++) {
+            for (int k = 0; k < BINOMIAL.length; k++) {
+                int y = min(max(2 * j + k - 2, 0), h - 1);
+                float c = BINOMIAL[k];
+                for (int i = 0; i < w1; i++) {
+                    dst[j * w1 + i] += tmp[y * w1 + i] * c;
+                }
+            }
+        }
+        return dst;
+    }
+
+    private final float[][][] levels;
+    private final int[][] sizes;
+
+    /**
+     * Creates the pyramid
+     *
+     * @param levels the color planes of levels
+     * @param sizes  the width and height of levels
+     */
+    private FoveationPyramid(float[][][] levels, int[][] sizes) {
+        this.levels = levels;
+        this.sizes = sizes;
+    }
+
+    /**
+     * Returns the number of levels
+     */
+    public int numLevels() {
+        return levels.length;
+    }
+
+    /**
+     * Samples a level with bilinear interpolation at full resolution coordinates
+     *
+     * @param level the level
+     * @param x     the x coordinate at full resolution
+     * @param y     the y coordinate at full resolution
+     * @param rgb   the result color components
+     */
+    public void sample(int level, int x, int y, float[] rgb) {
+        float[][] planes = levels[level];
+        int w = sizes[level][0];
+        int h = sizes[level][1];
+        float scale = 1f / (1 << level);
+        float u = x * scale;
+        float v = y * scale;
+        int u0 = min((int) u, w - 1);
+        int v0 = min((int) v, h - 1);
+        int u1 = min(u0 + 1, w - 1);
+        int v1 = min(v0 + 1, h - 1);
+        float fu = u - u0;
+        float fv = v - v0;
+        for (int c = 0; c < 3; c++) {
+            float[] p = planes[c];
+            float top = p[v0 * w + u0] + (p[v0 * w + u1] - p[v0 * w + u0]) * fu;
+            float bottom = p[v1 * w + u0] + (p[v1 * w + u1] - p[v1 * w + u0]) * fu;
+            rgb[c] = top + (bottom - top) * fv;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.MutuallyExclusiveGroup;
 import net.sourceforge.argparse4j.inf.Namespace;
 import org.mmarini.imgproc.swing.Messages;
 import org.slf4j.Logger;
@@ -39,13 +40,15 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
-import java.awt.image.WritableRaster;
+import java.util.Arrays;
+import java.util.function.UnaryOperator;
 
 /**
  * Main application
  */
 public class HorseView {
     public static final Dimension DEFAULT_SIZE = new Dimension(800, 600);
+    private static final HueFilter HUE_FILTER = new HueFilter(0.5, 2d / 10, 4d / 10, 0.5);
     private static final Logger logger = LoggerFactory.getLogger(HorseView.class);
 
     /**
@@ -79,6 +82,20 @@ public class HorseView {
                 .description("Run the test.");
         parser.addArgument("-f", "--file")
                 .help("specify the image file");
+        parser.addArgument("-p", "--parallel")
+                .action(Arguments.storeTrue())
+                .help("process the image tiles in parallel");
+        // The filter implementations are alternative
+        MutuallyExclusiveGroup mode = parser.addMutuallyExclusiveGroup("filter implementation");
+        mode.addArgument("-c", "--compiled")
+                .action(Arguments.storeTrue())
+                .help("apply the filter by a pixel program compiled to bytecode");
+        mode.addArgument("-i", "--integer")
+                .action(Arguments.storeTrue())
+                .help("apply the filter in 16.16 fixed-point integer arithmetic");
+        mode.addArgument("-u", "--lut")
+                .type(Integer.class)
+                .help("apply the filter by color lookup table (0 for exact table, n for n x n x n lattice)");
         parser.addArgument("-v", "--version")
                 .action(Arguments.version())
                 .help("show current version");
@@ -87,16 +104,17 @@ public class HorseView {
 
     static BufferedImage hueSatImage(int w, int h) {
         BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-        WritableRaster wr = img.getRaster();
-        int[] color = new int[3];
+        int[] data = RgbRaster.data(img);
+        float[] hue = new float[w];
+        float[] saturation = new float[w];
+        float[] brightness = new float[w];
         for (int x = 0; x < w; x++) {
-            for (int y = 0; y < h; y++) {
-                int colorCode = Color.HSBtoRGB((float) x / (w - 1), (float) (h - 1 - y) / (h - 1), 1);
-                color[0] = colorCode >> 16;
-                color[1] = (colorCode >> 8) & 0xff;
-                color[2] = colorCode & 0xff;
-                wr.setPixel(x, y, color);
-            }
+            hue[x] = (float) x / (w - 1);
+            brightness[x] = 1;
+        }
+        for (int y = 0; y < h; y++) {
+            Arrays.fill(saturation, (float) (h - 1 - y) / (h - 1));
+            ColorConversions.hsbToRgb(hue, saturation, brightness, 0, data, y * w, w);
         }
         return img;
     }
@@ -158,8 +176,30 @@ public class HorseView {
         BufferedImage source = file == null ?
                 hueSatImage(256, 256) :
                 ImageProcessors.toBuffered(new ImageIcon(file).getImage(), frame);
-        Image image = ImageProcessors.hsbProcessor(PixelProcessors.hueFilter(0.5, 2d / 10, 4d / 10, 0.5))
-                .apply(source);
+        UnaryOperator<float[]> filter = HUE_FILTER.pixelProcessor();
+        Integer lut = args.getInt("lut");
+        UnaryOperator<BufferedImage> processor;
+        if (lut != null) {
+            RgbLut table = RgbLut.cached(HUE_FILTER, lut, filter);
+            processor = args.getBoolean("parallel")
+                    ? table.processor(TiledExecutor.create())
+                    : table.processor();
+        } else if (args.getBoolean("compiled")) {
+            PixelProgram.RowKernel kernel = HUE_FILTER.program().compile();
+            processor = args.getBoolean("parallel")
+                    ? ImageProcessors.hsbProcessor(kernel, TiledExecutor.create())
+                    : ImageProcessors.hsbProcessor(kernel);
+        } else if (args.getBoolean("integer")) {
+            FixedHueFilter fixed = HUE_FILTER.fixed();
+            processor = args.getBoolean("parallel")
+                    ? ImageProcessors.rgbProcessor(fixed, TiledExecutor.create())
+                    : ImageProcessors.rgbProcessor(fixed);
+        } else {
+            processor = args.getBoolean("parallel")
+                    ? ImageProcessors.hsbProcessor(filter, TiledExecutor.create())
+                    : ImageProcessors.hsbProcessor(filter);
+        }
+        Image image = processor.apply(source);
         split.setLeftComponent(new JScrollPane(createCanvas(source)));
         split.setRightComponent(new JScrollPane(createCanvas(image)));
         split.setResizeWeight(0.5);
@@ -171,4 +211,35 @@ public class HorseView {
         });
         frame.setVisible(true);
     }
+
+    /**
+     * The parameters of the hue filter shared by its implementations
+     *
+     * @param h0  the filtered hue
+     * @param dh1 the hue difference with full sensitivity
+     * @param dh0 the hue difference with zero sensitivity
+     * @param b0  the brightness of zero sensitivity
+     */
+    record HueFilter(double h0, double dh1, double dh0, double b0) {
+        /**
+         * Returns the fixed-point filter (see {@link FixedHueFilter})
+         */
+        FixedHueFilter fixed() {
+            return FixedHueFilter.create(h0, dh1, dh0, b0);
+        }
+
+        /**
+         * Returns the hsb pixel processor (see {@link PixelProcessors#hueFilter})
+         */
+        UnaryOperator<float[]> pixelProcessor() {
+            return PixelProcessors.hueFilter(h0, dh1, dh0, b0);
+        }
+
+        /**
+         * Returns the pixel program (see {@link PixelProgram#hueFilter})
+         */
+        PixelProgram program() {
+            return PixelProgram.hueFilter(h0, dh1, dh0, b0);
+        }
+    }
 }
@@ -28,11 +28,11 @@ package org.mmarini.imgproc.apps;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.ImageObserver;
-import java.awt.image.Raster;
-import java.awt.image.WritableRaster;
 import java.util.Arrays;
 import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
 
 import static java.lang.Math.*;
@@ -45,45 +45,68 @@ public interface ImageProcessors {
     float[][] zeros = new float[3][3];
     float[][] eyes = eyes(new float[3][3], 1);
 
+    /**
+     * Returns the uniform box filter processor.
+     * It computes the convolution with a constant scalar kernel (see {@link #smooth(float)})
+     * by separable sliding window sums, so the cost per pixel does not depend on the window size
+     * (see {@link PlanarProcessors#boxFilter(int, int, float)}).
+     * The output image has size (w - ww + 1) x (h - wh + 1).
+     *
+     * @param ww     the window width
+     * @param wh     the window height
+     * @param weight the weight of each tap
+     */
+    static UnaryOperator<BufferedImage> boxFilter(int ww, int wh, float weight) {
+        return buffered(PlanarProcessors.boxFilter(ww, wh, weight));
+    }
+
+    /**
+     * Returns the buffered image processor of a planar image processor.
+     * The image is converted to {@link FloatImage} before the processing and back to TYPE_INT_RGB after it.
+     *
+     * @param processor the planar image processor
+     */
+    static UnaryOperator<BufferedImage> buffered(UnaryOperator<FloatImage> processor) {
+        return source -> processor.apply(FloatImage.of(source)).toBufferedImage();
+    }
+
+    /**
+     * Returns the convolution processor.
+     * The output image has size (w - ww + 1) x (h - wh + 1) (see {@link PlanarProcessors#convolution}).
+     *
+     * @param ww             the window width
+     * @param wh             the window height
+     * @param matrixSupplier the supplier of the 3x3 color matrix of each tap
+     */
     static UnaryOperator<BufferedImage> convolution(int ww, int wh, Function<Convolution, float[][]> matrixSupplier) {
-        return source -> {
-            int w = source.getWidth();
-            int h = source.getHeight();
-            Raster in = source.getRaster();
-            float[] rgb = new float[3];
-            float[] acc = new float[3];
-            Convolution conv = new Convolution();
-            conv.width = w;
-            conv.height = h;
-            conv.ww = ww;
-            conv.wh = wh;
-            int ow = w - ww + 1;
-            int oh = h - wh + 1;
-            BufferedImage img = new BufferedImage(ow, oh, BufferedImage.TYPE_INT_RGB);
-            WritableRaster out = img.getRaster();
-            for (int ty = 0; ty < oh; ty++) {
-                conv.target.y = ty + wh / 2;
-                for (int tx = 0; tx < ow; tx++) {
-                    conv.target.x = tx + ww / 2;
-                    Arrays.fill(acc, 0);
-                    for (int sy = ty; sy < ty + wh; sy++) {
-                        conv.source.y = sy;
-                        for (int sx = tx; sx < tx + ww; sx++) {
-                            conv.source.x = sx;
-                            rgb = in.getPixel(sx, sy, rgb);
-                            float[][] m = matrixSupplier.apply(conv);
-                            for (int i = 0; i < 3; i++) {
-                                for (int j = 0; j < 3; j++) {
-                                    acc[i] += rgb[j] * m[j][i];
-                                }
-                            }
-                        }
-                    }
-                    out.setPixel(tx, ty, acc);
-                }
-            }
-            return img;
-        };
+        return buffered(PlanarProcessors.convolution(ww, wh, matrixSupplier));
+    }
+
+    /**
+     * Returns the convolution processor.
+     * The shift-invariant kernels larger than fftThreshold x fftThreshold are computed by FFT (see {@link FftConvolution}).
+     *
+     * @param ww             the window width
+     * @param wh             the window height
+     * @param matrixSupplier the supplier of the 3x3 color matrix of each tap
+     * @param fftThreshold   the kernel side above which the FFT is used
+     */
+    static UnaryOperator<BufferedImage> convolution(int ww, int wh, Function<Convolution, float[][]> matrixSupplier, int fftThreshold) {
+        return buffered(PlanarProcessors.convolution(ww, wh, matrixSupplier, fftThreshold));
+    }
+
+    /**
+     * Returns the parallel convolution processor.
+     * The output image is split in tiles processed by the executor.
+     * The kernel factory is called for each forked task, so the kernels need not be thread safe.
+     *
+     * @param ww            the window width
+     * @param wh            the window height
+     * @param kernelFactory the factory of the color matrix suppliers
+     * @param executor      the tiled executor
+     */
+    static UnaryOperator<BufferedImage> convolution(int ww, int wh, Supplier<Function<Convolution, float[][]>> kernelFactory, TiledExecutor executor) {
+        return buffered(PlanarProcessors.convolution(ww, wh, kernelFactory, executor));
     }
 
     static float[][] eyes(float[][] mx, float value) {
@@ -95,17 +118,18 @@ public interface ImageProcessors {
         return mx;
     }
 
-    static Function<Convolution, float[][]> gray() {
+    static Kernel gray() {
         float[][] mx = new float[][]{
                 {1f / 3, 1f / 3, 1f / 3},
                 {1f / 3, 1f / 3, 1f / 3},
                 {1f / 3, 1f / 3, 1f / 3}
         };
-        return convs -> mx;
+        return Kernel.matrix(true, false, convs -> mx);
     }
 
     /**
-     * Returns the processor the process the hsb pixels
+     * Returns the processor the process the hsb pixels.
+     * The pixels are processed by rows directly on the image data buffers (see {@link RgbRaster}).
      *
      * @param pixelProcessor the pixel processor
      */
@@ -114,68 +138,343 @@ public interface ImageProcessors {
             int w = source.getWidth();
             int h = source.getHeight();
             BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
-            WritableRaster in = source.getRaster();
-            WritableRaster out = img.getRaster();
-            int[] rgb = new int[3];
-            float[] hsb = new float[3];
-            for (int x = 0; x < w; x++) {
-                for (int y = 0; y < h; y++) {
-                    in.getPixel(x, y, rgb);
-                    Color.RGBtoHSB(rgb[0], rgb[1], rgb[2], hsb);
-                    float[] hsb1 = pixelProcessor.apply(hsb);
-                    int rgbpx = Color.HSBtoRGB(hsb1[0], hsb1[1], hsb1[2]);
-                    rgb[0] = (rgbpx >> 16) & 0xff;
-                    rgb[1] = (rgbpx >> 8) & 0xff;
-                    rgb[2] = rgbpx & 0xff;
-                    out.setPixel(x, y, rgb);
+            hsbTask(RgbRaster.of(source), RgbRaster.data(img), w, pixelKernel(pixelProcessor))
+                    .apply(0, 0, w, h);
+            return img;
+        };
+    }
+
+    /**
+     * Returns the parallel processor of the hsb pixels.
+     * The image is split in tiles processed by the executor, the pixel processor must be thread safe.
+     * Each task has its own scratch buffers, so the pixel loop does not allocate.
+     *
+     * @param pixelProcessor the pixel processor
+     * @param executor       the tiled executor
+     */
+    static UnaryOperator<BufferedImage> hsbProcessor(UnaryOperator<float[]> pixelProcessor, TiledExecutor executor) {
+        return source -> {
+            int w = source.getWidth();
+            int h = source.getHeight();
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            int[] out = RgbRaster.data(img);
+            executor.execute(w, h, () -> hsbTask(RgbRaster.of(source), out, w, pixelKernel(pixelProcessor)));
+            return img;
+        };
+    }
+
+    /**
+     * Returns the processor of the hsb pixels by a row kernel (see {@link PixelProgram#compile()}).
+     *
+     * @param kernel the row kernel
+     */
+    static UnaryOperator<BufferedImage> hsbProcessor(PixelProgram.RowKernel kernel) {
+        return source -> {
+            int w = source.getWidth();
+            int h = source.getHeight();
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            hsbTask(RgbRaster.of(source), RgbRaster.data(img), w, kernel)
+                    .apply(0, 0, w, h);
+            return img;
+        };
+    }
+
+    /**
+     * Returns the parallel processor of the hsb pixels by a thread safe row kernel.
+     *
+     * @param kernel   the row kernel
+     * @param executor the tiled executor
+     */
+    static UnaryOperator<BufferedImage> hsbProcessor(PixelProgram.RowKernel kernel, TiledExecutor executor) {
+        return source -> {
+            int w = source.getWidth();
+            int h = source.getHeight();
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            int[] out = RgbRaster.data(img);
+            executor.execute(w, h, () -> hsbTask(RgbRaster.of(source), out, w, kernel));
+            return img;
+        };
+    }
+
+    /**
+     * Returns the tile task processing the hsb pixels by rows.
+     * The rows are converted in batch between rgb and hsb components (see {@link ColorConversions}).
+     *
+     * @param in     the source raster
+     * @param out    the output pixels
+     * @param w      the image width
+     * @param kernel the row kernel
+     */
+    private static TiledExecutor.TileTask hsbTask(RgbRaster in, int[] out, int w, PixelProgram.RowKernel kernel) {
+        int[] row = new int[w];
+        float[] hue = new float[w];
+        float[] saturation = new float[w];
+        float[] brightness = new float[w];
+        return (x0, y0, x1, y1) -> {
+            int n = x1 - x0;
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    row[x - x0] = in.rgb(x, y);
                 }
+                ColorConversions.rgbToHsb(row, 0, hue, saturation, brightness, 0, n);
+                kernel.apply(hue, saturation, brightness, 0, n);
+                ColorConversions.hsbToRgb(hue, saturation, brightness, 0, out, y * w + x0, n);
             }
-            return img;
         };
     }
 
-    static Function<Convolution, float[][]> identity() {
-        return convs -> eyes;
+    static Kernel identity() {
+        return Kernel.scalar(true, false, convs -> 1);
     }
 
-    static Function<Convolution, float[][]> lucri(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity) {
-        float[][] mx = new float[3][3];
-        int w = img.getWidth();
-        int h = img.getHeight();
+    static Kernel lucri(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity) {
+        return lucri(img.getWidth(), img.getHeight(), alphaRadius, minAcuity, maxAcuity, minSensitivity, maxSensitivity);
+    }
+
+    /**
+     * Returns the lucri kernel of an image size
+     *
+     * @param w              the image width
+     * @param h              the image height
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     */
+    static Kernel lucri(int w, int h, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity) {
         Point center = new Point(w / 2, h / 2);
         double radius = (double) (max(w, h) / 2) * alphaRadius / 2;
         double radius2 = radius * radius * 2;
         DoubleUnaryOperator mapper = PixelProcessors.map(1, 0, minAcuity, maxAcuity);
         DoubleUnaryOperator mapper1 = PixelProcessors.map(1, 0, minSensitivity, maxSensitivity);
-        double k = 1d / 2 / PI;
-        return conv -> {
+        return Kernel.scalar(false, true, conv -> {
             double radial2 = conv.source.distanceSq(center);
             double rad = exp(-radial2 / radius2);
             double acuity = mapper.applyAsDouble(rad);
             double sensitivity = mapper1.applyAsDouble(rad);
-            if (acuity >= 1) {
-                return conv.target.distanceSq(conv.source) <= 0.5 ? eyes(mx, (float) sensitivity) : zeros;
-            } else {
-                double radiusSens = 1 / acuity / 2;
-                double radiusSens2 = radiusSens * radiusSens;
-                double alpha = exp(-conv.target.distanceSq(conv.source) / radiusSens2 / 2) * k / radiusSens2;
-                return eyes(mx, (float) (alpha * sensitivity));
-            }
+            return lucriWeight(acuity, sensitivity, conv.target.distanceSq(conv.source));
+        });
+    }
+
+    /**
+     * Returns the lucri kernel bank with quantized acuity levels (see {@link LucriKernelBank})
+     *
+     * @param img            the image
+     * @param size           the window size
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     * @param levels         the number of levels
+     */
+    static LucriKernelBank lucriBank(BufferedImage img, int size, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity, int levels) {
+        return LucriKernelBank.create(img.getWidth(), img.getHeight(), size, alphaRadius, minAcuity, maxAcuity, minSensitivity, maxSensitivity, levels);
+    }
+
+    /**
+     * Returns the lucri view processor approximated by iterated variable radius box blurs (see {@link IntegralImage})
+     *
+     * @param img            the image
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     * @param passes         the number of box blur passes
+     */
+    static UnaryOperator<BufferedImage> lucriBoxView(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity, int passes) {
+        return buffered(PlanarProcessors.lucriBoxView(img.getWidth(), img.getHeight(), alphaRadius, minAcuity, maxAcuity, minSensitivity, maxSensitivity, passes));
+    }
+
+    /**
+     * Returns the estimated tile cost of the lucri view.
+     * The cost of a pixel is the number of active taps: a single tap where the acuity is full,
+     * the taps within the 3-sigma gaussian radius elsewhere
+     *
+     * @param img         the image
+     * @param alphaRadius the radius of fovea relative to the image size
+     * @param minAcuity   the minimum acuity
+     * @param maxAcuity   the maximum acuity
+     * @param size        the window size
+     */
+    static TiledExecutor.TileCost lucriCost(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, int size) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        double radius = (double) (max(w, h) / 2) * alphaRadius / 2;
+        double radius2 = radius * radius * 2;
+        DoubleUnaryOperator mapper = PixelProcessors.map(1, 0, minAcuity, maxAcuity);
+        return (x0, y0, x1, y1) -> {
+            // Estimates the acuity at the tile center
+            double dx = (x0 + x1) / 2d + size / 2 - w / 2;
+            double dy = (y0 + y1) / 2d + size / 2 - h / 2;
+            double acuity = mapper.applyAsDouble(exp(-(dx * dx + dy * dy) / radius2));
+            double taps = acuity >= 1
+                    ? 1
+                    : min(pow(2 * ceil(3 / acuity / 2) + 1, 2), size * size);
+            return taps * (x1 - x0) * (y1 - y0);
         };
     }
 
+    /**
+     * Returns the lucri view processor approximated by the blend of gaussian pyramid levels (see {@link FoveationPyramid})
+     *
+     * @param img            the image
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     */
+    static UnaryOperator<BufferedImage> lucriPyramidView(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity) {
+        return buffered(FoveationPyramid.lucriView(img.getWidth(), img.getHeight(), alphaRadius, minAcuity, maxAcuity, minSensitivity, maxSensitivity));
+    }
+
     static UnaryOperator<BufferedImage> lucriView(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity) {
         int size = (int) (round(1 / minAcuity / 2) * 2 + 1);
         return convolution(size, size, lucri(img, alphaRadius, minAcuity, maxAcuity, minSensitivity, maxSensitivity));
     }
 
-    static Function<Convolution, float[][]> smooth(float alpha) {
-        float[][] mx = new float[3][3];
-        return conv -> eyes(mx, alpha);
+    /**
+     * Returns the lucri view processor with the quantized kernel bank
+     *
+     * @param img            the image
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     * @param levels         the number of acuity levels
+     */
+    static UnaryOperator<BufferedImage> lucriView(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity, int levels) {
+        int size = (int) (round(1 / minAcuity / 2) * 2 + 1);
+        return convolution(size, size, lucriBank(img, size, alphaRadius, minAcuity, maxAcuity, minSensitivity, maxSensitivity, levels));
+    }
+
+    /**
+     * Returns the parallel lucri view processor.
+     * The tiles are balanced by the estimated number of active taps (see {@link #lucriCost}).
+     *
+     * @param img            the image
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     * @param executor       the tiled executor
+     */
+    static UnaryOperator<BufferedImage> lucriView(BufferedImage img, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity, TiledExecutor executor) {
+        int size = (int) (round(1 / minAcuity / 2) * 2 + 1);
+        return convolution(size, size,
+                () -> lucri(img, alphaRadius, minAcuity, maxAcuity, minSensitivity, maxSensitivity),
+                executor.cost(lucriCost(img, alphaRadius, minAcuity, maxAcuity, size)));
+    }
+
+    /**
+     * Returns the weight of lucri kernel
+     *
+     * @param acuity      the acuity
+     * @param sensitivity the sensitivity
+     * @param distance2   the square distance between target and source
+     */
+    static float lucriWeight(double acuity, double sensitivity, double distance2) {
+        if (acuity >= 1) {
+            return distance2 <= 0.5 ? (float) sensitivity : 0;
+        } else {
+            double radiusSens = 1 / acuity / 2;
+            double radiusSens2 = radiusSens * radiusSens;
+            double alpha = exp(-distance2 / radiusSens2 / 2) * (1d / 2 / PI) / radiusSens2;
+            return (float) (alpha * sensitivity);
+        }
+    }
+
+    /**
+     * Returns the row kernel applying a pixel processor to each pixel of the rows.
+     * The kernel has its own scratch buffer, so it must not be shared between threads.
+     *
+     * @param pixelProcessor the pixel processor
+     */
+    private static PixelProgram.RowKernel pixelKernel(UnaryOperator<float[]> pixelProcessor) {
+        float[] hsb = new float[3];
+        return (hue, saturation, brightness, offset, n) -> {
+            for (int i = offset; i < offset + n; i++) {
+                hsb[0] = hue[i];
+                hsb[1] = saturation[i];
+                hsb[2] = brightness[i];
+                float[] hsb1 = pixelProcessor.apply(hsb);
+                hue[i] = hsb1[0];
+                saturation[i] = hsb1[1];
+                brightness[i] = hsb1[2];
+            }
+        };
+    }
+
+    /**
+     * Returns the processor of the packed rgb pixels (0xrrggbb) by rows on the image data buffers
+     *
+     * @param pixelProcessor the pixel processor
+     */
+    static UnaryOperator<BufferedImage> rgbProcessor(IntUnaryOperator pixelProcessor) {
+        return source -> {
+            int w = source.getWidth();
+            int h = source.getHeight();
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            rgbTask(RgbRaster.of(source), RgbRaster.data(img), w, pixelProcessor)
+                    .apply(0, 0, w, h);
+            return img;
+        };
     }
 
+    /**
+     * Returns the parallel processor of the packed rgb pixels.
+     * The pixel processor must be thread safe.
+     *
+     * @param pixelProcessor the pixel processor
+     * @param executor       the tiled executor
+     */
+    static UnaryOperator<BufferedImage> rgbProcessor(IntUnaryOperator pixelProcessor, TiledExecutor executor) {
+        return source -> {
+            int w = source.getWidth();
+            int h = source.getHeight();
+            BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            int[] out = RgbRaster.data(img);
+            executor.execute(w, h, () -> rgbTask(RgbRaster.of(source), out, w, pixelProcessor));
+            return img;
+        };
+    }
+
+    /**
+     * Returns the tile task processing the packed rgb pixels
+     *
+     * @param in             the source raster
+     * @param out            the output pixels
+     * @param w              the image width
+     * @param pixelProcessor the pixel processor
+     */
+    private static TiledExecutor.TileTask rgbTask(RgbRaster in, int[] out, int w, IntUnaryOperator pixelProcessor) {
+        return (x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                int o = y * w;
+                for (int x = x0; x < x1; x++) {
+                    out[o + x] = pixelProcessor.applyAsInt(in.rgb(x, y));
+                }
+            }
+        };
+    }
+
+    static Kernel smooth(float alpha) {
+        return Kernel.scalar(true, false, conv -> alpha);
+    }
+
+    /**
+     * Returns the processor smoothing the image with a uniform window
+     *
+     * @param numPixels the window size
+     * @param alpha     the gain
+     */
     static UnaryOperator<BufferedImage> smoothImage(int numPixels, float alpha) {
-        return convolution(numPixels, numPixels, smooth(1f / numPixels / numPixels * alpha));
+        return boxFilter(numPixels, numPixels, 1f / numPixels / numPixels * alpha);
     }
 
     /**
@@ -193,6 +492,17 @@ public interface ImageProcessors {
         return img;
     }
 
+    /**
+     * Returns the variable radius box blur processor iterated for a number of passes.
+     * The output image has the size of the source image and each pass costs the same for any radius.
+     *
+     * @param radius the box radius of each pixel
+     * @param passes the number of passes (3 approximates a gaussian blur)
+     */
+    static UnaryOperator<BufferedImage> variableBoxBlur(IntegralImage.Radius radius, int passes) {
+        return buffered(PlanarProcessors.variableBoxBlur(radius, passes));
+    }
+
     static float[][] zeros(float[][] mx) {
         for (float[] floats : mx) {
             Arrays.fill(floats, 0);
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import java.util.function.UnaryOperator;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Summed-area table of a planar image.
+ * <p>
+ * The entry (x, y) of each plane is the sum of the components in the rectangle (0, 0) - (x - 1, y - 1),
+ * so the sum of any rectangle is computed with four lookups.
+ * The sums are accumulated in double to avoid the drift of float accumulation on large images.
+ * </p>
+ */
+public final class IntegralImage {
+
+    /**
+     * Returns the variable radius box blur processor.
+     * Each pixel is the mean of the components in the box of the pixel radius clipped to the image,
+     * the fractional radii are linearly interpolated between the two enclosing integer boxes.
+     * The output image has the size of the source image.
+     *
+     * @param radius the box radius of each pixel
+     */
+    public static UnaryOperator<FloatImage> boxBlur(Radius radius) {
+        return source -> {
+            IntegralImage sat = create(source);
+            int w = source.width();
+            int h = source.height();
+            FloatImage result = FloatImage.create(w, h);
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    float r = max(radius.radius(x, y), 0);
+                    int r0 = (int) r;
+                    float t = r - r0;
+                    int o = result.index(x, y);
+                    for (int c = 0; c < 3; c++) {
+                        float m0 = (float) sat.mean(c, x, y, r0);
+                        result.plane(c)[o] = t > 0
+                                ? m0 + ((float) sat.mean(c, x, y, r0 + 1) - m0) * t
+                                : m0;
+                    }
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Returns the summed-area table of an image
+     *
+     * @param source the source image
+     */
+    public static IntegralImage create(FloatImage source) {
+        int w = source.width();
+        int h = source.height();
+        int stride = w + 1;
+        double[][] sums = new double[3][stride * (h + 1)];
+        for (int c = 0; c < 3; c++) {
+            float[] plane = source.plane(c);
+            double[] sum = sums[c];
+            for (int y = 0; y < h; y++) {
+                int i = source.index(0, y);
+                int o = (y + 1) * stride + 1;
+                double row = 0;
+                for (int x = 0; x < w; x++) {
+                    row += plane[i + x];
+                    sum[o + x] = sum[o + x - stride] + row;
+                }
+            }
+        }
+        return new IntegralImage(w, h, sums);
+    }
+
+    private final int width;
+    private final int height;
+    private final double[][] sums;
+
+    /**
+     * Creates the summed-area table
+     *
+     * @param width  the width
+     * @param height the height
+     * @param sums   the sums of planes
+     */
+    private IntegralImage(int width, int height, double[][] sums) {
+        this.width = width;
+        this.height = height;
+        this.sums = sums;
+    }
+
+    /**
+     * Returns the height
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns the mean of a component in the square box centered on a pixel clipped to the image
+     *
+     * @param component the component
+     * @param x         the x coordinate of center
+     * @param y         the y coordinate of center
+     * @param radius    the box radius
+     */
+    public double mean(int component, int x, int y, int radius) {
+        int x0 = max(x - radius, 0);
+        int y0 = max(y - radius, 0);
+        int x1 = min(x + radius + 1, width);
+        int y1 = min(y + radius + 1, height);
+        return sum(component, x0, y0, x1, y1) / ((x1 - x0) * (y1 - y0));
+    }
+
+    /**
+     * Returns the sum of a component in the rectangle (x0, y0) - (x1 - 1, y1 - 1)
+     *
+     * @param component the component
+     * @param x0        the left coordinate
+     * @param y0        the top coordinate
+     * @param x1        the right coordinate (exclusive)
+     * @param y1        the bottom coordinate (exclusive)
+     */
+    public double sum(int component, int x0, int y0, int x1, int y1) {
+        double[] sum = sums[component];
+        int stride = width + 1;
+        return sum[y1 * stride + x1] - sum[y0 * stride + x1] - sum[y1 * stride + x0] + sum[y0 * stride + x0];
+    }
+
+    /**
+     * Returns the width
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * The box radius of pixels
+     */
+    @FunctionalInterface
+    public interface Radius {
+        /**
+         * Returns the box radius of a pixel
+         *
+         * @param x the x coordinate
+         * @param y the y coordinate
+         */
+        float radius(int x, int y);
+    }
+}
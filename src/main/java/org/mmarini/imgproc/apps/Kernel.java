@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.mmarini.imgproc.apps.ImageProcessors.Convolution;
+
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Convolution kernel with the descriptor of its structure.
+ * <p>
+ * The descriptor lets the convolution engine choose a specialized loop:
+ * <ul>
+ *     <li>shift-invariant kernels depend only on the offset between target and source,
+ *     so the taps are computed once per image</li>
+ *     <li>scalar-diagonal kernels ({@link ScalarKernel}) are a scalar weight times identity,
+ *     so the color mix is a single multiply</li>
+ *     <li>sparse kernels may have zero taps that are skipped</li>
+ *     <li>the other kernels are general 3x3 color mixes</li>
+ * </ul>
+ * </p>
+ */
+public interface Kernel extends Function<Convolution, float[][]> {
+
+    /**
+     * Returns the general color mix kernel
+     *
+     * @param shiftInvariant true if the kernel depends only on the target-source offset
+     * @param sparse         true if the kernel may have zero taps
+     * @param matrixSupplier the supplier of color matrix
+     */
+    static Kernel matrix(boolean shiftInvariant, boolean sparse, Function<Convolution, float[][]> matrixSupplier) {
+        requireNonNull(matrixSupplier);
+        return new Kernel() {
+            @Override
+            public float[][] apply(Convolution conv) {
+                return matrixSupplier.apply(conv);
+            }
+
+            @Override
+            public boolean isShiftInvariant() {
+                return shiftInvariant;
+            }
+
+            @Override
+            public boolean isSparse() {
+                return sparse;
+            }
+        };
+    }
+
+    /**
+     * Returns the scalar-diagonal kernel.
+     * The weight function must be thread safe.
+     *
+     * @param shiftInvariant true if the kernel depends only on the target-source offset
+     * @param sparse         true if the kernel may have zero taps
+     * @param weight         the weight function
+     */
+    static ScalarKernel scalar(boolean shiftInvariant, boolean sparse, Weight weight) {
+        requireNonNull(weight);
+        float[][] mx = new float[3][3];
+        return new ScalarKernel() {
+            @Override
+            public float[][] apply(Convolution conv) {
+                return ImageProcessors.eyes(mx, weight.apply(conv));
+            }
+
+            @Override
+            public boolean isShiftInvariant() {
+                return shiftInvariant;
+            }
+
+            @Override
+            public boolean isSparse() {
+                return sparse;
+            }
+
+            @Override
+            public float weight(Convolution conv) {
+                return weight.apply(conv);
+            }
+        };
+    }
+
+    /**
+     * Translates the source and target coordinates of a convolution context
+     *
+     * @param conv the convolution context
+     * @param x    the x offset
+     * @param y    the y offset
+     */
+    private static void move(Convolution conv, int x, int y) {
+        conv.source.translate(x, y);
+        conv.target.translate(x, y);
+    }
+
+    /**
+     * Returns true if the kernel depends only on the offset between target and source
+     */
+    boolean isShiftInvariant();
+
+    /**
+     * Returns true if the kernel may have zero taps
+     */
+    boolean isSparse();
+
+    /**
+     * Returns the kernel evaluated with the source and target coordinates translated by an offset.
+     * It applies a position dependent kernel to a region of the image (e.g. a band) with the region coordinates.
+     *
+     * @param x the x offset of the region
+     * @param y the y offset of the region
+     */
+    default Kernel translate(int x, int y) {
+        if (isShiftInvariant() || (x == 0 && y == 0)) {
+            return this;
+        }
+        if (this instanceof ScalarKernel kernel) {
+            return scalar(false, isSparse(), conv -> {
+                move(conv, x, y);
+                try {
+                    return kernel.weight(conv);
+                } finally {
+                    move(conv, -x, -y);
+                }
+            });
+        }
+        Kernel kernel = this;
+        return matrix(false, isSparse(), conv -> {
+            move(conv, x, y);
+            try {
+                return kernel.apply(conv);
+            } finally {
+                move(conv, -x, -y);
+            }
+        });
+    }
+
+    /**
+     * Computes the scalar weight of a tap
+     */
+    @FunctionalInterface
+    interface Weight {
+        /**
+         * Returns the weight
+         *
+         * @param conv the convolution context
+         */
+        float apply(Convolution conv);
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.mmarini.imgproc.apps.ImageProcessors.Convolution;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static java.lang.Math.*;
+
+/**
+ * Lucri kernel with the eccentricity quantized in acuity levels.
+ * <p>
+ * Each level holds the precomputed weight table of the window taps, and each source pixel holds the offset
+ * of its level table, so the weight of a tap is a table lookup.
+ * The maximum error of the weights against the exact kernel (see {@link ImageProcessors#lucri}) is computed
+ * by sampling the eccentricity range of each level.
+ * The bank of a region of the image (e.g. a band or a tile) shares the tables of the whole image bank
+ * with the origin of the region (see {@link #translate}).
+ * </p>
+ */
+public final class LucriKernelBank implements ScalarKernel {
+    public static final int DEFAULT_LEVELS = 64;
+    private static final int ERROR_SAMPLES = 8;
+
+    /**
+     * Returns the kernel bank
+     *
+     * @param width          the image width
+     * @param height         the image height
+     * @param size           the window size
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     * @param levels         the number of levels
+     */
+    public static LucriKernelBank create(int width, int height, int size, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity, int levels) {
+        if (levels <= 0) {
+            throw new IllegalArgumentException("Levels must be positive");
+        }
+        int cx = width / 2;
+        int cy = height / 2;
+        double radius = (double) (max(width, height) / 2) * alphaRadius / 2;
+        double radius2 = radius * radius * 2;
+        DoubleUnaryOperator mapper = PixelProcessors.map(1, 0, minAcuity, maxAcuity);
+        DoubleUnaryOperator mapper1 = PixelProcessors.map(1, 0, minSensitivity, maxSensitivity);
+
+        // Eccentricity range of the image
+        double maxDist2 = (double) max(cx, width - 1 - cx) * max(cx, width - 1 - cx)
+                + (double) max(cy, height - 1 - cy) * max(cy, height - 1 - cy);
+        double minRad = exp(-maxDist2 / radius2);
+        double step = (1 - minRad) / levels;
+
+        int taps = size * size;
+        float[] weights = new float[levels * taps];
+        double maxError = 0;
+        double maxOutputError = 0;
+        for (int level = 0; level < levels; level++) {
+            double rad = minRad + (level + 0.5) * step;
+            fillTable(weights, level * taps, size, mapper.applyAsDouble(rad), mapper1.applyAsDouble(rad));
+            for (int i = 0; i <= ERROR_SAMPLES; i++) {
+                double rad1 = minRad + (level + (double) i / ERROR_SAMPLES) * step;
+                double acuity = mapper.applyAsDouble(rad1);
+                double sensitivity = mapper1.applyAsDouble(rad1);
+                double sumError = 0;
+                for (int j = 0; j < taps; j++) {
+                    double dx = j % size - size / 2;
+                    double dy = j / size - size / 2;
+                    double exact = ImageProcessors.lucriWeight(acuity, sensitivity, dx * dx + dy * dy);
+                    double error = abs(weights[level * taps + j] - exact);
+                    maxError = max(maxError, error);
+                    sumError += error;
+                }
+                maxOutputError = max(maxOutputError, sumError * 255);
+            }
+        }
+
+        int[] levelOffsets = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double dx = x - cx;
+                double dy = y - cy;
+                double rad = exp(-(dx * dx + dy * dy) / radius2);
+                int level = min(max((int) floor((rad - minRad) / step), 0), levels - 1);
+                levelOffsets[y * width + x] = level * taps;
+            }
+        }
+        return new LucriKernelBank(width, height, size, levels, weights, levelOffsets, maxError, maxOutputError, 0, 0);
+    }
+
+    /**
+     * Fills the weight table of a level
+     *
+     * @param weights     the weights
+     * @param offset      the offset of table
+     * @param size        the window size
+     * @param acuity      the acuity
+     * @param sensitivity the sensitivity
+     */
+    private static void fillTable(float[] weights, int offset, int size, double acuity, double sensitivity) {
+        for (int dy = 0; dy < size; dy++) {
+            for (int dx = 0; dx < size; dx++) {
+                double x = dx - size / 2;
+                double y = dy - size / 2;
+                weights[offset + dy * size + dx] = ImageProcessors.lucriWeight(acuity, sensitivity, x * x + y * y);
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final int size;
+    private final int levels;
+    private final float[] weights;
+    private final int[] levelOffsets;
+    private final double maxError;
+    private final double maxOutputError;
+    private final int originX;
+    private final int originY;
+
+    /**
+     * Creates the kernel bank
+     *
+     * @param width          the image width
+     * @param height         the image height
+     * @param size           the window size
+     * @param levels         the number of levels
+     * @param weights        the weight tables of levels
+     * @param levelOffsets   the offsets of level table for each source pixel
+     * @param maxError       the maximum weight error
+     * @param maxOutputError the maximum output error
+     * @param originX        the x origin of the source coordinates
+     * @param originY        the y origin of the source coordinates
+     */
+    private LucriKernelBank(int width, int height, int size, int levels, float[] weights, int[] levelOffsets, double maxError, double maxOutputError, int originX, int originY) {
+        this.width = width;
+        this.height = height;
+        this.size = size;
+        this.levels = levels;
+        this.weights = weights;
+        this.levelOffsets = levelOffsets;
+        this.maxError = maxError;
+        this.maxOutputError = maxOutputError;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+    @Override
+    public float[][] apply(Convolution conv) {
+        return ImageProcessors.eyes(new float[3][3], weight(conv));
+    }
+
+    /**
+     * Returns the image height
+     */
+    public int height() {
+        return height;
+    }
+
+    @Override
+    public boolean isShiftInvariant() {
+        return false;
+    }
+
+    @Override
+    public boolean isSparse() {
+        return true;
+    }
+
+    /**
+     * Returns the offsets of level table for each source pixel of the whole image (row-major with the image width)
+     */
+    public int[] levelOffsets() {
+        return levelOffsets;
+    }
+
+    /**
+     * Returns the number of levels
+     */
+    public int levels() {
+        return levels;
+    }
+
+    /**
+     * Returns the maximum absolute error of the weights against the exact kernel
+     */
+    public double maxError() {
+        return maxError;
+    }
+
+    /**
+     * Returns the upper bound of the output error (color levels) against the exact kernel
+     */
+    public double maxOutputError() {
+        return maxOutputError;
+    }
+
+    /**
+     * Returns the x origin of the source coordinates in the image
+     */
+    public int originX() {
+        return originX;
+    }
+
+    /**
+     * Returns the y origin of the source coordinates in the image
+     */
+    public int originY() {
+        return originY;
+    }
+
+    /**
+     * Returns the window size
+     */
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public float weight(Convolution conv) {
+        int dx = conv.source.x - conv.target.x + size / 2;
+        int dy = conv.source.y - conv.target.y + size / 2;
+        return weights[levelOffsets[(conv.source.y + originY) * width + conv.source.x + originX] + dy * size + dx];
+    }
+
+    /**
+     * Returns the bank of a region of the image with the source coordinates translated by the region offset
+     *
+     * @param x the x offset of the region
+     * @param y the y offset of the region
+     */
+    @Override
+    public LucriKernelBank translate(int x, int y) {
+        return x == 0 && y == 0
+                ? this
+                : new LucriKernelBank(width, height, size, levels, weights, levelOffsets, maxError, maxOutputError, originX + x, originY + y);
+    }
+
+    /**
+     * Returns the weight tables of levels, the tap (dx, dy) of level is at levelOffset + dy * size + dx
+     */
+    public float[] weights() {
+        return weights;
+    }
+
+    /**
+     * Returns the image width
+     */
+    public int width() {
+        return width;
+    }
+}
@@ -39,6 +39,9 @@ import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.function.UnaryOperator;
 
 import static java.lang.Math.min;
 
@@ -47,6 +50,12 @@ import static java.lang.Math.min;
  */
 public class LucriView {
     public static final Dimension DEFAULT_SIZE = new Dimension(800, 600);
+    private static final double ALPHA_RADIUS = 1;
+    private static final double MIN_ACUITY = 1d / 20;
+    private static final double MAX_ACUITY = 0.2;
+    private static final double MIN_SENSITIVITY = 0.4;
+    private static final double MAX_SENSITIVITY = 1;
+    private static final int BOX_PASSES = 3;
     private static final Logger logger = LoggerFactory.getLogger(LucriView.class);
 
     /**
@@ -70,6 +79,33 @@ public class LucriView {
         };
     }
 
+    /**
+     * Returns the canvas of a tiled image painting only the visible region
+     *
+     * @param image the tiled image
+     */
+    private static JComponent createCanvas(TiledImage image) {
+        return new JComponent() {
+            @Override
+            public Dimension getPreferredSize() {
+                return new Dimension(image.width(), image.height());
+            }
+
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                Rectangle clip = g.getClipBounds();
+                Rectangle visible = clip != null
+                        ? clip.intersection(new Rectangle(image.width(), image.height()))
+                        : new Rectangle(image.width(), image.height());
+                if (!visible.isEmpty()) {
+                    g.drawImage(image.toBufferedImage(visible.x, visible.y, visible.width, visible.height),
+                            visible.x, visible.y, this);
+                }
+            }
+        };
+    }
+
     /**
      * Returns the argument parser
      */
@@ -81,6 +117,26 @@ public class LucriView {
         parser.addArgument("-f", "--file")
                 .required(true)
                 .help("specify the image file");
+        parser.addArgument("-p", "--parallel")
+                .action(Arguments.storeTrue())
+                .help("process the image tiles in parallel");
+        parser.addArgument("-e", "--engine")
+                .choices("convolution", "pyramid", "box")
+                .setDefault("convolution")
+                .help("specify the foveation engine");
+        parser.addArgument("-l", "--levels")
+                .type(Integer.class)
+                .setDefault(0)
+                .help("specify the number of quantized acuity levels (0 for the exact kernel)");
+        parser.addArgument("-o", "--output")
+                .help("specify the output file (tiff) processed by bands without display");
+        parser.addArgument("-b", "--band")
+                .type(Integer.class)
+                .setDefault(StreamingProcessor.DEFAULT_BAND_HEIGHT)
+                .help("specify the number of rows per band of the output file");
+        parser.addArgument("-t", "--tiled")
+                .action(Arguments.storeTrue())
+                .help("display the processed image computed by tiles on demand from the off-heap source");
         parser.addArgument("-v", "--version")
                 .action(Arguments.version())
                 .help("show current version");
@@ -95,7 +151,7 @@ public class LucriView {
     public static void main(String[] args) {
         ArgumentParser parser = createParser();
         try {
-            new LucriView(parser.parseArgs(args)).run();
+            new LucriView(validate(parser, parser.parseArgs(args))).run();
         } catch (ArgumentParserException e) {
             parser.handleError(e);
             System.exit(1);
@@ -105,6 +161,38 @@ public class LucriView {
         }
     }
 
+    /**
+     * Returns the validated command line arguments.
+     * The pyramid and box engines, the band output and the tiled view do not use some of the convolution options,
+     * so the combinations are rejected instead of being silently ignored.
+     *
+     * @param parser the argument parser
+     * @param args   the parsed arguments
+     * @throws ArgumentParserException if the arguments are not consistent
+     */
+    private static Namespace validate(ArgumentParser parser, Namespace args) throws ArgumentParserException {
+        String engine = args.getString("engine");
+        boolean parallel = args.getBoolean("parallel");
+        if (!"convolution".equals(engine)) {
+            if (args.getInt("levels") > 0 || parallel) {
+                throw new ArgumentParserException("--levels and --parallel apply only to the convolution engine", parser);
+            }
+            if (args.getString("output") != null) {
+                throw new ArgumentParserException("--output applies only to the convolution engine", parser);
+            }
+            if (args.getBoolean("tiled")) {
+                throw new ArgumentParserException("--tiled applies only to the convolution engine", parser);
+            }
+        }
+        if (parallel && args.getString("output") != null) {
+            throw new ArgumentParserException("--parallel does not apply to the band output", parser);
+        }
+        if (args.getBoolean("tiled") && (parallel || args.getString("output") != null)) {
+            throw new ArgumentParserException("--tiled does not apply to --parallel and --output", parser);
+        }
+        return args;
+    }
+
     private final Namespace args;
     private final JFrame frame;
     private final JSplitPane split;
@@ -121,6 +209,73 @@ public class LucriView {
         init();
     }
 
+    /**
+     * Returns the image processor selected by the command line arguments
+     *
+     * @param source the source image
+     */
+    private UnaryOperator<BufferedImage> createProcessor(BufferedImage source) {
+        String engine = args.getString("engine");
+        if ("pyramid".equals(engine)) {
+            return ImageProcessors.lucriPyramidView(source, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, MIN_SENSITIVITY, MAX_SENSITIVITY);
+        }
+        if ("box".equals(engine)) {
+            return ImageProcessors.lucriBoxView(source, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, MIN_SENSITIVITY, MAX_SENSITIVITY, BOX_PASSES);
+        }
+        int levels = args.getInt("levels");
+        boolean parallel = args.getBoolean("parallel");
+        if (levels <= 0) {
+            return parallel
+                    ? ImageProcessors.lucriView(source, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, MIN_SENSITIVITY, MAX_SENSITIVITY, TiledExecutor.create())
+                    : ImageProcessors.lucriView(source, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, MIN_SENSITIVITY, MAX_SENSITIVITY);
+        }
+        int size = (int) (Math.round(1 / MIN_ACUITY / 2) * 2 + 1);
+        LucriKernelBank bank = ImageProcessors.lucriBank(source, size, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, MIN_SENSITIVITY, MAX_SENSITIVITY, levels);
+        logger.atInfo().log("Kernel bank with {} levels, max weight error {}, max output error {}",
+                levels, bank.maxError(), bank.maxOutputError());
+        return parallel
+                ? ImageProcessors.convolution(size, size, () -> bank,
+                TiledExecutor.create().cost(ImageProcessors.lucriCost(source, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, size)))
+                : ImageProcessors.convolution(size, size, bank);
+    }
+
+    /**
+     * Returns the lucri kernel selected by the command line arguments (exact or kernel bank)
+     *
+     * @param width  the image width
+     * @param height the image height
+     * @param size   the window size
+     */
+    private Kernel createKernel(int width, int height, int size) {
+        int levels = args.getInt("levels");
+        return levels <= 0
+                ? ImageProcessors.lucri(width, height, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, MIN_SENSITIVITY, MAX_SENSITIVITY)
+                : LucriKernelBank.create(width, height, size, ALPHA_RADIUS, MIN_ACUITY, MAX_ACUITY, MIN_SENSITIVITY, MAX_SENSITIVITY, levels);
+    }
+
+    /**
+     * Returns the processed image computed by tiles on demand.
+     * The source is copied off-heap and released when the window is closing.
+     *
+     * @param source the source image
+     */
+    private TiledImage createTiledImage(BufferedImage source) {
+        int size = (int) (Math.round(1 / MIN_ACUITY / 2) * 2 + 1);
+        OffHeapImage store = OffHeapImage.of(source);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                try {
+                    store.close();
+                } catch (IOException ex) {
+                    logger.atError().setCause(ex).log("Error releasing the off-heap image");
+                }
+            }
+        });
+        return TiledImage.of(store)
+                .apply(size, size, RegionProcessor.convolution(size, size, createKernel(source.getWidth(), source.getHeight(), size)));
+    }
+
     /**
      * Initializes application
      */
@@ -137,15 +292,22 @@ public class LucriView {
 
     /**
      * Runs the application
+     *
+     * @throws IOException in case of error
      */
-    private void run() {
+    private void run() throws IOException {
         logger.atInfo().log("Started {}.", Messages.getString("Imgproc.title"));
         String file = args.getString("file");
+        String output = args.getString("output");
+        if (output != null) {
+            stream(new File(file), new File(output));
+            return;
+        }
         BufferedImage source = ImageProcessors.toBuffered(new ImageIcon(file).getImage(), frame);
-        Image image = ImageProcessors.lucriView(source, 1, 1d / 20, 0.2, 0.4, 1)
-                .apply(source);
         split.setLeftComponent(new JScrollPane(createCanvas(source)));
-        split.setRightComponent(new JScrollPane(createCanvas(image)));
+        split.setRightComponent(new JScrollPane(args.getBoolean("tiled")
+                ? createCanvas(createTiledImage(source))
+                : createCanvas(createProcessor(source).apply(source))));
         split.setResizeWeight(0.5);
         frame.addWindowListener(new WindowAdapter() {
             @Override
@@ -155,4 +317,20 @@ public class LucriView {
         });
         frame.setVisible(true);
     }
+
+    /**
+     * Processes the image file by bands with the lucri kernel (exact or kernel bank) and writes the output file
+     *
+     * @param file   the image file
+     * @param output the output file
+     * @throws IOException in case of error
+     */
+    private void stream(File file, File output) throws IOException {
+        Dimension imageSize = StreamingProcessor.size(file);
+        int size = (int) (Math.round(1 / MIN_ACUITY / 2) * 2 + 1);
+        Kernel kernel = createKernel(imageSize.width, imageSize.height, size);
+        StreamingProcessor.create(size, size, args.getInt("band"), RegionProcessor.convolution(size, size, kernel))
+                .process(file, output);
+        logger.atInfo().log("Written {}", output);
+    }
 }
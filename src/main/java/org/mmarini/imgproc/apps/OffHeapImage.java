@@ -0,0 +1,452 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Planar float rgb image stored out of the java heap.
+ * <p>
+ * The planes are split in chunks of whole rows backed by direct or memory-mapped buffers,
+ * so the image size is not limited by the 2 GB array size and, when mapped, by the physical memory.
+ * The pixels are copied in and out by rectangular regions as {@link FloatImage},
+ * the processors work on horizontal bands with the halo rows of the window (see {@link #process})
+ * or on tiles pulled by a {@link TiledImage}.
+ * </p>
+ * <p>
+ * The image has a single owner that releases the storage by {@link #close()}: the mapped files are flushed
+ * and unmapped, the direct memory is freed and the channels closed.
+ * The regions can be read and written by many threads, each access holds the read lock of the image
+ * and closing holds the write lock, so the storage is freed only after the running accesses
+ * and any access after closing throws IllegalStateException instead of touching the freed memory.
+ * The buffers are freed by the cleaner of sun.misc.Unsafe (module jdk.unsupported);
+ * if it is not available the memory is released when the buffers are collected.
+ * </p>
+ */
+public final class OffHeapImage implements AutoCloseable {
+    /**
+     * The maximum number of bytes of a chunk
+     */
+    static final int MAX_CHUNK_BYTES = 1 << 30;
+    private static final int COPY_BAND_HEIGHT = 256;
+    private static final int FLOAT_BYTES = Float.BYTES;
+    private static final Logger logger = LoggerFactory.getLogger(OffHeapImage.class);
+    private static final MethodHandle CLEANER = cleaner();
+
+    /**
+     * Returns the image stored in direct buffers
+     *
+     * @param width  the width
+     * @param height the height
+     */
+    public static OffHeapImage allocate(int width, int height) {
+        return allocate(width, height, rowsPerChunk(width));
+    }
+
+    /**
+     * Returns the image stored in direct buffers with a chunk size
+     *
+     * @param width        the width
+     * @param height       the height
+     * @param rowsPerChunk the number of rows per chunk
+     */
+    static OffHeapImage allocate(int width, int height, int rowsPerChunk) {
+        checkChunk(width, height, rowsPerChunk);
+        ByteBuffer[][] buffers = new ByteBuffer[3][numChunks(height, rowsPerChunk)];
+        FloatBuffer[][] chunks = new FloatBuffer[3][buffers[0].length];
+        for (int c = 0; c < 3; c++) {
+            for (int k = 0; k < chunks[c].length; k++) {
+                int rows = min(rowsPerChunk, height - k * rowsPerChunk);
+                buffers[c][k] = ByteBuffer.allocateDirect(rows * width * FLOAT_BYTES);
+                chunks[c][k] = buffers[c][k].order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+        }
+        return new OffHeapImage(width, height, rowsPerChunk, chunks, buffers, null);
+    }
+
+    /**
+     * Returns the image stored in a memory-mapped file.
+     * The file contains the red, green and blue planes in sequence, it is created or extended if required.
+     *
+     * @param file   the file
+     * @param width  the width
+     * @param height the height
+     * @throws IOException in case of error
+     */
+    public static OffHeapImage map(Path file, int width, int height) throws IOException {
+        return map(file, width, height, rowsPerChunk(width));
+    }
+
+    /**
+     * Returns the image stored in a memory-mapped file with a chunk size
+     *
+     * @param file         the file
+     * @param width        the width
+     * @param height       the height
+     * @param rowsPerChunk the number of rows per chunk
+     * @throws IOException in case of error
+     */
+    static OffHeapImage map(Path file, int width, int height, int rowsPerChunk) throws IOException {
+        checkChunk(width, height, rowsPerChunk);
+        FileChannel channel = FileChannel.open(file, CREATE, READ, WRITE);
+        MappedByteBuffer[][] maps = new MappedByteBuffer[3][numChunks(height, rowsPerChunk)];
+        try {
+            long planeBytes = (long) width * height * FLOAT_BYTES;
+            FloatBuffer[][] chunks = new FloatBuffer[3][maps[0].length];
+            for (int c = 0; c < 3; c++) {
+                for (int k = 0; k < chunks[c].length; k++) {
+                    int rows = min(rowsPerChunk, height - k * rowsPerChunk);
+                    long position = c * planeBytes + (long) k * rowsPerChunk * width * FLOAT_BYTES;
+                    maps[c][k] = channel.map(FileChannel.MapMode.READ_WRITE, position, (long) rows * width * FLOAT_BYTES);
+                    chunks[c][k] = maps[c][k].order(ByteOrder.nativeOrder()).asFloatBuffer();
+                }
+            }
+            return new OffHeapImage(width, height, rowsPerChunk, chunks, maps, channel);
+        } catch (IOException | RuntimeException ex) {
+            for (MappedByteBuffer[] plane : maps) {
+                for (MappedByteBuffer buffer : plane) {
+                    if (buffer != null) {
+                        free(buffer);
+                    }
+                }
+            }
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Returns the image stored in direct buffers with the pixels of a buffered image.
+     * The pixels are copied by bands, so the heap does not hold the planar image of the whole image.
+     *
+     * @param img the buffered image
+     */
+    public static OffHeapImage of(BufferedImage img) {
+        int w = img.getWidth();
+        int h = img.getHeight();
+        OffHeapImage result = allocate(w, h);
+        for (int y = 0; y < h; y += COPY_BAND_HEIGHT) {
+            result.write(0, y, FloatImage.of(img.getSubimage(0, y, w, min(COPY_BAND_HEIGHT, h - y))));
+        }
+        return result;
+    }
+
+    /**
+     * Checks the chunk size
+     *
+     * @param width        the width
+     * @param height       the height
+     * @param rowsPerChunk the number of rows per chunk
+     */
+    private static void checkChunk(int width, int height, int rowsPerChunk) {
+        if (width <= 0 || height < 0 || rowsPerChunk <= 0 || (long) rowsPerChunk * width * FLOAT_BYTES > MAX_CHUNK_BYTES) {
+            throw new IllegalArgumentException("Invalid chunk of " + rowsPerChunk + " rows for image " + width + "x" + height);
+        }
+    }
+
+    /**
+     * Returns the handle of sun.misc.Unsafe.invokeCleaner bound to the unsafe instance or null if not available
+     */
+    private static MethodHandle cleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(field.get(null));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            logger.atWarn().setCause(ex).log("Off-heap buffers will be released by the garbage collector");
+            return null;
+        }
+    }
+
+    /**
+     * Frees a direct or mapped buffer
+     *
+     * @param buffer the buffer
+     */
+    private static void free(ByteBuffer buffer) {
+        if (CLEANER != null) {
+            try {
+                CLEANER.invokeExact(buffer);
+            } catch (RuntimeException | Error ex) {
+                throw ex;
+            } catch (Throwable ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of chunks of a plane
+     *
+     * @param height       the height
+     * @param rowsPerChunk the number of rows per chunk
+     */
+    private static int numChunks(int height, int rowsPerChunk) {
+        return (height + rowsPerChunk - 1) / rowsPerChunk;
+    }
+
+    /**
+     * Returns the number of rows per chunk
+     *
+     * @param width the width
+     */
+    private static int rowsPerChunk(int width) {
+        if (width <= 0 || width > MAX_CHUNK_BYTES / FLOAT_BYTES) {
+            throw new IllegalArgumentException("Invalid image width " + width);
+        }
+        return MAX_CHUNK_BYTES / FLOAT_BYTES / width;
+    }
+
+    private final int width;
+    private final int height;
+    private final int rowsPerChunk;
+    private final ByteBuffer[][] buffers;
+    private final FileChannel channel;
+    private final FloatBuffer[][] chunks;
+    private final Lock readLock;
+    private final Lock writeLock;
+    private boolean closed;
+
+    /**
+     * Creates the image
+     *
+     * @param width        the width
+     * @param height       the height
+     * @param rowsPerChunk the number of rows per chunk
+     * @param chunks       the chunks of planes
+     * @param buffers      the direct or mapped buffers of chunks
+     * @param channel      the file channel or null if not mapped
+     */
+    private OffHeapImage(int width, int height, int rowsPerChunk, FloatBuffer[][] chunks, ByteBuffer[][] buffers, FileChannel channel) {
+        this.width = width;
+        this.height = height;
+        this.rowsPerChunk = rowsPerChunk;
+        this.chunks = chunks;
+        this.buffers = buffers;
+        this.channel = channel;
+        ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        this.readLock = lock.readLock();
+        this.writeLock = lock.writeLock();
+    }
+
+    /**
+     * Checks the image is open, the caller must hold a lock
+     */
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Image closed");
+        }
+    }
+
+    /**
+     * Checks a region is within the image
+     *
+     * @param x      the left coordinate
+     * @param y      the top coordinate
+     * @param width  the width
+     * @param height the height
+     */
+    private void checkRegion(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Region out of image bounds");
+        }
+    }
+
+    /**
+     * Releases the storage.
+     * It waits for the running reads and writes, then the mapped buffers are flushed to the file and unmapped,
+     * the direct buffers are freed. Closing a closed image has no effect.
+     *
+     * @throws IOException in case of error
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            release();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the height
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns true if the image is closed
+     */
+    public boolean isClosed() {
+        readLock.lock();
+        try {
+            return closed;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Processes the image by horizontal bands and writes the result to the target image.
+     * The processor must produce the "valid" output of a ww x wh window, i.e. (w - ww + 1) x (h - wh + 1),
+     * the bands overlap by wh - 1 rows so the result is the same of processing the whole image.
+     *
+     * @param processor  the processor
+     * @param ww         the window width
+     * @param wh         the window height
+     * @param bandHeight the number of output rows per band
+     * @param target     the target image of size (w - ww + 1) x (h - wh + 1)
+     */
+    public void process(UnaryOperator<FloatImage> processor, int ww, int wh, int bandHeight, OffHeapImage target) {
+        int ow = width - ww + 1;
+        int oh = height - wh + 1;
+        if (target.width != ow || target.height != oh) {
+            throw new IllegalArgumentException("Target size must be " + ow + "x" + oh);
+        }
+        int band = max(bandHeight, 1);
+        for (int y = 0; y < oh; y += band) {
+            int bh = min(band, oh - y);
+            target.write(0, y, processor.apply(read(0, y, width, bh + wh - 1)));
+        }
+    }
+
+    /**
+     * Returns a region of the image copied to the heap
+     *
+     * @param x      the left coordinate
+     * @param y      the top coordinate
+     * @param width  the width
+     * @param height the height
+     */
+    public FloatImage read(int x, int y, int width, int height) {
+        checkRegion(x, y, width, height);
+        FloatImage result = FloatImage.create(width, height);
+        readLock.lock();
+        try {
+            checkOpen();
+            for (int c = 0; c < 3; c++) {
+                float[] plane = result.plane(c);
+                for (int j = 0; j < height; j++) {
+                    int row = y + j;
+                    chunks[c][row / rowsPerChunk].get((row % rowsPerChunk) * this.width + x, plane, result.index(0, j), width);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Flushes and frees the buffers, the caller must hold the write lock
+     *
+     * @throws IOException in case of error
+     */
+    private void release() throws IOException {
+        try {
+            if (channel != null) {
+                for (ByteBuffer[] plane : buffers) {
+                    for (ByteBuffer buffer : plane) {
+                        ((MappedByteBuffer) buffer).force();
+                    }
+                }
+            }
+        } finally {
+            for (ByteBuffer[] plane : buffers) {
+                for (ByteBuffer buffer : plane) {
+                    free(buffer);
+                }
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the width
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Writes a region of the image
+     *
+     * @param x     the left coordinate
+     * @param y     the top coordinate
+     * @param image the region content
+     */
+    public void write(int x, int y, FloatImage image) {
+        int w = image.width();
+        int h = image.height();
+        checkRegion(x, y, w, h);
+        readLock.lock();
+        try {
+            checkOpen();
+            for (int c = 0; c < 3; c++) {
+                float[] plane = image.plane(c);
+                for (int j = 0; j < h; j++) {
+                    int row = y + j;
+                    chunks[c][row / rowsPerChunk].put((row % rowsPerChunk) * width + x, plane, image.index(0, j), w);
+                }
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleUnaryOperator;
+
+import static java.lang.Math.*;
+
+/**
+ * Piecewise-linear function.
+ * <p>
+ * The function is defined by the sorted breakpoints x[k] and by the slope a[k] and intercept b[k] of n + 1 segments,
+ * the segment k covers the interval [x[k - 1], x[k]) with y = a[k] x + b[k].
+ * The breakpoints are the first doubles satisfying the conditions of the definitions
+ * (e.g. Math.nextUp(t) for the conditions x &gt; t), so {@link #diff} and {@link #hysteresis} select the same segments
+ * of {@link PixelProcessors#diff} and {@link PixelProcessors#hysteresis} and their values differ only by rounding.
+ * The composition of functions is a single function with the adjacent equal segments merged,
+ * so a chain of functions costs one segment search or one table lookup (see {@link #tabulate}).
+ * </p>
+ */
+public final class PiecewiseLinear implements DoubleUnaryOperator {
+
+    /**
+     * Returns the constant function
+     *
+     * @param value the value
+     */
+    public static PiecewiseLinear constant(double value) {
+        return linear(0, value);
+    }
+
+    /**
+     * Returns the difference module 0.5 function: x - x0 wrapped in the range -0.5 ... 0.5
+     *
+     * @param x0 the reference value
+     */
+    public static PiecewiseLinear diff(double x0) {
+        // The conditions d < -0.5 and d > 0.5 are evaluated on the rounded difference d = x - x0
+        return new PiecewiseLinear(
+                new double[]{firstDiff(x0, -0.5), firstDiff(x0, nextUp(0.5))},
+                new double[]{1, 1, 1},
+                new double[]{1 - x0, -x0, -x0 - 1});
+    }
+
+    /**
+     * Returns the hysteresis function (see {@link PixelProcessors#hysteresis})
+     *
+     * @param x1 the value for unary result
+     * @param x0 the value for zero result
+     */
+    public static PiecewiseLinear hysteresis(double x1, double x0) {
+        if (x1 >= x0) {
+            // Step function without the linear segments
+            return new PiecewiseLinear(
+                    new double[]{nextUp(-x0), 0, x0},
+                    new double[]{0, 0, 0, 0},
+                    new double[]{0, -1, 1, 0});
+        }
+        PiecewiseLinear pos = map(x1, x0, 1, 0);
+        PiecewiseLinear neg = map(-x1, -x0, -1, 0);
+        return new PiecewiseLinear(
+                new double[]{nextUp(-x0), -x1, 0, nextUp(x1), x0},
+                new double[]{0, neg.slopes[0], 0, 0, pos.slopes[0], 0},
+                new double[]{0, neg.intercepts[0], -1, 1, pos.intercepts[0], 0});
+    }
+
+    /**
+     * Returns the linear function a x + b
+     *
+     * @param a the slope
+     * @param b the intercept
+     */
+    public static PiecewiseLinear linear(double a, double b) {
+        return new PiecewiseLinear(new double[0], new double[]{a}, new double[]{b});
+    }
+
+    /**
+     * Returns the linear mapper (see {@link PixelProcessors#map})
+     *
+     * @param x0 the x0 value
+     * @param x1 the x1 value
+     * @param y0 the y0 value
+     * @param y1 the y1 value
+     */
+    public static PiecewiseLinear map(double x0, double x1, double y0, double y1) {
+        return linear(PixelProcessors.mapSlope(x0, x1, y0, y1), PixelProcessors.mapIntercept(x0, x1, y0, y1));
+    }
+
+    /**
+     * Returns the first double x with the rounded difference x - x0 &gt;= d
+     *
+     * @param x0 the reference value
+     * @param d  the difference
+     */
+    private static double firstDiff(double x0, double d) {
+        // Brackets the value by steps not smaller than the ulp of the operands and then bisects
+        double step = ulp(abs(x0) + abs(d));
+        double hi = x0 + d;
+        while (hi - x0 < d) {
+            hi += step;
+        }
+        double lo = hi - step;
+        while (lo - x0 >= d) {
+            hi = lo;
+            lo -= step;
+        }
+        for (; ; ) {
+            double mid = lo + (hi - lo) / 2;
+            if (mid <= lo || mid >= hi) {
+                return hi;
+            }
+            if (mid - x0 >= d) {
+                hi = mid;
+            } else {
+                lo = mid;
+            }
+        }
+    }
+
+    /**
+     * Returns a point inside an interval
+     *
+     * @param lo the lower bound
+     * @param hi the upper bound
+     */
+    private static double inside(double lo, double hi) {
+        if (lo == Double.NEGATIVE_INFINITY) {
+            return hi == Double.POSITIVE_INFINITY ? 0 : hi - max(1, abs(hi));
+        }
+        return hi == Double.POSITIVE_INFINITY ? lo + max(1, abs(lo)) : (lo + hi) / 2;
+    }
+
+    private final double[] breakpoints;
+    private final double[] slopes;
+    private final double[] intercepts;
+    /**
+     * The breakpoints padded with +infinity to 2^k - 1 elements for the branch-free search
+     */
+    private final double[] searchKeys;
+    private final int searchStep;
+
+    /**
+     * Creates the function merging the adjacent equal segments
+     *
+     * @param breakpoints the sorted breakpoints
+     * @param slopes      the slopes of segments
+     * @param intercepts  the intercepts of segments
+     */
+    private PiecewiseLinear(double[] breakpoints, double[] slopes, double[] intercepts) {
+        if (slopes.length != breakpoints.length + 1 || intercepts.length != slopes.length) {
+            throw new IllegalArgumentException("Segments must be one more than breakpoints");
+        }
+        for (int k = 1; k < breakpoints.length; k++) {
+            if (!(breakpoints[k - 1] <= breakpoints[k])) {
+                throw new IllegalArgumentException("Breakpoints must be sorted");
+            }
+        }
+        int n = 0;
+        double[] xs = new double[breakpoints.length];
+        double[] as = new double[slopes.length];
+        double[] bs = new double[slopes.length];
+        as[0] = slopes[0];
+        bs[0] = intercepts[0];
+        for (int k = 0; k < breakpoints.length; k++) {
+            if (slopes[k + 1] != as[n] || intercepts[k + 1] != bs[n]) {
+                xs[n++] = breakpoints[k];
+                as[n] = slopes[k + 1];
+                bs[n] = intercepts[k + 1];
+            }
+        }
+        this.breakpoints = Arrays.copyOf(xs, n);
+        int size = max(1, Integer.highestOneBit(n) << 1);
+        this.searchStep = size / 2;
+        this.searchKeys = Arrays.copyOf(xs, size - 1);
+        Arrays.fill(searchKeys, n, size - 1, Double.POSITIVE_INFINITY);
+        this.slopes = Arrays.copyOf(as, size);
+        this.intercepts = Arrays.copyOf(bs, size);
+        Arrays.fill(this.slopes, n + 1, size, as[n]);
+        Arrays.fill(this.intercepts, n + 1, size, bs[n]);
+    }
+
+    /**
+     * Returns the function applying this function and then another one
+     *
+     * @param after the function applied after this one
+     */
+    public PiecewiseLinear andThen(PiecewiseLinear after) {
+        return after.compose(this);
+    }
+
+    @Override
+    public double applyAsDouble(double x) {
+        int k = segment(x);
+        return slopes[k] * x + intercepts[k];
+    }
+
+    /**
+     * Returns the breakpoints
+     */
+    public double[] breakpoints() {
+        return breakpoints.clone();
+    }
+
+    /**
+     * Returns the function applying another function and then this one.
+     * The breakpoints of the result are the breakpoints of the inner function and
+     * the preimages of the breakpoints of this function, rounded to the nearest double.
+     *
+     * @param before the function applied before this one
+     */
+    public PiecewiseLinear compose(PiecewiseLinear before) {
+        List<Double> xs = new ArrayList<>();
+        List<double[]> coeffs = new ArrayList<>();
+        int n = before.breakpoints.length;
+        for (int k = 0; k <= n; k++) {
+            double lo = k > 0 ? before.breakpoints[k - 1] : Double.NEGATIVE_INFINITY;
+            double hi = k < n ? before.breakpoints[k] : Double.POSITIVE_INFINITY;
+            double a = before.slopes[k];
+            double b = before.intercepts[k];
+            // Splits the segment at the preimages of the breakpoints of this function
+            List<Double> splits = new ArrayList<>();
+            if (a != 0) {
+                for (int j = 0; j < breakpoints.length; j++) {
+                    double t = breakpoints[a > 0 ? j : breakpoints.length - 1 - j];
+                    double x = (t - b) / a;
+                    if (x > lo && x < hi && (splits.isEmpty() || x > splits.get(splits.size() - 1))) {
+                        splits.add(x);
+                    }
+                }
+            }
+            if (k > 0) {
+                xs.add(lo);
+            }
+            double from = lo;
+            for (int j = 0; j <= splits.size(); j++) {
+                double to = j < splits.size() ? splits.get(j) : hi;
+                int seg = segment(a * inside(from, to) + b);
+                coeffs.add(new double[]{slopes[seg] * a, slopes[seg] * b + intercepts[seg]});
+                if (j < splits.size()) {
+                    xs.add(to);
+                }
+                from = to;
+            }
+        }
+        return new PiecewiseLinear(
+                xs.stream().mapToDouble(Double::doubleValue).toArray(),
+                coeffs.stream().mapToDouble(c -> c[0]).toArray(),
+                coeffs.stream().mapToDouble(c -> c[1]).toArray());
+    }
+
+    /**
+     * Returns the number of segments
+     */
+    public int numSegments() {
+        return breakpoints.length + 1;
+    }
+
+    /**
+     * Returns the index of the segment containing a value by branch-free binary search
+     *
+     * @param x the value
+     */
+    private int segment(double x) {
+        int k = 0;
+        for (int step = searchStep; step > 0; step >>= 1) {
+            k += searchKeys[k + step - 1] <= x ? step : 0;
+        }
+        return k;
+    }
+
+    /**
+     * Returns the function tabulated in a lookup table with linear interpolation between the samples.
+     * The values out of the table range are clamped to the range.
+     * The error is zero on the samples and on the segments spanning whole table cells,
+     * it is at most the jump in the cells containing a discontinuity.
+     *
+     * @param x0   the minimum value
+     * @param x1   the maximum value
+     * @param size the number of samples
+     */
+    public DoubleUnaryOperator tabulate(double x0, double x1, int size) {
+        if (size < 2 || !(x1 > x0)) {
+            throw new IllegalArgumentException("Table must have at least 2 samples in a non empty range");
+        }
+        double step = (x1 - x0) / (size - 1);
+        double scale = 1 / step;
+        double[] table = new double[size];
+        for (int i = 0; i < size; i++) {
+            table[i] = applyAsDouble(x0 + i * step);
+        }
+        return x -> {
+            double t = min(max((x - x0) * scale, 0), size - 1);
+            int i = min((int) t, size - 2);
+            double f = t - i;
+            return table[i] + (table[i + 1] - table[i]) * f;
+        };
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import org.mmarini.imgproc.apps.PixelProgram.*;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Compiles a pixel program to a hidden class implementing {@link RowKernel} and the {@link UnaryOperator} of a pixel.
+ * <p>
+ * The generated row method loops on the row pixels and evaluates the program expressions
+ * with the double bytecodes, the constants loaded from the constant pool and the local values in local variables,
+ * so the per-pixel path has no calls except Math.abs and Math.floor.
+ * The generated pixel method evaluates the same expressions on the components of a single pixel.
+ * The class is generated with ASM, which computes the stack map frames and the stack sizes.
+ * </p>
+ */
+final class PixelCompiler {
+    private static final String CLASS_NAME = Type.getInternalName(PixelCompiler.class) + "$Compiled";
+    private static final String APPLY_DESCRIPTOR = "([F[F[FII)V";
+    private static final String PIXEL_DESCRIPTOR = "(Ljava/lang/Object;)Ljava/lang/Object;";
+    /*
+     * Local variables of the apply methods
+     */
+    private static final int PIXEL_ARG = 1;
+    private static final int PIXEL_VAR = 2;
+    private static final int[] PLANE_ARGS = {1, 2, 3};
+    private static final int OFFSET_ARG = 4;
+    private static final int N_ARG = 5;
+    private static final int INDEX_VAR = 6;
+    private static final int END_VAR = 7;
+    private static final int INPUT_VARS = 8;
+    private static final int OUTPUT_VARS = INPUT_VARS + 6;
+    private static final int LOCAL_VARS = OUTPUT_VARS + 6;
+
+    /**
+     * Returns the row kernel compiled from a program
+     *
+     * @param program the program
+     * @throws ReflectiveOperationException in case of error defining or instantiating the class
+     */
+    static RowKernel compile(PixelProgram program) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile(program), true);
+        try {
+            return (RowKernel) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (ReflectiveOperationException | RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Returns the class file of the program
+     *
+     * @param program the program
+     */
+    private static byte[] classFile(PixelProgram program) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(V21, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, CLASS_NAME, null,
+                Type.getInternalName(Object.class),
+                new String[]{Type.getInternalName(RowKernel.class), Type.getInternalName(UnaryOperator.class)});
+
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(Object.class), "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "apply", APPLY_DESCRIPTOR, null, null);
+        mv.visitCode();
+        applyCode(mv, program);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        MethodVisitor pixel = cw.visitMethod(ACC_PUBLIC, "apply", PIXEL_DESCRIPTOR, null, null);
+        pixel.visitCode();
+        pixelCode(pixel, program);
+        pixel.visitMaxs(0, 0);
+        pixel.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates the row loop of the apply method
+     *
+     * @param mv      the method visitor
+     * @param program the program
+     */
+    private static void applyCode(MethodVisitor mv, PixelProgram program) {
+        // end = offset + n; i = offset
+        mv.visitVarInsn(ILOAD, OFFSET_ARG);
+        mv.visitVarInsn(ILOAD, N_ARG);
+        mv.visitInsn(IADD);
+        mv.visitVarInsn(ISTORE, END_VAR);
+        mv.visitVarInsn(ILOAD, OFFSET_ARG);
+        mv.visitVarInsn(ISTORE, INDEX_VAR);
+
+        Label loop = new Label();
+        Label exit = new Label();
+        mv.visitLabel(loop);
+        mv.visitVarInsn(ILOAD, INDEX_VAR);
+        mv.visitVarInsn(ILOAD, END_VAR);
+        mv.visitJumpInsn(IF_ICMPGE, exit);
+
+        // Loads the input components
+        for (int k = 0; k < 3; k++) {
+            mv.visitVarInsn(ALOAD, PLANE_ARGS[k]);
+            mv.visitVarInsn(ILOAD, INDEX_VAR);
+            mv.visitInsn(FALOAD);
+            mv.visitInsn(F2D);
+            mv.visitVarInsn(DSTORE, INPUT_VARS + 2 * k);
+        }
+        evalCode(mv, program);
+        for (int k = 0; k < 3; k++) {
+            mv.visitVarInsn(ALOAD, PLANE_ARGS[k]);
+            mv.visitVarInsn(ILOAD, INDEX_VAR);
+            mv.visitVarInsn(DLOAD, OUTPUT_VARS + 2 * k);
+            mv.visitInsn(D2F);
+            mv.visitInsn(FASTORE);
+        }
+        mv.visitIincInsn(INDEX_VAR, 1);
+        mv.visitJumpInsn(GOTO, loop);
+        mv.visitLabel(exit);
+        mv.visitInsn(RETURN);
+    }
+
+    /**
+     * Generates the evaluation of the local values and of the outputs from the input variables
+     *
+     * @param mv      the method visitor
+     * @param program the program
+     */
+    private static void evalCode(MethodVisitor mv, PixelProgram program) {
+        List<Expr> locals = program.locals();
+        for (int j = 0; j < locals.size(); j++) {
+            emit(mv, locals.get(j));
+            mv.visitVarInsn(DSTORE, LOCAL_VARS + 2 * j);
+        }
+        // The outputs are stored after all the evaluations because they may depend on all the inputs
+        Expr[] outputs = program.outputs();
+        for (int k = 0; k < 3; k++) {
+            emit(mv, outputs[k]);
+            mv.visitVarInsn(DSTORE, OUTPUT_VARS + 2 * k);
+        }
+    }
+
+    /**
+     * Generates the code of the pixel apply method changing in place the components of a pixel
+     *
+     * @param mv      the method visitor
+     * @param program the program
+     */
+    private static void pixelCode(MethodVisitor mv, PixelProgram program) {
+        mv.visitVarInsn(ALOAD, PIXEL_ARG);
+        mv.visitTypeInsn(CHECKCAST, "[F");
+        mv.visitVarInsn(ASTORE, PIXEL_VAR);
+        for (int k = 0; k < 3; k++) {
+            mv.visitVarInsn(ALOAD, PIXEL_VAR);
+            mv.visitLdcInsn(k);
+            mv.visitInsn(FALOAD);
+            mv.visitInsn(F2D);
+            mv.visitVarInsn(DSTORE, INPUT_VARS + 2 * k);
+        }
+        evalCode(mv, program);
+        for (int k = 0; k < 3; k++) {
+            mv.visitVarInsn(ALOAD, PIXEL_VAR);
+            mv.visitLdcInsn(k);
+            mv.visitVarInsn(DLOAD, OUTPUT_VARS + 2 * k);
+            mv.visitInsn(D2F);
+            mv.visitInsn(FASTORE);
+        }
+        mv.visitVarInsn(ALOAD, PIXEL_VAR);
+        mv.visitInsn(ARETURN);
+    }
+
+    /**
+     * Generates the code pushing the value of an expression
+     *
+     * @param mv   the method visitor
+     * @param expr the expression
+     */
+    private static void emit(MethodVisitor mv, Expr expr) {
+        if (expr instanceof Constant k) {
+            mv.visitLdcInsn(k.value());
+        } else if (expr instanceof Input in) {
+            mv.visitVarInsn(DLOAD, INPUT_VARS + 2 * in.component());
+        } else if (expr instanceof Local l) {
+            mv.visitVarInsn(DLOAD, LOCAL_VARS + 2 * l.index());
+        } else if (expr instanceof Unary u) {
+            emit(mv, u.arg());
+            switch (u.op()) {
+                case NEG -> mv.visitInsn(DNEG);
+                case ABS -> mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Math.class), "abs", "(D)D", false);
+                case FLOOR -> mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Math.class), "floor", "(D)D", false);
+                case TO_FLOAT -> {
+                    mv.visitInsn(D2F);
+                    mv.visitInsn(F2D);
+                }
+            }
+        } else if (expr instanceof Binary b) {
+            emit(mv, b.left());
+            emit(mv, b.right());
+            mv.visitInsn(switch (b.op()) {
+                case ADD -> DADD;
+                case SUB -> DSUB;
+                case MUL -> DMUL;
+                case DIV -> DDIV;
+            });
+        } else {
+            Select s = (Select) expr;
+            emit(mv, s.left());
+            emit(mv, s.right());
+            // DCMPL pushes -1 and DCMPG pushes 1 on NaN, so the comparisons with NaN are false as in java
+            switch (s.cmp()) {
+                case GT, GE -> mv.visitInsn(DCMPL);
+                case LT, LE -> mv.visitInsn(DCMPG);
+            }
+            Label then = new Label();
+            Label end = new Label();
+            mv.visitJumpInsn(switch (s.cmp()) {
+                case GT -> IFGT;
+                case GE -> IFGE;
+                case LT -> IFLT;
+                case LE -> IFLE;
+            }, then);
+            emit(mv, s.otherwise());
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(then);
+            emit(mv, s.then());
+            mv.visitLabel(end);
+        }
+    }
+
+    /**
+     * Creates the compiler
+     */
+    private PixelCompiler() {
+    }
+}
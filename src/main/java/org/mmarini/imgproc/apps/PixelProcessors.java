@@ -34,7 +34,8 @@ import java.util.function.UnaryOperator;
 public interface PixelProcessors {
 
     /**
-     * Returns the difference module 0.5 function
+     * Returns the difference module 0.5 function.
+     * {@link PiecewiseLinear#diff} is the same function when it has to be composed.
      *
      * @param x0 the reference value
      */
@@ -49,22 +50,19 @@ public interface PixelProcessors {
         };
     }
 
+    /**
+     * Returns the hue filter.
+     * The difference, hysteresis and brightness functions are fused in the compiled program of the filter
+     * (see {@link PixelProgram#hueFilter}) with the same results of {@link #diff}, {@link #hysteresis} and {@link #map},
+     * so the filter can also be composed with other pixel programs (see {@link PixelProgram#andThen}).
+     *
+     * @param h0  the filtered hue
+     * @param dh1 the hue difference with full sensitivity
+     * @param dh0 the hue difference with zero sensitivity
+     * @param b0  the brightness of zero sensitivity
+     */
     static UnaryOperator<float[]> hueFilter(double h0, double dh1, double dh0, double b0) {
-        DoubleUnaryOperator diff = diff(h0);
-        DoubleUnaryOperator hyst = hysteresis(dh1, dh0);
-        DoubleUnaryOperator bright = map(0, 1, b0, 1);
-        return hsb -> {
-            double dh = diff.applyAsDouble(hsb[0]);
-            double hSens = hyst.applyAsDouble(dh);
-            double absHSens = Math.abs(hSens);
-            double absSens = 1 - (1 - absHSens) * hsb[1];
-
-            double hShift = dh * (1 - absSens);
-            hsb[0] -= (float) hShift;
-            hsb[1] *= (float) absSens;
-            hsb[2] *= (float) bright.applyAsDouble(absSens);
-            return hsb;
-        };
+        return PixelProgram.hueFilter(h0, dh1, dh0, b0).pixelProcessor();
     }
 
     /**
@@ -83,6 +81,8 @@ public interface PixelProcessors {
      *                \.     |
      *                 ------+ -1
      * </pre>
+     * The function is a step function when x1 &gt;= x0.
+     * {@link PiecewiseLinear#hysteresis} is the same function when it has to be composed.
      *
      * @param x1 the value for unary result
      * @param x0 the value for zero result
@@ -109,9 +109,33 @@ public interface PixelProcessors {
      * @param y1 the y1 value
      */
     static DoubleUnaryOperator map(double x0, double x1, double y0, double y1) {
-        //  x -> (x - x0) / (x1 - x0) * (y1 - y0) + y0;
-        double a = (y1 - y0) / (x1 - x0);
-        double b = y0 - (y1 - y0) * x0 / (x1 - x0);
+        double a = mapSlope(x0, x1, y0, y1);
+        double b = mapIntercept(x0, x1, y0, y1);
         return x -> a * x + b;
     }
+
+    /**
+     * Returns the intercept b of the linear mapper a x + b (see {@link #map})
+     *
+     * @param x0 the x0 value
+     * @param x1 the x1 value
+     * @param y0 the y0 value
+     * @param y1 the y1 value
+     */
+    static double mapIntercept(double x0, double x1, double y0, double y1) {
+        //  x -> (x - x0) / (x1 - x0) * (y1 - y0) + y0;
+        return y0 - (y1 - y0) * x0 / (x1 - x0);
+    }
+
+    /**
+     * Returns the slope a of the linear mapper a x + b (see {@link #map})
+     *
+     * @param x0 the x0 value
+     * @param x1 the x1 value
+     * @param y0 the y0 value
+     * @param y1 the y1 value
+     */
+    static double mapSlope(double x0, double x1, double y0, double y1) {
+        return (y1 - y0) / (x1 - x0);
+    }
 }
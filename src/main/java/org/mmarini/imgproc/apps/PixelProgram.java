@@ -0,0 +1,708 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Description of a per-pixel hsb pipeline that can be interpreted or compiled to bytecode.
+ * <p>
+ * The program computes a sequence of local values and the three output components from the input hue,
+ * saturation and brightness with double arithmetic, the same of the lambdas of {@link PixelProcessors}.
+ * The expressions with constant operands are folded when built.
+ * The program is applied to whole rows of planar components (see {@link RowKernel}):
+ * {@link #interpreter()} evaluates the expression trees for each pixel,
+ * {@link #compile()} generates a hidden class with the row loop and the constants inlined
+ * (see {@link PixelCompiler}) and falls back to the interpreter if the class cannot be defined.
+ * {@link #pixelProcessor()} is the compiled program applied to a single pixel.
+ * </p>
+ * <p>
+ * The programs are composed by {@link #andThen} and {@link #chain}: the inputs of the next program
+ * are replaced by the outputs of the previous one rounded to float, as stored between the stages,
+ * so a chain (e.g. {@link #map}, {@link #clamp}, {@link #wrap} and {@link #hueFilter})
+ * is a single program applied in one pass with the same results of the stages applied in sequence.
+ * </p>
+ */
+public final class PixelProgram {
+    public static final int HUE = 0;
+    public static final int SATURATION = 1;
+    public static final int BRIGHTNESS = 2;
+    private static final Logger logger = LoggerFactory.getLogger(PixelProgram.class);
+
+    /**
+     * Returns the program builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Returns the program of a chain of programs applied in order
+     *
+     * @param programs the programs
+     */
+    public static PixelProgram chain(PixelProgram... programs) {
+        PixelProgram result = identity();
+        for (PixelProgram program : programs) {
+            result = result.andThen(program);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the component index after checking it
+     *
+     * @param component the component
+     */
+    private static int checkComponent(int component) {
+        if (component < HUE || component > BRIGHTNESS) {
+            throw new IllegalArgumentException("Invalid component " + component);
+        }
+        return component;
+    }
+
+    /**
+     * Returns the program clamping a component
+     *
+     * @param component the component
+     * @param min       the minimum value
+     * @param max       the maximum value
+     */
+    public static PixelProgram clamp(int component, double min, double max) {
+        Builder b = builder();
+        return b.build(component, b.clamp(b.input(checkComponent(component)), min, max));
+    }
+
+    /**
+     * Returns the result of a comparison
+     *
+     * @param cmp the comparison
+     * @param x   the left value
+     * @param y   the right value
+     */
+    private static boolean compare(Comparison cmp, double x, double y) {
+        return switch (cmp) {
+            case GT -> x > y;
+            case GE -> x >= y;
+            case LT -> x < y;
+            case LE -> x <= y;
+        };
+    }
+
+    /**
+     * Returns the value of an expression
+     *
+     * @param expr   the expression
+     * @param inputs the input components
+     * @param values the local values
+     */
+    private static double eval(Expr expr, double[] inputs, double[] values) {
+        if (expr instanceof Constant c) {
+            return c.value();
+        } else if (expr instanceof Input in) {
+            return inputs[in.component()];
+        } else if (expr instanceof Local l) {
+            return values[l.index()];
+        } else if (expr instanceof Unary u) {
+            double x = eval(u.arg(), inputs, values);
+            return switch (u.op()) {
+                case NEG -> -x;
+                case ABS -> Math.abs(x);
+                case FLOOR -> Math.floor(x);
+                case TO_FLOAT -> (float) x;
+            };
+        } else if (expr instanceof Binary bin) {
+            double x = eval(bin.left(), inputs, values);
+            double y = eval(bin.right(), inputs, values);
+            return switch (bin.op()) {
+                case ADD -> x + y;
+                case SUB -> x - y;
+                case MUL -> x * y;
+                case DIV -> x / y;
+            };
+        } else {
+            Select s = (Select) expr;
+            boolean test = compare(s.cmp(), eval(s.left(), inputs, values), eval(s.right(), inputs, values));
+            return eval(test ? s.then() : s.otherwise(), inputs, values);
+        }
+    }
+
+    /**
+     * Returns the program of the hue filter (see {@link PixelProcessors#hueFilter})
+     *
+     * @param h0  the filtered hue
+     * @param dh1 the hue difference with full sensitivity
+     * @param dh0 the hue difference with zero sensitivity
+     * @param b0  the brightness of zero sensitivity
+     */
+    public static PixelProgram hueFilter(double h0, double dh1, double dh0, double b0) {
+        Builder b = builder();
+        Expr dh = b.let(b.diff(Builder.HUE, h0));
+        Expr hSens = b.let(b.hysteresis(dh, dh1, dh0));
+        Expr absSens = b.let(b.sub(b.constant(1), b.mul(b.sub(b.constant(1), b.abs(hSens)), Builder.SATURATION)));
+        Expr hShift = b.mul(dh, b.sub(b.constant(1), absSens));
+        return b.build(
+                b.toFloat(b.sub(Builder.HUE, b.toFloat(hShift))),
+                b.toFloat(b.mul(Builder.SATURATION, b.toFloat(absSens))),
+                b.toFloat(b.mul(Builder.BRIGHTNESS, b.toFloat(b.map(absSens, 0, 1, b0, 1)))));
+    }
+
+    /**
+     * Returns the identity program
+     */
+    public static PixelProgram identity() {
+        Builder b = builder();
+        return b.build(Builder.HUE, Builder.SATURATION, Builder.BRIGHTNESS);
+    }
+
+    /**
+     * Returns the program mapping linearly a component (a x + b)
+     *
+     * @param component the component
+     * @param a         the scale
+     * @param b         the offset
+     */
+    public static PixelProgram map(int component, double a, double b) {
+        Builder builder = builder();
+        Expr x = builder.input(checkComponent(component));
+        return builder.build(component, builder.add(builder.mul(builder.constant(a), x), builder.constant(b)));
+    }
+
+    /**
+     * Returns the expression rebuilt with the inputs and the local values replaced
+     *
+     * @param b      the builder of the result
+     * @param expr   the expression
+     * @param inputs the replacing expressions of inputs
+     * @param values the replacing expressions of local values
+     */
+    private static Expr rewrite(Builder b, Expr expr, Expr[] inputs, Expr[] values) {
+        if (expr instanceof Constant) {
+            return expr;
+        } else if (expr instanceof Input in) {
+            return inputs[in.component()];
+        } else if (expr instanceof Local l) {
+            return values[l.index()];
+        } else if (expr instanceof Unary u) {
+            return b.unary(u.op(), rewrite(b, u.arg(), inputs, values));
+        } else if (expr instanceof Binary bin) {
+            return b.binary(bin.op(), rewrite(b, bin.left(), inputs, values), rewrite(b, bin.right(), inputs, values));
+        } else {
+            Select sel = (Select) expr;
+            return b.select(sel.cmp(),
+                    rewrite(b, sel.left(), inputs, values), rewrite(b, sel.right(), inputs, values),
+                    rewrite(b, sel.then(), inputs, values), rewrite(b, sel.otherwise(), inputs, values));
+        }
+    }
+
+    /**
+     * Returns the program wrapping a component to the 0...1 range (e.g. the hue)
+     *
+     * @param component the component
+     */
+    public static PixelProgram wrap(int component) {
+        Builder b = builder();
+        Expr x = b.input(checkComponent(component));
+        return b.build(component, b.sub(x, b.floor(x)));
+    }
+
+    private final List<Expr> locals;
+    private final Expr[] outputs;
+
+    /**
+     * Creates the program
+     *
+     * @param locals  the expressions of local values
+     * @param outputs the expressions of output components
+     */
+    private PixelProgram(List<Expr> locals, Expr[] outputs) {
+        this.locals = List.copyOf(locals);
+        this.outputs = outputs.clone();
+    }
+
+    /**
+     * Returns the program applying this program and then another one
+     *
+     * @param after the program applied after this one
+     */
+    public PixelProgram andThen(PixelProgram after) {
+        Builder b = builder();
+        Expr[] inputs = {Builder.HUE, Builder.SATURATION, Builder.BRIGHTNESS};
+        Expr[] values = new Expr[locals.size()];
+        for (int j = 0; j < values.length; j++) {
+            values[j] = b.let(rewrite(b, locals.get(j), inputs, values));
+        }
+        // The outputs are rounded to float as stored by the stage
+        Expr[] outputs = new Expr[3];
+        for (int k = 0; k < 3; k++) {
+            outputs[k] = b.let(b.toFloat(rewrite(b, this.outputs[k], inputs, values)));
+        }
+        Expr[] afterValues = new Expr[after.locals.size()];
+        for (int j = 0; j < afterValues.length; j++) {
+            afterValues[j] = b.let(rewrite(b, after.locals.get(j), outputs, afterValues));
+        }
+        return b.build(
+                rewrite(b, after.outputs[0], outputs, afterValues),
+                rewrite(b, after.outputs[1], outputs, afterValues),
+                rewrite(b, after.outputs[2], outputs, afterValues));
+    }
+
+    /**
+     * Returns the compiled row kernel or the interpreter if the compilation fails
+     */
+    public RowKernel compile() {
+        try {
+            return PixelCompiler.compile(this);
+        } catch (ReflectiveOperationException | LinkageError | IllegalStateException ex) {
+            logger.atWarn().setCause(ex).log("Pixel program compilation failed, using interpreter");
+            return interpreter();
+        }
+    }
+
+    /**
+     * Returns the interpreter of the program
+     */
+    public RowKernel interpreter() {
+        return (hue, saturation, brightness, offset, n) -> {
+            double[] inputs = new double[3];
+            double[] values = new double[locals.size()];
+            for (int i = offset; i < offset + n; i++) {
+                inputs[0] = hue[i];
+                inputs[1] = saturation[i];
+                inputs[2] = brightness[i];
+                for (int j = 0; j < values.length; j++) {
+                    values[j] = eval(locals.get(j), inputs, values);
+                }
+                double h = eval(outputs[0], inputs, values);
+                double s = eval(outputs[1], inputs, values);
+                double b = eval(outputs[2], inputs, values);
+                hue[i] = (float) h;
+                saturation[i] = (float) s;
+                brightness[i] = (float) b;
+            }
+        };
+    }
+
+    /**
+     * Returns the expressions of local values
+     */
+    List<Expr> locals() {
+        return locals;
+    }
+
+    /**
+     * Returns the expressions of output components (hue, saturation, brightness)
+     */
+    Expr[] outputs() {
+        return outputs.clone();
+    }
+
+    /**
+     * Returns the compiled pixel processor of the hsb components or the interpreter if the compilation fails.
+     * The processor changes the components in place and it is thread safe.
+     */
+    public UnaryOperator<float[]> pixelProcessor() {
+        RowKernel kernel = compile();
+        if (kernel instanceof UnaryOperator<?> processor) {
+            @SuppressWarnings("unchecked")
+            UnaryOperator<float[]> result = (UnaryOperator<float[]>) processor;
+            return result;
+        }
+        return hsb -> {
+            float[] hue = {hsb[0]};
+            float[] saturation = {hsb[1]};
+            float[] brightness = {hsb[2]};
+            kernel.apply(hue, saturation, brightness, 0, 1);
+            hsb[0] = hue[0];
+            hsb[1] = saturation[0];
+            hsb[2] = brightness[0];
+            return hsb;
+        };
+    }
+
+    /**
+     * The unary operators
+     */
+    enum UnaryOp {
+        NEG, ABS, FLOOR, TO_FLOAT
+    }
+
+    /**
+     * The binary operators
+     */
+    enum BinaryOp {
+        ADD, SUB, MUL, DIV
+    }
+
+    /**
+     * The comparison operators
+     */
+    public enum Comparison {
+        GT, GE, LT, LE
+    }
+
+    /**
+     * Expression of the program
+     */
+    public sealed interface Expr permits Constant, Input, Local, Unary, Binary, Select {
+    }
+
+    /**
+     * Processes in place rows of planar hsb components
+     */
+    @FunctionalInterface
+    public interface RowKernel {
+        /**
+         * Processes the components of a row
+         *
+         * @param hue        the hue components
+         * @param saturation the saturation components
+         * @param brightness the brightness components
+         * @param offset     the offset of first pixel
+         * @param n          the number of pixels
+         */
+        void apply(float[] hue, float[] saturation, float[] brightness, int offset, int n);
+    }
+
+    /**
+     * The constant value
+     *
+     * @param value the value
+     */
+    record Constant(double value) implements Expr {
+    }
+
+    /**
+     * The input component
+     *
+     * @param component the component (0 = hue, 1 = saturation, 2 = brightness)
+     */
+    record Input(int component) implements Expr {
+    }
+
+    /**
+     * The local value
+     *
+     * @param index the index of local
+     */
+    record Local(int index) implements Expr {
+    }
+
+    /**
+     * The unary operation
+     *
+     * @param op  the operator
+     * @param arg the argument
+     */
+    record Unary(UnaryOp op, Expr arg) implements Expr {
+    }
+
+    /**
+     * The binary operation
+     *
+     * @param op    the operator
+     * @param left  the left operand
+     * @param right the right operand
+     */
+    record Binary(BinaryOp op, Expr left, Expr right) implements Expr {
+    }
+
+    /**
+     * The conditional selection (left cmp right ? then : otherwise)
+     *
+     * @param cmp       the comparison
+     * @param left      the left compared value
+     * @param right     the right compared value
+     * @param then      the value if the comparison is true
+     * @param otherwise the value if the comparison is false
+     */
+    record Select(Comparison cmp, Expr left, Expr right, Expr then, Expr otherwise) implements Expr {
+    }
+
+    /**
+     * Builds the program expressions folding the constants
+     */
+    public static final class Builder {
+        public static final Expr HUE = new Input(0);
+        public static final Expr SATURATION = new Input(1);
+        public static final Expr BRIGHTNESS = new Input(2);
+
+        private final List<Expr> locals;
+
+        /**
+         * Creates the builder
+         */
+        private Builder() {
+            this.locals = new ArrayList<>();
+        }
+
+        /**
+         * Returns the absolute value
+         *
+         * @param x the argument
+         */
+        public Expr abs(Expr x) {
+            return unary(UnaryOp.ABS, x);
+        }
+
+        /**
+         * Returns the sum
+         *
+         * @param x the left operand
+         * @param y the right operand
+         */
+        public Expr add(Expr x, Expr y) {
+            return binary(BinaryOp.ADD, x, y);
+        }
+
+        /**
+         * Returns the binary operation or the folded constant
+         *
+         * @param op the operator
+         * @param x  the left operand
+         * @param y  the right operand
+         */
+        Expr binary(BinaryOp op, Expr x, Expr y) {
+            Binary result = new Binary(op, requireNonNull(x), requireNonNull(y));
+            return x instanceof Constant && y instanceof Constant
+                    ? constant(eval(result, null, null))
+                    : result;
+        }
+
+        /**
+         * Returns the program
+         *
+         * @param hue        the output hue
+         * @param saturation the output saturation
+         * @param brightness the output brightness
+         */
+        public PixelProgram build(Expr hue, Expr saturation, Expr brightness) {
+            return new PixelProgram(locals, new Expr[]{requireNonNull(hue), requireNonNull(saturation), requireNonNull(brightness)});
+        }
+
+        /**
+         * Returns the program changing a component and passing the others
+         *
+         * @param component the changed component
+         * @param value     the component value
+         */
+        private PixelProgram build(int component, Expr value) {
+            Expr[] outputs = {HUE, SATURATION, BRIGHTNESS};
+            outputs[component] = value;
+            return build(outputs[0], outputs[1], outputs[2]);
+        }
+
+        /**
+         * Returns the value clamped to a range
+         *
+         * @param x   the value
+         * @param min the minimum value
+         * @param max the maximum value
+         */
+        public Expr clamp(Expr x, double min, double max) {
+            Expr lo = constant(min);
+            Expr hi = constant(max);
+            return select(Comparison.LT, x, lo, lo, select(Comparison.GT, x, hi, hi, x));
+        }
+
+        /**
+         * Returns the constant
+         *
+         * @param value the value
+         */
+        public Expr constant(double value) {
+            return new Constant(value);
+        }
+
+        /**
+         * Returns the difference module 0.5 (see {@link PixelProcessors#diff})
+         *
+         * @param x  the value
+         * @param x0 the reference value
+         */
+        public Expr diff(Expr x, double x0) {
+            Expr d = let(sub(x, constant(x0)));
+            return select(Comparison.GT, d, constant(0.5f), sub(d, constant(1)),
+                    select(Comparison.LT, d, constant(-0.5f), add(constant(1), d), d));
+        }
+
+        /**
+         * Returns the division
+         *
+         * @param x the left operand
+         * @param y the right operand
+         */
+        public Expr div(Expr x, Expr y) {
+            return binary(BinaryOp.DIV, x, y);
+        }
+
+        /**
+         * Returns the largest integer value not greater than the value
+         *
+         * @param x the argument
+         */
+        public Expr floor(Expr x) {
+            return unary(UnaryOp.FLOOR, x);
+        }
+
+        /**
+         * Returns the hysteresis function (see {@link PixelProcessors#hysteresis})
+         *
+         * @param x  the value
+         * @param x1 the value for unary result
+         * @param x0 the value for zero result
+         */
+        public Expr hysteresis(Expr x, double x1, double x0) {
+            Expr zero = constant(0);
+            return select(Comparison.GE, x, constant(x0), zero,
+                    select(Comparison.LE, x, constant(-x0), zero,
+                            select(Comparison.GE, x, zero,
+                                    select(Comparison.LE, x, constant(x1), constant(1), map(x, x1, x0, 1, 0)),
+                                    select(Comparison.GE, x, constant(-x1), constant(-1), map(x, -x1, -x0, -1, 0)))));
+        }
+
+        /**
+         * Returns the input component
+         *
+         * @param component the component (0 = hue, 1 = saturation, 2 = brightness)
+         */
+        public Expr input(int component) {
+            return switch (component) {
+                case 0 -> HUE;
+                case 1 -> SATURATION;
+                case 2 -> BRIGHTNESS;
+                default -> throw new IllegalArgumentException("Invalid component " + component);
+            };
+        }
+
+        /**
+         * Returns the local value of an expression computed once per pixel
+         *
+         * @param x the expression
+         */
+        public Expr let(Expr x) {
+            if (x instanceof Constant || x instanceof Input || x instanceof Local) {
+                return x;
+            }
+            locals.add(x);
+            return new Local(locals.size() - 1);
+        }
+
+        /**
+         * Returns the linear mapper (see {@link PixelProcessors#map})
+         *
+         * @param x  the value
+         * @param x0 the x0 value
+         * @param x1 the x1 value
+         * @param y0 the y0 value
+         * @param y1 the y1 value
+         */
+        public Expr map(Expr x, double x0, double x1, double y0, double y1) {
+            return add(mul(constant(PixelProcessors.mapSlope(x0, x1, y0, y1)), x),
+                    constant(PixelProcessors.mapIntercept(x0, x1, y0, y1)));
+        }
+
+        /**
+         * Returns the product
+         *
+         * @param x the left operand
+         * @param y the right operand
+         */
+        public Expr mul(Expr x, Expr y) {
+            return binary(BinaryOp.MUL, x, y);
+        }
+
+        /**
+         * Returns the negation
+         *
+         * @param x the argument
+         */
+        public Expr neg(Expr x) {
+            return unary(UnaryOp.NEG, x);
+        }
+
+        /**
+         * Returns the conditional selection or the folded branch
+         *
+         * @param cmp       the comparison
+         * @param x         the left compared value
+         * @param y         the right compared value
+         * @param then      the value if the comparison is true
+         * @param otherwise the value if the comparison is false
+         */
+        public Expr select(Comparison cmp, Expr x, Expr y, Expr then, Expr otherwise) {
+            requireNonNull(then);
+            requireNonNull(otherwise);
+            return x instanceof Constant cx && y instanceof Constant cy
+                    ? compare(cmp, cx.value(), cy.value()) ? then : otherwise
+                    : new Select(requireNonNull(cmp), requireNonNull(x), requireNonNull(y), then, otherwise);
+        }
+
+        /**
+         * Returns the difference
+         *
+         * @param x the left operand
+         * @param y the right operand
+         */
+        public Expr sub(Expr x, Expr y) {
+            return binary(BinaryOp.SUB, x, y);
+        }
+
+        /**
+         * Returns the value rounded to float
+         *
+         * @param x the argument
+         */
+        public Expr toFloat(Expr x) {
+            return unary(UnaryOp.TO_FLOAT, x);
+        }
+
+        /**
+         * Returns the unary operation or the folded constant
+         *
+         * @param op the operator
+         * @param x  the argument
+         */
+        Expr unary(UnaryOp op, Expr x) {
+            if (op == UnaryOp.TO_FLOAT && (x instanceof Input || x instanceof Unary u && u.op() == UnaryOp.TO_FLOAT)) {
+                // The inputs and the rounded values are already float
+                return x;
+            }
+            Unary result = new Unary(op, requireNonNull(x));
+            return x instanceof Constant
+                    ? constant(eval(result, null, null))
+                    : result;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.mmarini.imgproc.apps.ImageProcessors.Convolution;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import static java.lang.Math.*;
+
+/**
+ * Image processors of planar float images (see {@link FloatImage}).
+ * <p>
+ * The processors can be chained without intermediate conversions,
+ * the component values are not clipped between the stages.
+ * </p>
+ */
+public interface PlanarProcessors {
+
+    /**
+     * Returns the uniform box filter processor.
+     * It computes the convolution with a constant scalar kernel by separable sliding window sums,
+     * so the cost per pixel does not depend on the window size.
+     * The double column sums of the window rows and the running sum along the row are updated by adding the entering
+     * and subtracting the leaving values, so the output differs from the direct convolution only by the rounding.
+     * The output image has size (w - ww + 1) x (h - wh + 1).
+     *
+     * @param ww     the window width
+     * @param wh     the window height
+     * @param weight the weight of each tap
+     */
+    static UnaryOperator<FloatImage> boxFilter(int ww, int wh, float weight) {
+        return source -> {
+            int w = source.width();
+            int ow = w - ww + 1;
+            int oh = source.height() - wh + 1;
+            FloatImage result = FloatImage.create(ow, oh);
+            // Column sums of the window rows
+            double[] cols = new double[w];
+            for (int c = 0; c < 3; c++) {
+                float[] in = source.plane(c);
+                float[] out = result.plane(c);
+                Arrays.fill(cols, 0);
+                for (int y = 0; y < wh - 1; y++) {
+                    addRow(in, source.index(0, y), cols, 1);
+                }
+                for (int ty = 0; ty < oh; ty++) {
+                    addRow(in, source.index(0, ty + wh - 1), cols, 1);
+                    double sum = 0;
+                    for (int x = 0; x < ww - 1; x++) {
+                        sum += cols[x];
+                    }
+                    int o = result.index(0, ty);
+                    for (int tx = 0; tx < ow; tx++) {
+                        sum += cols[tx + ww - 1];
+                        out[o + tx] = (float) sum * weight;
+                        sum -= cols[tx];
+                    }
+                    addRow(in, source.index(0, ty), cols, -1);
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Adds a row to the column sums
+     *
+     * @param in    the plane
+     * @param index the index of the first pixel of row
+     * @param cols  the column sums
+     * @param sign  the sign of row (1 to add, -1 to subtract)
+     */
+    private static void addRow(float[] in, int index, double[] cols, int sign) {
+        for (int x = 0; x < cols.length; x++) {
+            cols[x] += sign * in[index + x];
+        }
+    }
+
+    /**
+     * Returns the convolution processor.
+     * The output image has size (w - ww + 1) x (h - wh + 1).
+     * The loop is specialized by the descriptor of {@link Kernel} matrix suppliers (see {@link ConvolutionEngine}),
+     * the shift-invariant kernels larger than {@link FftConvolution#DEFAULT_THRESHOLD} are computed by FFT.
+     *
+     * @param ww             the window width
+     * @param wh             the window height
+     * @param matrixSupplier the supplier of the 3x3 color matrix of each tap
+     */
+    static UnaryOperator<FloatImage> convolution(int ww, int wh, Function<Convolution, float[][]> matrixSupplier) {
+        return convolution(ww, wh, matrixSupplier, FftConvolution.DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Returns the convolution processor.
+     * The shift-invariant kernels larger than fftThreshold x fftThreshold are computed by FFT (see {@link FftConvolution}).
+     *
+     * @param ww             the window width
+     * @param wh             the window height
+     * @param matrixSupplier the supplier of the 3x3 color matrix of each tap
+     * @param fftThreshold   the kernel side above which the FFT is used
+     */
+    static UnaryOperator<FloatImage> convolution(int ww, int wh, Function<Convolution, float[][]> matrixSupplier, int fftThreshold) {
+        if (FftConvolution.isConvenient(ww, wh, matrixSupplier, fftThreshold)) {
+            return FftConvolution.convolution(ww, wh, (Kernel) matrixSupplier);
+        }
+        return source -> {
+            int ow = source.width() - ww + 1;
+            int oh = source.height() - wh + 1;
+            FloatImage result = FloatImage.create(ow, oh);
+            ConvolutionEngine.create(source, result, ww, wh, matrixSupplier)
+                    .apply(0, 0, ow, oh);
+            return result;
+        };
+    }
+
+    /**
+     * Returns the parallel convolution processor.
+     * The output image is split in tiles processed by the executor.
+     * The kernel factory is called for each forked task, so the kernels need not be thread safe.
+     *
+     * @param ww            the window width
+     * @param wh            the window height
+     * @param kernelFactory the factory of the color matrix suppliers
+     * @param executor      the tiled executor
+     */
+    static UnaryOperator<FloatImage> convolution(int ww, int wh, Supplier<Function<Convolution, float[][]>> kernelFactory, TiledExecutor executor) {
+        return source -> {
+            int ow = source.width() - ww + 1;
+            int oh = source.height() - wh + 1;
+            FloatImage result = FloatImage.create(ow, oh);
+            executor.execute(ow, oh, () ->
+                    ConvolutionEngine.create(source, result, ww, wh, kernelFactory.get()));
+            return result;
+        };
+    }
+
+    /**
+     * Returns the processor of the hsb pixels.
+     * The components are truncated and clipped to 0...255 before the conversion to hsb.
+     *
+     * @param pixelProcessor the pixel processor
+     */
+    static UnaryOperator<FloatImage> hsbProcessor(UnaryOperator<float[]> pixelProcessor) {
+        return source -> {
+            int w = source.width();
+            int h = source.height();
+            FloatImage result = FloatImage.create(w, h);
+            float[] hsb = new float[3];
+            float[] red = source.red();
+            float[] green = source.green();
+            float[] blue = source.blue();
+            for (int y = 0; y < h; y++) {
+                int i = source.index(0, y);
+                int o = result.index(0, y);
+                for (int x = 0; x < w; x++) {
+                    Color.RGBtoHSB(clip(red[i + x]), clip(green[i + x]), clip(blue[i + x]), hsb);
+                    float[] hsb1 = pixelProcessor.apply(hsb);
+                    int rgb = Color.HSBtoRGB(hsb1[0], hsb1[1], hsb1[2]);
+                    result.red()[o + x] = (rgb >> 16) & 0xff;
+                    result.green()[o + x] = (rgb >> 8) & 0xff;
+                    result.blue()[o + x] = rgb & 0xff;
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Returns the lucri view processor approximated by iterated variable radius box blurs (see {@link IntegralImage}).
+     * It has the output geometry of {@link ImageProcessors#lucriView}: for each pixel the kernel truncated to the window
+     * is replaced by the box blurs with the same variance followed by the kernel gain.
+     * The kernel parameters are computed at the target pixel instead of the source pixels.
+     *
+     * @param width          the image width
+     * @param height         the image height
+     * @param alphaRadius    the radius of fovea relative to the image size
+     * @param minAcuity      the minimum acuity
+     * @param maxAcuity      the maximum acuity
+     * @param minSensitivity the minimum sensitivity
+     * @param maxSensitivity the maximum sensitivity
+     * @param passes         the number of box blur passes
+     */
+    static UnaryOperator<FloatImage> lucriBoxView(int width, int height, double alphaRadius, double minAcuity, double maxAcuity, double minSensitivity, double maxSensitivity, int passes) {
+        int size = (int) (round(1 / minAcuity / 2) * 2 + 1);
+        int half = size / 2;
+        int cx = width / 2;
+        int cy = height / 2;
+        double radius = (double) (max(width, height) / 2) * alphaRadius / 2;
+        double radius2 = radius * radius * 2;
+        DoubleUnaryOperator mapper = PixelProcessors.map(1, 0, minAcuity, maxAcuity);
+        DoubleUnaryOperator mapper1 = PixelProcessors.map(1, 0, minSensitivity, maxSensitivity);
+        // The box radius of n passes with the variance v of the kernel: n * r * (r + 1) / 3 = v
+        float[] radii = new float[width * height];
+        float[] gains = new float[width * height];
+        double[] moments = new double[2];
+        for (int y = 0; y < height; y++) {
+            double dy = y - cy;
+            for (int x = 0; x < width; x++) {
+                double dx = x - cx;
+                double rad = exp(-(dx * dx + dy * dy) / radius2);
+                lucriMoments(mapper.applyAsDouble(rad), half, moments);
+                gains[y * width + x] = (float) (moments[0] * mapper1.applyAsDouble(rad));
+                radii[y * width + x] = (float) ((sqrt(1 + 12 * moments[1] / passes) - 1) / 2);
+            }
+        }
+        UnaryOperator<FloatImage> blur = variableBoxBlur((x, y) -> radii[y * width + x], passes);
+        return source -> {
+            if (source.width() != width || source.height() != height) {
+                throw new IllegalArgumentException("Image size must be " + width + "x" + height);
+            }
+            FloatImage blurred = blur.apply(source);
+            int ow = width - size + 1;
+            int oh = height - size + 1;
+            FloatImage result = FloatImage.create(ow, oh);
+            for (int ty = 0; ty < oh; ty++) {
+                for (int tx = 0; tx < ow; tx++) {
+                    int i = blurred.index(tx + half, ty + half);
+                    int o = result.index(tx, ty);
+                    float gain = gains[(ty + half) * width + tx + half];
+                    for (int c = 0; c < 3; c++) {
+                        result.plane(c)[o] = blurred.plane(c)[i] * gain;
+                    }
+                }
+            }
+            return result;
+        };
+    }
+
+    /**
+     * Computes the gain and the variance along each axis of the lucri kernel truncated to the window.
+     * The gaussian kernel is separable, so the moments are computed on a single axis.
+     *
+     * @param acuity  the acuity
+     * @param half    the half window size
+     * @param moments the result gain and variance
+     */
+    private static void lucriMoments(double acuity, int half, double[] moments) {
+        if (acuity >= 1) {
+            moments[0] = 1;
+            moments[1] = 0;
+            return;
+        }
+        double sigma = 1 / acuity / 2;
+        double sumW = 0;
+        double sumWD2 = 0;
+        for (int d = -half; d <= half; d++) {
+            double wgt = exp(-d * d / sigma / sigma / 2);
+            sumW += wgt;
+            sumWD2 += wgt * d * d;
+        }
+        moments[0] = sumW * sumW / (2 * PI * sigma * sigma);
+        moments[1] = sumWD2 / sumW;
+    }
+
+    /**
+     * Returns the component truncated and clipped to 0...255
+     *
+     * @param value the component value
+     */
+    private static int clip(float value) {
+        return min(max((int) value, 0), 255);
+    }
+
+    /**
+     * Returns the variable radius box blur processor iterated for a number of passes.
+     * Three passes approximate a gaussian blur with variance passes * r * (r + 1) / 3.
+     *
+     * @param radius the box radius of each pixel
+     * @param passes the number of passes
+     */
+    static UnaryOperator<FloatImage> variableBoxBlur(IntegralImage.Radius radius, int passes) {
+        UnaryOperator<FloatImage> blur = IntegralImage.boxBlur(radius);
+        return source -> {
+            FloatImage result = source;
+            for (int i = 0; i < passes; i++) {
+                result = blur.apply(result);
+            }
+            return result;
+        };
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import java.util.function.UnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Processes a region of an image, e.g. a band of {@link StreamingProcessor} or a tile of {@link TiledImage}.
+ * The region includes the halo of the processor window and its coordinates locate the result in the whole image.
+ */
+@FunctionalInterface
+public interface RegionProcessor {
+    /**
+     * Returns the region processor of a convolution.
+     * The position dependent kernels are evaluated with the image coordinates (see {@link Kernel#translate}).
+     *
+     * @param ww     the window width
+     * @param wh     the window height
+     * @param kernel the kernel
+     */
+    static RegionProcessor convolution(int ww, int wh, Kernel kernel) {
+        return kernel.isShiftInvariant()
+                ? of(PlanarProcessors.convolution(ww, wh, kernel))
+                : (region, x, y) -> PlanarProcessors.convolution(ww, wh, kernel.translate(x, y)).apply(region);
+    }
+
+    /**
+     * Returns the region processor of a position independent processor (e.g. hsb processor, shift-invariant kernels)
+     *
+     * @param processor the processor
+     */
+    static RegionProcessor of(UnaryOperator<FloatImage> processor) {
+        requireNonNull(processor);
+        return (region, x, y) -> processor.apply(region);
+    }
+
+    /**
+     * Returns the processed region
+     *
+     * @param region the source region including the halo of the window
+     * @param x      the left coordinate of the result in the image
+     * @param y      the top coordinate of the result in the image
+     */
+    FloatImage apply(FloatImage region, int x, int y);
+}
@@ -0,0 +1,180 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import java.awt.image.*;
+
+/**
+ * Reads packed rgb pixels directly from the data buffer of an image.
+ * <p>
+ * The images of type TYPE_INT_RGB, TYPE_INT_ARGB and TYPE_3BYTE_BGR are read from the backing arrays,
+ * any other image type falls back to the Raster access.
+ * </p>
+ */
+public final class RgbRaster {
+    private static final int INT_PACKED = 0;
+    private static final int BYTE_BGR = 1;
+    private static final int RASTER = 2;
+
+    /**
+     * Returns the backing array of a TYPE_INT_RGB image
+     *
+     * @param img the image
+     */
+    public static int[] data(BufferedImage img) {
+        if (img.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("Image type must be TYPE_INT_RGB");
+        }
+        return ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Returns the rgb raster of the image
+     *
+     * @param img the image
+     */
+    public static RgbRaster of(BufferedImage img) {
+        WritableRaster raster = img.getRaster();
+        int tx = raster.getSampleModelTranslateX();
+        int ty = raster.getSampleModelTranslateY();
+        switch (img.getType()) {
+            case BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB -> {
+                SinglePixelPackedSampleModel sm = (SinglePixelPackedSampleModel) raster.getSampleModel();
+                DataBufferInt db = (DataBufferInt) raster.getDataBuffer();
+                return new RgbRaster(INT_PACKED, db.getData(), null, null,
+                        db.getOffset() + sm.getOffset(-tx, -ty), sm.getScanlineStride(),
+                        img.getWidth(), img.getHeight());
+            }
+            case BufferedImage.TYPE_3BYTE_BGR -> {
+                PixelInterleavedSampleModel sm = (PixelInterleavedSampleModel) raster.getSampleModel();
+                DataBufferByte db = (DataBufferByte) raster.getDataBuffer();
+                int[] bands = sm.getBandOffsets();
+                if (sm.getPixelStride() == 3 && bands[0] == 2 && bands[1] == 1 && bands[2] == 0) {
+                    return new RgbRaster(BYTE_BGR, null, db.getData(), null,
+                            db.getOffset() - ty * sm.getScanlineStride() - tx * 3, sm.getScanlineStride(),
+                            img.getWidth(), img.getHeight());
+                }
+            }
+        }
+        return new RgbRaster(RASTER, null, null, raster, 0, 0, img.getWidth(), img.getHeight());
+    }
+
+    /**
+     * Returns the packed rgb value of the color components (truncated and clipped to 0...255)
+     *
+     * @param r the red component
+     * @param g the green component
+     * @param b the blue component
+     */
+    public static int pack(float r, float g, float b) {
+        int ri = min255((int) r);
+        int gi = min255((int) g);
+        int bi = min255((int) b);
+        return (ri << 16) | (gi << 8) | bi;
+    }
+
+    private static int min255(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    private final int kind;
+    private final int[] ints;
+    private final byte[] bytes;
+    private final Raster raster;
+    private final int offset;
+    private final int scanline;
+    private final int width;
+    private final int height;
+    private final int[] pixel;
+
+    /**
+     * Creates the rgb raster
+     *
+     * @param kind     the kind of access
+     * @param ints     the int data
+     * @param bytes    the byte data
+     * @param raster   the fallback raster
+     * @param offset   the offset of pixel (0,0)
+     * @param scanline the scanline stride
+     * @param width    the width
+     * @param height   the height
+     */
+    private RgbRaster(int kind, int[] ints, byte[] bytes, Raster raster, int offset, int scanline, int width, int height) {
+        this.kind = kind;
+        this.ints = ints;
+        this.bytes = bytes;
+        this.raster = raster;
+        this.offset = offset;
+        this.scanline = scanline;
+        this.width = width;
+        this.height = height;
+        this.pixel = new int[raster != null ? raster.getNumBands() : 0];
+    }
+
+    /**
+     * Returns the height
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns true if the pixels are read directly from the data buffer
+     */
+    public boolean isDirect() {
+        return kind != RASTER;
+    }
+
+    /**
+     * Returns the packed rgb value (0xrrggbb) of a pixel.
+     * The fallback raster access is not thread safe.
+     *
+     * @param x the x coordinate
+     * @param y the y coordinate
+     */
+    public int rgb(int x, int y) {
+        return switch (kind) {
+            case INT_PACKED -> ints[offset + y * scanline + x] & 0xffffff;
+            case BYTE_BGR -> {
+                int i = offset + y * scanline + x * 3;
+                yield ((bytes[i + 2] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i] & 0xff);
+            }
+            default -> {
+                int[] px = raster.getPixel(x, y, pixel);
+                yield px.length >= 3
+                        ? (min255(px[0]) << 16) | (min255(px[1]) << 8) | min255(px[2])
+                        : min255(px[0]) * 0x010101;
+            }
+        };
+    }
+
+    /**
+     * Returns the width
+     */
+    public int width() {
+        return width;
+    }
+}
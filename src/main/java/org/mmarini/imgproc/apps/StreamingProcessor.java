@@ -0,0 +1,199 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.*;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Processes an image file by horizontal bands and writes the result bands incrementally to the output file.
+ * <p>
+ * Each band is decoded with the source region of the image reader including the wh - 1 halo rows of the window,
+ * so the peak memory is bounded by the band height instead of the image size and the result is the same of
+ * processing the whole image.
+ * The output format must support the incremental writing (replace pixels), e.g. the TIFF format.
+ * The formats without random access (e.g. JPEG) are decoded from the beginning for each band.
+ * </p>
+ */
+public final class StreamingProcessor {
+    public static final int DEFAULT_BAND_HEIGHT = 256;
+    private static final Logger logger = LoggerFactory.getLogger(StreamingProcessor.class);
+
+    /**
+     * Returns the streaming processor
+     *
+     * @param ww         the window width
+     * @param wh         the window height
+     * @param bandHeight the number of output rows per band
+     * @param processor  the band processor
+     */
+    public static StreamingProcessor create(int ww, int wh, int bandHeight, RegionProcessor processor) {
+        return new StreamingProcessor(ww, wh, max(bandHeight, 1), processor);
+    }
+
+    /**
+     * Returns the image reader of a file
+     *
+     * @param input the input stream
+     * @throws IOException in case of error
+     */
+    private static ImageReader createReader(ImageInputStream input) throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, true, true);
+        return reader;
+    }
+
+    /**
+     * Returns the image writer of a file supporting the incremental writing.
+     * The writer is checked on a memory stream, so the file is not created if the format is not supported.
+     *
+     * @param file the file
+     * @throws IOException in case of error
+     */
+    private static ImageWriter createWriter(File file) throws IOException {
+        String name = file.getName();
+        String suffix = name.substring(name.lastIndexOf('.') + 1);
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(suffix);
+        try (ImageOutputStream probe = new MemoryCacheImageOutputStream(OutputStream.nullOutputStream())) {
+            while (writers.hasNext()) {
+                ImageWriter writer = writers.next();
+                writer.setOutput(probe);
+                boolean incremental = writer.canWriteEmpty();
+                writer.setOutput(null);
+                if (incremental) {
+                    return writer;
+                }
+                writer.dispose();
+            }
+        }
+        throw new IOException("Format " + suffix + " does not support incremental writing");
+    }
+
+    /**
+     * Returns the image size of a file without decoding the pixels
+     *
+     * @param file the file
+     * @throws IOException in case of error
+     */
+    public static Dimension size(File file) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            if (input == null) {
+                throw new IOException("Cannot open " + file);
+            }
+            ImageReader reader = createReader(input);
+            try {
+                return new Dimension(reader.getWidth(0), reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private final int ww;
+    private final int wh;
+    private final int bandHeight;
+    private final RegionProcessor processor;
+
+    /**
+     * Creates the streaming processor
+     *
+     * @param ww         the window width
+     * @param wh         the window height
+     * @param bandHeight the number of output rows per band
+     * @param processor  the band processor
+     */
+    private StreamingProcessor(int ww, int wh, int bandHeight, RegionProcessor processor) {
+        this.ww = ww;
+        this.wh = wh;
+        this.bandHeight = bandHeight;
+        this.processor = requireNonNull(processor);
+    }
+
+    /**
+     * Processes the input file and writes the output file
+     *
+     * @param inputFile  the input file
+     * @param outputFile the output file
+     * @throws IOException in case of error
+     */
+    public void process(File inputFile, File outputFile) throws IOException {
+        ImageWriter writer = createWriter(outputFile);
+        try (ImageInputStream input = ImageIO.createImageInputStream(inputFile);
+             ImageOutputStream output = ImageIO.createImageOutputStream(outputFile)) {
+            if (input == null) {
+                throw new IOException("Cannot open " + inputFile);
+            }
+            writer.setOutput(output);
+            ImageReader reader = createReader(input);
+            try {
+                int w = reader.getWidth(0);
+                int h = reader.getHeight(0);
+                int ow = w - ww + 1;
+                int oh = h - wh + 1;
+                ImageWriteParam writeParam = writer.getDefaultWriteParam();
+                writer.prepareWriteEmpty(null, ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB),
+                        ow, oh, null, null, writeParam);
+                ImageReadParam readParam = reader.getDefaultReadParam();
+                for (int y = 0; y < oh; y += bandHeight) {
+                    int bh = min(bandHeight, oh - y);
+                    readParam.setSourceRegion(new Rectangle(0, y, w, bh + wh - 1));
+                    FloatImage band = FloatImage.of(reader.read(0, readParam));
+                    BufferedImage result = processor.apply(band, 0, y).toBufferedImage();
+                    writer.prepareReplacePixels(0, new Rectangle(0, y, ow, bh));
+                    writeParam.setDestinationOffset(new Point(0, y));
+                    writer.replacePixels(result, writeParam);
+                    writer.endReplacePixels();
+                    logger.atDebug().log("Band {}-{} of {} rows written", y, y + bh - 1, oh);
+                }
+                writer.endWriteEmpty();
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            writer.dispose();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import java.io.Serial;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Supplier;
+
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Executes the processing of an image split in tiles on a fork join pool.
+ * <p>
+ * The tiles are partitioned recursively by their estimated cost, so tiles with different costs
+ * (e.g. the fovea and the periphery of the lucri kernel) are balanced among the workers.
+ * </p>
+ */
+public final class TiledExecutor {
+    public static final int DEFAULT_TILE_SIZE = 64;
+    /**
+     * The number of tasks per worker thread used to compute the task grain
+     */
+    private static final int TASKS_PER_THREAD = 4;
+
+    /**
+     * Returns the executor on the common pool with the default tile size and uniform cost
+     */
+    public static TiledExecutor create() {
+        return create(ForkJoinPool.commonPool(), DEFAULT_TILE_SIZE, DEFAULT_TILE_SIZE);
+    }
+
+    /**
+     * Returns the executor with uniform cost
+     *
+     * @param pool       the pool
+     * @param tileWidth  the tile width
+     * @param tileHeight the tile height
+     */
+    public static TiledExecutor create(ForkJoinPool pool, int tileWidth, int tileHeight) {
+        return new TiledExecutor(pool, tileWidth, tileHeight, TileCost.AREA);
+    }
+
+    private final ForkJoinPool pool;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final TileCost cost;
+
+    /**
+     * Creates the executor
+     *
+     * @param pool       the pool
+     * @param tileWidth  the tile width
+     * @param tileHeight the tile height
+     * @param cost       the tile cost estimator
+     */
+    private TiledExecutor(ForkJoinPool pool, int tileWidth, int tileHeight, TileCost cost) {
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        this.pool = requireNonNull(pool);
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.cost = requireNonNull(cost);
+    }
+
+    /**
+     * Returns the tile cost estimator
+     */
+    public TileCost cost() {
+        return cost;
+    }
+
+    /**
+     * Returns the executor with the tile cost estimator
+     *
+     * @param cost the tile cost estimator
+     */
+    public TiledExecutor cost(TileCost cost) {
+        return new TiledExecutor(pool, tileWidth, tileHeight, cost);
+    }
+
+    /**
+     * Processes all the tiles of the area and waits for the completion.
+     * The task factory is called once for each forked task to create its working state
+     * so the tile tasks do not need to be thread safe.
+     *
+     * @param width       the width of area
+     * @param height      the height of area
+     * @param taskFactory the factory of tile tasks
+     */
+    public void execute(int width, int height, Supplier<TileTask> taskFactory) {
+        int nx = (width + tileWidth - 1) / tileWidth;
+        int ny = (height + tileHeight - 1) / tileHeight;
+        int n = nx * ny;
+        if (n == 0) {
+            return;
+        }
+        int[] tiles = new int[n * 4];
+        double[] cumCost = new double[n + 1];
+        int k = 0;
+        for (int ty = 0; ty < ny; ty++) {
+            for (int tx = 0; tx < nx; tx++) {
+                int x0 = tx * tileWidth;
+                int y0 = ty * tileHeight;
+                int x1 = min(x0 + tileWidth, width);
+                int y1 = min(y0 + tileHeight, height);
+                tiles[k * 4] = x0;
+                tiles[k * 4 + 1] = y0;
+                tiles[k * 4 + 2] = x1;
+                tiles[k * 4 + 3] = y1;
+                cumCost[k + 1] = cumCost[k] + Math.max(cost.cost(x0, y0, x1, y1), 0);
+                k++;
+            }
+        }
+        double grain = cumCost[n] / pool.getParallelism() / TASKS_PER_THREAD;
+        pool.invoke(new TilesAction(tiles, cumCost, grain, taskFactory, 0, n));
+    }
+
+    /**
+     * Returns the pool
+     */
+    public ForkJoinPool pool() {
+        return pool;
+    }
+
+    /**
+     * Returns the tile height
+     */
+    public int tileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * Returns the tile width
+     */
+    public int tileWidth() {
+        return tileWidth;
+    }
+
+    /**
+     * Estimates the cost of a tile
+     */
+    @FunctionalInterface
+    public interface TileCost {
+        TileCost AREA = (x0, y0, x1, y1) -> (double) (x1 - x0) * (y1 - y0);
+
+        /**
+         * Returns the estimated cost of the tile
+         *
+         * @param x0 the left coordinate (inclusive)
+         * @param y0 the top coordinate (inclusive)
+         * @param x1 the right coordinate (exclusive)
+         * @param y1 the bottom coordinate (exclusive)
+         */
+        double cost(int x0, int y0, int x1, int y1);
+    }
+
+    /**
+     * Processes a tile
+     */
+    @FunctionalInterface
+    public interface TileTask {
+        /**
+         * Processes the tile
+         *
+         * @param x0 the left coordinate (inclusive)
+         * @param y0 the top coordinate (inclusive)
+         * @param x1 the right coordinate (exclusive)
+         * @param y1 the bottom coordinate (exclusive)
+         */
+        void apply(int x0, int y0, int x1, int y1);
+    }
+
+    /**
+     * Processes a range of tiles splitting it at the cost median
+     */
+    private static class TilesAction extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int[] tiles;
+        private final double[] cumCost;
+        private final double grain;
+        private final transient Supplier<TileTask> taskFactory;
+        private final int from;
+        private final int to;
+
+        /**
+         * Creates the action
+         *
+         * @param tiles       the tiles coordinates
+         * @param cumCost     the cumulative costs of tiles
+         * @param grain       the maximum cost of a sequential task
+         * @param taskFactory the task factory
+         * @param from        the first tile index (inclusive)
+         * @param to          the last tile index (exclusive)
+         */
+        private TilesAction(int[] tiles, double[] cumCost, double grain, Supplier<TileTask> taskFactory, int from, int to) {
+            this.tiles = tiles;
+            this.cumCost = cumCost;
+            this.grain = grain;
+            this.taskFactory = taskFactory;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1 || cumCost[to] - cumCost[from] <= grain) {
+                TileTask task = taskFactory.get();
+                for (int i = from; i < to; i++) {
+                    task.apply(tiles[i * 4], tiles[i * 4 + 1], tiles[i * 4 + 2], tiles[i * 4 + 3]);
+                }
+            } else {
+                // Splits at the cost median
+                double mid = (cumCost[from] + cumCost[to]) / 2;
+                int split = from + 1;
+                while (split < to - 1 && cumCost[split] < mid) {
+                    split++;
+                }
+                invokeAll(new TilesAction(tiles, cumCost, grain, taskFactory, from, split),
+                        new TilesAction(tiles, cumCost, grain, taskFactory, split, to));
+            }
+        }
+    }
+}
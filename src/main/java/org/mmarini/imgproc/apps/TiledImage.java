@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lazy image computed by tiles on demand.
+ * <p>
+ * Each stage of a processing chain pulls from the previous stage only the regions required by the requested tiles,
+ * including the halo of the processor window, so a viewport does not materialize the full intermediate images.
+ * The computed tiles of each stage are kept in a bounded LRU cache, so the memory is fixed
+ * and the regions requested again (e.g. panning) reuse the computed tiles.
+ * The image can be shared among threads: the cache of each stage is locked only to look up and store the tiles,
+ * the tiles are computed out of the lock, so different tiles are computed in parallel.
+ * The concurrent requests of the same missing tile may compute it more than once, the first stored tile is kept.
+ * </p>
+ */
+public final class TiledImage {
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    /**
+     * Returns the tiled image of a buffered image
+     *
+     * @param source the source image
+     */
+    public static TiledImage of(BufferedImage source) {
+        return of(FloatImage.of(source));
+    }
+
+    /**
+     * Returns the tiled image of a planar image
+     *
+     * @param source the source image
+     */
+    public static TiledImage of(FloatImage source) {
+        requireNonNull(source);
+        return new TiledImage(source.width(), source.height(), (x, y, width, height) -> {
+            FloatImage result = FloatImage.create(width, height);
+            copy(source, x, y, result, 0, 0, width, height);
+            return result;
+        }, null, 0, 0, null, 0, 0);
+    }
+
+    /**
+     * Returns the tiled image of an off-heap image.
+     * The regions are read from the off-heap storage, so the source pixels are not held in the heap;
+     * the off-heap image must not be closed while the tiled image is in use.
+     *
+     * @param source the source image
+     */
+    public static TiledImage of(OffHeapImage source) {
+        return new TiledImage(source.width(), source.height(), source::read, null, 0, 0, null, 0, 0);
+    }
+
+    /**
+     * Copies a region of an image to a region of another image
+     *
+     * @param from   the source image
+     * @param fx     the source left coordinate
+     * @param fy     the source top coordinate
+     * @param to     the destination image
+     * @param tx     the destination left coordinate
+     * @param ty     the destination top coordinate
+     * @param width  the region width
+     * @param height the region height
+     */
+    private static void copy(FloatImage from, int fx, int fy, FloatImage to, int tx, int ty, int width, int height) {
+        for (int c = 0; c < 3; c++) {
+            float[] src = from.plane(c);
+            float[] dst = to.plane(c);
+            for (int j = 0; j < height; j++) {
+                System.arraycopy(src, from.index(fx, fy + j), dst, to.index(tx, ty + j), width);
+            }
+        }
+    }
+
+    private final int width;
+    private final int height;
+    private final Source source;
+    private final TiledImage parent;
+    private final int ww;
+    private final int wh;
+    private final RegionProcessor processor;
+    private final int tileSize;
+    private final Map<Long, FloatImage> cache;
+
+    /**
+     * Creates the tiled image
+     *
+     * @param width     the width
+     * @param height    the height
+     * @param source    the source region reader or null if computed
+     * @param parent    the parent stage or null if source
+     * @param ww        the window width
+     * @param wh        the window height
+     * @param processor the tile processor
+     * @param tileSize  the tile size
+     * @param cacheSize the maximum number of cached tiles
+     */
+    private TiledImage(int width, int height, Source source, TiledImage parent, int ww, int wh, RegionProcessor processor, int tileSize, int cacheSize) {
+        this.width = width;
+        this.height = height;
+        this.source = source;
+        this.parent = parent;
+        this.ww = ww;
+        this.wh = wh;
+        this.processor = processor;
+        this.tileSize = tileSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, FloatImage> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the next stage with the default tile and cache sizes
+     *
+     * @param ww        the window width
+     * @param wh        the window height
+     * @param processor the processor of the "valid" output (w - ww + 1) x (h - wh + 1)
+     */
+    public TiledImage apply(int ww, int wh, RegionProcessor processor) {
+        return apply(ww, wh, processor, DEFAULT_TILE_SIZE, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Returns the next stage
+     *
+     * @param ww        the window width
+     * @param wh        the window height
+     * @param processor the processor of the "valid" output (w - ww + 1) x (h - wh + 1)
+     * @param tileSize  the tile size
+     * @param cacheSize the maximum number of cached tiles
+     */
+    public TiledImage apply(int ww, int wh, RegionProcessor processor, int tileSize, int cacheSize) {
+        if (ww < 1 || wh < 1 || ww > width || wh > height) {
+            throw new IllegalArgumentException("Invalid window size " + ww + "x" + wh);
+        }
+        if (tileSize < 1 || cacheSize < 1) {
+            throw new IllegalArgumentException("Tile and cache sizes must be positive");
+        }
+        return new TiledImage(width - ww + 1, height - wh + 1, null, this, ww, wh, requireNonNull(processor), tileSize, cacheSize);
+    }
+
+    /**
+     * Returns the number of cached tiles
+     */
+    public int cachedTiles() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Returns the height
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns a region of the image computing the missing tiles
+     *
+     * @param x      the left coordinate
+     * @param y      the top coordinate
+     * @param width  the width
+     * @param height the height
+     */
+    public FloatImage region(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > this.width || y + height > this.height) {
+            throw new IllegalArgumentException("Region out of image bounds");
+        }
+        if (source != null) {
+            return source.region(x, y, width, height);
+        }
+        FloatImage result = FloatImage.create(width, height);
+        for (int j = y / tileSize; j * tileSize < y + height; j++) {
+            for (int i = x / tileSize; i * tileSize < x + width; i++) {
+                FloatImage tile = tile(i, j);
+                int x0 = max(x, i * tileSize);
+                int y0 = max(y, j * tileSize);
+                int x1 = min(x + width, i * tileSize + tile.width());
+                int y1 = min(y + height, j * tileSize + tile.height());
+                copy(tile, x0 - i * tileSize, y0 - j * tileSize, result, x0 - x, y0 - y, x1 - x0, y1 - y0);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a tile from the cache or computes it
+     *
+     * @param i the tile column
+     * @param j the tile row
+     */
+    private FloatImage tile(int i, int j) {
+        long key = ((long) j << 32) | i;
+        synchronized (cache) {
+            FloatImage tile = cache.get(key);
+            if (tile != null) {
+                return tile;
+            }
+        }
+        int x0 = i * tileSize;
+        int y0 = j * tileSize;
+        int tw = min(tileSize, width - x0);
+        int th = min(tileSize, height - y0);
+        FloatImage tile = processor.apply(parent.region(x0, y0, tw + ww - 1, th + wh - 1), x0, y0);
+        if (tile.width() != tw || tile.height() != th) {
+            throw new IllegalStateException("Tile size must be " + tw + "x" + th);
+        }
+        synchronized (cache) {
+            FloatImage cached = cache.putIfAbsent(key, tile);
+            return cached != null ? cached : tile;
+        }
+    }
+
+    /**
+     * Returns the buffered image of a region
+     *
+     * @param x      the left coordinate
+     * @param y      the top coordinate
+     * @param width  the width
+     * @param height the height
+     */
+    public BufferedImage toBufferedImage(int x, int y, int width, int height) {
+        return region(x, y, width, height).toBufferedImage();
+    }
+
+    /**
+     * Returns the width
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Reads the regions of the source image
+     */
+    @FunctionalInterface
+    private interface Source {
+        /**
+         * Returns a copy of a region of the source image
+         *
+         * @param x      the left coordinate
+         * @param y      the top coordinate
+         * @param width  the width
+         * @param height the height
+         */
+        FloatImage region(int x, int y, int width, int height);
+    }
+}
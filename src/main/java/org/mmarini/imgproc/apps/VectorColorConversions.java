@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Color conversions computed with the Vector API on a lane of pixels for each instruction.
+ * <p>
+ * The branches of {@link java.awt.Color} are replaced by lane blends of the same float expressions,
+ * the remaining pixels of each row are converted by the scalar loops of {@link ColorConversions}.
+ * This class must be loaded only if the module jdk.incubator.vector is available
+ * (see {@link ConvolutionEngine#VECTOR_ENABLED}).
+ * </p>
+ */
+final class VectorColorConversions {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * Returns the floor of the lanes
+     *
+     * @param x the values
+     */
+    private static FloatVector floor(FloatVector x) {
+        FloatVector truncated = (FloatVector) x.convert(VectorOperators.F2I, 0).convert(VectorOperators.I2F, 0);
+        return truncated.sub(1f, x.compare(VectorOperators.LT, truncated));
+    }
+
+    /**
+     * Converts hsb components to packed rgb pixels
+     *
+     * @param hue        the hue components
+     * @param saturation the saturation components
+     * @param brightness the brightness components
+     * @param hsbOffset  the offset of the first hsb components
+     * @param rgb        the rgb pixels
+     * @param rgbOffset  the offset of the first rgb pixel
+     * @param n          the number of pixels
+     */
+    static void hsbToRgb(float[] hue, float[] saturation, float[] brightness, int hsbOffset, int[] rgb, int rgbOffset, int n) {
+        int upper = FLOATS.loopBound(n);
+        int i = 0;
+        for (; i < upper; i += FLOATS.length()) {
+            FloatVector h0 = FloatVector.fromArray(FLOATS, hue, hsbOffset + i);
+            FloatVector s = FloatVector.fromArray(FLOATS, saturation, hsbOffset + i);
+            FloatVector v = FloatVector.fromArray(FLOATS, brightness, hsbOffset + i);
+            FloatVector h = h0.sub(floor(h0)).mul(6f);
+            FloatVector f = h.sub(floor(h));
+            FloatVector p = v.mul(s.neg().add(1f));
+            FloatVector q = v.mul(s.mul(f).neg().add(1f));
+            FloatVector t = v.mul(s.mul(f.neg().add(1f)).neg().add(1f));
+            IntVector sector = ((IntVector) h.convert(VectorOperators.F2I, 0)).min(5);
+            VectorMask<Float> s0 = sector.eq(0).cast(FLOATS);
+            VectorMask<Float> s1 = sector.eq(1).cast(FLOATS);
+            VectorMask<Float> s2 = sector.eq(2).cast(FLOATS);
+            VectorMask<Float> s3 = sector.eq(3).cast(FLOATS);
+            VectorMask<Float> s4 = sector.eq(4).cast(FLOATS);
+            VectorMask<Float> s5 = sector.eq(5).cast(FLOATS);
+            FloatVector r = p.blend(t, s4).blend(q, s1).blend(v, s0.or(s5));
+            FloatVector g = p.blend(q, s3).blend(t, s0).blend(v, s1.or(s2));
+            FloatVector b = p.blend(q, s5).blend(t, s2).blend(v, s3.or(s4));
+            toByte(r).lanewise(VectorOperators.LSHL, 16)
+                    .or(toByte(g).lanewise(VectorOperators.LSHL, 8))
+                    .or(toByte(b))
+                    .intoArray(rgb, rgbOffset + i);
+        }
+        ColorConversions.hsbToRgbScalar(hue, saturation, brightness, hsbOffset, rgb, rgbOffset, n, i);
+    }
+
+    /**
+     * Converts packed rgb pixels to hsb components
+     *
+     * @param rgb        the rgb pixels
+     * @param rgbOffset  the offset of the first rgb pixel
+     * @param hue        the hue components
+     * @param saturation the saturation components
+     * @param brightness the brightness components
+     * @param hsbOffset  the offset of the first hsb components
+     * @param n          the number of pixels
+     */
+    static void rgbToHsb(int[] rgb, int rgbOffset, float[] hue, float[] saturation, float[] brightness, int hsbOffset, int n) {
+        int upper = INTS.loopBound(n);
+        int i = 0;
+        for (; i < upper; i += INTS.length()) {
+            IntVector px = IntVector.fromArray(INTS, rgb, rgbOffset + i);
+            FloatVector r = toFloat(px.lanewise(VectorOperators.LSHR, 16).and(0xff));
+            FloatVector g = toFloat(px.lanewise(VectorOperators.LSHR, 8).and(0xff));
+            FloatVector b = toFloat(px.and(0xff));
+            FloatVector cmax = r.max(g).max(b);
+            FloatVector cmin = r.min(g).min(b);
+            FloatVector delta = cmax.sub(cmin);
+            FloatVector zero = FloatVector.zero(FLOATS);
+            FloatVector s = zero.blend(delta.div(cmax), cmax.compare(VectorOperators.NE, 0f));
+            FloatVector redc = cmax.sub(r).div(delta);
+            FloatVector greenc = cmax.sub(g).div(delta);
+            FloatVector bluec = cmax.sub(b).div(delta);
+            FloatVector h = greenc.add(4f).sub(redc)
+                    .blend(redc.add(2f).sub(bluec), g.compare(VectorOperators.EQ, cmax))
+                    .blend(bluec.sub(greenc), r.compare(VectorOperators.EQ, cmax))
+                    .div(6f);
+            h = h.blend(h.add(1f), h.compare(VectorOperators.LT, 0f));
+            h.blend(zero, s.compare(VectorOperators.EQ, 0f)).intoArray(hue, hsbOffset + i);
+            s.intoArray(saturation, hsbOffset + i);
+            cmax.div(255f).intoArray(brightness, hsbOffset + i);
+        }
+        ColorConversions.rgbToHsbScalar(rgb, rgbOffset, hue, saturation, brightness, hsbOffset, n, i);
+    }
+
+    /**
+     * Returns the 0...255 integer component of a 0...1 float component
+     *
+     * @param x the float component
+     */
+    private static IntVector toByte(FloatVector x) {
+        return (IntVector) x.mul(255f).add(0.5f).convert(VectorOperators.F2I, 0);
+    }
+
+    /**
+     * Returns the float lanes of integer lanes
+     *
+     * @param x the integer lanes
+     */
+    private static FloatVector toFloat(IntVector x) {
+        return (FloatVector) x.convert(VectorOperators.I2F, 0);
+    }
+
+    /**
+     * Creates the conversions
+     */
+    private VectorColorConversions() {
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorSpecies;
+import org.mmarini.imgproc.apps.ConvolutionEngine.Taps;
+import org.mmarini.imgproc.apps.TiledExecutor.TileTask;
+
+import java.util.Arrays;
+
+/**
+ * Convolution of scalar-diagonal kernels computed with the Vector API on a lane of output pixels for each instruction.
+ * <p>
+ * Each tap is accumulated to the output row by vector multiply and add on the color planes.
+ * The weights of the kernel bank are gathered by the level offsets of the source pixels.
+ * The results are the same of the scalar loops because the taps are accumulated in the same order.
+ * This class must be loaded only if the module jdk.incubator.vector is available
+ * (see {@link ConvolutionEngine#VECTOR_ENABLED}).
+ * </p>
+ */
+final class VectorConvolution {
+    private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+    /**
+     * Accumulates a weighted source row to an output row
+     *
+     * @param out the output plane
+     * @param o   the output index
+     * @param in  the input plane
+     * @param i   the input index
+     * @param n   the number of pixels
+     * @param w   the weight
+     */
+    private static void accumulate(float[] out, int o, float[] in, int i, int n, float w) {
+        FloatVector wv = FloatVector.broadcast(SPECIES, w);
+        int upper = SPECIES.loopBound(n);
+        int k = 0;
+        for (; k < upper; k += SPECIES.length()) {
+            FloatVector.fromArray(SPECIES, out, o + k)
+                    .add(FloatVector.fromArray(SPECIES, in, i + k).mul(wv))
+                    .intoArray(out, o + k);
+        }
+        for (; k < n; k++) {
+            out[o + k] += in[i + k] * w;
+        }
+    }
+
+    /**
+     * Returns the tile task of the kernel bank
+     *
+     * @param in   the source image
+     * @param out  the output image
+     * @param bank the kernel bank
+     */
+    static TileTask bank(FloatImage in, FloatImage out, LucriKernelBank bank) {
+        int size = bank.size();
+        int w = bank.width();
+        int ox = bank.originX();
+        int oy = bank.originY();
+        float[] weights = bank.weights();
+        int[] levelOffsets = bank.levelOffsets();
+        int lanes = SPECIES.length();
+        return (x0, y0, x1, y1) -> {
+            int n = x1 - x0;
+            int upper = SPECIES.loopBound(n);
+            for (int ty = y0; ty < y1; ty++) {
+                int o = out.index(x0, ty);
+                for (int c = 0; c < 3; c++) {
+                    Arrays.fill(out.plane(c), o, o + n, 0);
+                }
+                for (int dy = 0; dy < size; dy++) {
+                    for (int dx = 0; dx < size; dx++) {
+                        int tap = dy * size + dx;
+                        int src = (ty + dy + oy) * w + ox + x0 + dx;
+                        int i = in.index(x0 + dx, ty + dy);
+                        for (int c = 0; c < 3; c++) {
+                            float[] a = out.plane(c);
+                            float[] p = in.plane(c);
+                            int k = 0;
+                            for (; k < upper; k += lanes) {
+                                FloatVector wv = FloatVector.fromArray(SPECIES, weights, tap, levelOffsets, src + k);
+                                FloatVector.fromArray(SPECIES, a, o + k)
+                                        .add(FloatVector.fromArray(SPECIES, p, i + k).mul(wv))
+                                        .intoArray(a, o + k);
+                            }
+                            for (; k < n; k++) {
+                                a[o + k] += p[i + k] * weights[levelOffsets[src + k] + tap];
+                            }
+                        }
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the tile task of the shift-invariant scalar kernel
+     *
+     * @param in   the source image
+     * @param out  the output image
+     * @param taps the kernel taps
+     */
+    static TileTask invariant(FloatImage in, FloatImage out, Taps taps) {
+        int[] offsets = taps.offsets(in.stride());
+        return (x0, y0, x1, y1) -> {
+            int n = x1 - x0;
+            for (int ty = y0; ty < y1; ty++) {
+                int o = out.index(x0, ty);
+                int base = in.index(x0, ty);
+                for (int c = 0; c < 3; c++) {
+                    float[] a = out.plane(c);
+                    float[] p = in.plane(c);
+                    Arrays.fill(a, o, o + n, 0);
+                    for (int i = 0; i < offsets.length; i++) {
+                        accumulate(a, o, p, base + offsets[i], n, taps.weights[i]);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the vector convolution
+     */
+    private VectorConvolution() {
+    }
+}
@@ -33,6 +33,8 @@ import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
+import org.mmarini.imgproc.swing.DropPolicy;
+import org.mmarini.imgproc.swing.MatPool;
 import org.mmarini.imgproc.swing.Messages;
 import org.mmarini.imgproc.swing.VideoViewer;
 import org.slf4j.Logger;
@@ -45,6 +47,7 @@ import java.awt.event.WindowEvent;
 
 public class VideoBrowser {
     private static final Logger logger = LoggerFactory.getLogger(VideoBrowser.class);
+    private static final int STATUS_PERIOD = 1000;
 
     /**
      * Returns the argument parser
@@ -54,9 +57,21 @@ public class VideoBrowser {
                 .defaultHelp(true)
                 .version(Messages.getString("VideoBrowers.title"))
                 .description("Run the test.");
+        parser.addArgument("-d", "--drop")
+                .choices("block", "drop_oldest", "drop_newest")
+                .setDefault("block")
+                .help("specify the policy of full queues between the stages");
         parser.addArgument("-f", "--file")
                 .required(true)
                 .help("specify the image file");
+        parser.addArgument("-q", "--queue")
+                .type(Integer.class)
+                .setDefault(VideoViewer.DEFAULT_QUEUE_DEPTH)
+                .help("specify the depth of the queues between the decoding, processing and rendering stages");
+        parser.addArgument("-w", "--workers")
+                .type(Integer.class)
+                .setDefault(1)
+                .help("specify the number of frames processed in parallel");
         parser.addArgument("-v", "--version")
                 .action(Arguments.version())
                 .help("show current version");
@@ -84,6 +99,8 @@ public class VideoBrowser {
     private final Namespace args;
     private final JFrame frame;
     private final VideoViewer videoBox;
+    private final JLabel status;
+    private final Timer statusTimer;
 
     /**
      * @param args the argument
@@ -91,10 +108,14 @@ public class VideoBrowser {
     public VideoBrowser(Namespace args) {
         this.args = args;
         this.frame = new JFrame("OpenCv");
-        this.videoBox = new VideoViewer();
+        this.videoBox = new VideoViewer(null, args.getInt("queue"),
+                DropPolicy.valueOf(args.getString("drop").toUpperCase()), args.getInt("workers"));
+        this.status = new JLabel();
+        this.statusTimer = new Timer(STATUS_PERIOD, ev -> updateStatus());
         Container content = frame.getContentPane();
         content.setLayout(new BorderLayout());
         content.add(new JScrollPane(videoBox), BorderLayout.CENTER);
+        content.add(status, BorderLayout.SOUTH);
     }
 
     /**
@@ -113,8 +134,26 @@ public class VideoBrowser {
             @Override
             public void windowOpened(WindowEvent e) {
                 videoBox.open(file);
+                statusTimer.start();
+            }
+
+            @Override
+            public void windowClosing(WindowEvent e) {
+                // Runs before the exit on close, stopping the pipeline and releasing the native frames
+                statusTimer.stop();
+                videoBox.close();
             }
         });
         logger.atInfo().log("Completed");
     }
+
+    /**
+     * Updates the status bar with the frame counters, the native memory gauges and the frame statistics
+     */
+    private void updateStatus() {
+        MatPool pool = videoBox.getMatPool();
+        status.setText(String.format("Mats: %d (%d idle), native: %.1f MB, dropped: %d, late: %d, %s",
+                pool.liveMats(), pool.idleMats(), pool.liveBytes() / 1e6,
+                videoBox.getDroppedFrames(), videoBox.getLateFrames(), videoBox.getStats()));
+    }
 }
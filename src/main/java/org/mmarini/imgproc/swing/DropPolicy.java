@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Backpressure policy of the bounded queues between the video pipeline stages
+ */
+public enum DropPolicy {
+    /**
+     * Blocks the upstream stage until the queue has room, no frame is dropped
+     */
+    BLOCK,
+    /**
+     * Drops the oldest queued element, the queue keeps the most recent frames (live sources)
+     */
+    DROP_OLDEST,
+    /**
+     * Drops the new element, the queue keeps the frames already queued
+     */
+    DROP_NEWEST;
+
+    /**
+     * Puts an element in the queue applying the policy and returns the dropped element or null if none
+     *
+     * @param queue   the queue
+     * @param element the element
+     * @param <T>     the element type
+     * @throws InterruptedException if interrupted while blocked
+     */
+    public <T> T put(BlockingQueue<T> queue, T element) throws InterruptedException {
+        switch (this) {
+            case BLOCK -> {
+                queue.put(element);
+                return null;
+            }
+            case DROP_NEWEST -> {
+                return queue.offer(element) ? null : element;
+            }
+            default -> {
+                T dropped = null;
+                while (!queue.offer(element)) {
+                    T oldest = queue.poll();
+                    if (oldest != null) {
+                        dropped = oldest;
+                    }
+                }
+                return dropped;
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+/**
+ * Latency and throughput statistics of the rendered frames.
+ * <p>
+ * The latency of a frame is the time from its decoding to its rendering,
+ * the throughput is the rate of rendered frames since the first one.
+ * </p>
+ */
+public final class FrameStats {
+    private long frames;
+    private long latencySum;
+    private long maxLatency;
+    private long firstTime;
+    private long lastTime;
+
+    /**
+     * Records a rendered frame
+     *
+     * @param decodedTime the decoding time of the frame (System.nanoTime)
+     */
+    public synchronized void add(long decodedTime) {
+        long now = System.nanoTime();
+        long latency = now - decodedTime;
+        if (frames == 0) {
+            firstTime = now;
+        }
+        frames++;
+        lastTime = now;
+        latencySum += latency;
+        maxLatency = Math.max(maxLatency, latency);
+    }
+
+    /**
+     * Returns the number of rendered frames
+     */
+    public synchronized long frames() {
+        return frames;
+    }
+
+    /**
+     * Returns the maximum latency (ms)
+     */
+    public synchronized double maxLatency() {
+        return maxLatency / 1e6;
+    }
+
+    /**
+     * Returns the mean latency (ms)
+     */
+    public synchronized double meanLatency() {
+        return frames > 0 ? latencySum / 1e6 / frames : 0;
+    }
+
+    /**
+     * Returns the throughput (frames per second)
+     */
+    public synchronized double throughput() {
+        return frames > 1 ? (frames - 1) * 1e9 / (lastTime - firstTime) : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d frames, %.1f fps, latency %.1f ms (max %.1f ms)",
+                frames, throughput(), meanLatency(), maxLatency());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pool of buffered images keyed by size and type.
+ * <p>
+ * The released images are reused by the next acquisitions of the same key,
+ * so a steady stream of frames with the same geometry does not allocate images.
+ * At most {@link #MAX_IDLE} idle images are kept for each key.
+ * </p>
+ */
+public final class ImagePool {
+    /**
+     * The maximum number of idle images of each key
+     */
+    public static final int MAX_IDLE = 4;
+
+    private final Map<Key, Deque<BufferedImage>> idle;
+
+    /**
+     * Creates the pool
+     */
+    public ImagePool() {
+        this.idle = new HashMap<>();
+    }
+
+    /**
+     * Returns an image of the given size and type, reused if available
+     *
+     * @param width  the width
+     * @param height the height
+     * @param type   the image type
+     */
+    public synchronized BufferedImage acquire(int width, int height, int type) {
+        Deque<BufferedImage> images = idle.get(new Key(width, height, type));
+        BufferedImage image = images != null ? images.poll() : null;
+        return image != null ? image : new BufferedImage(width, height, type);
+    }
+
+    /**
+     * Returns an image to the pool
+     *
+     * @param image the image
+     */
+    public synchronized void release(BufferedImage image) {
+        Deque<BufferedImage> images = idle.computeIfAbsent(
+                new Key(image.getWidth(), image.getHeight(), image.getType()), k -> new ArrayDeque<>());
+        if (images.size() < MAX_IDLE) {
+            images.push(image);
+        }
+    }
+
+    /**
+     * Pool key
+     *
+     * @param width  the width
+     * @param height the height
+     * @param type   the image type
+     */
+    private record Key(int width, int height, int type) {
+    }
+}
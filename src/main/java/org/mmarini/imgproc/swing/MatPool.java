@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import org.opencv.core.Mat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pool of OpenCV matrices with explicit release of the native memory.
+ * <p>
+ * The acquired matrices are reused after their release, so the frames decoded with the same geometry
+ * do not allocate native memory (VideoCapture.read reuses the matrix buffer).
+ * The pool owns the acquired matrices until their release and the matrices created outside the pool
+ * only if explicitly tracked (see {@link #track(Mat)}),
+ * the releases of null, foreign or already released matrices are ignored,
+ * so a matrix is never idle twice or reused while its owner is still writing it (e.g. the cached output of a processor).
+ * The released matrices exceeding the idle limit free their native memory immediately instead of waiting for the GC.
+ * The gauges {@link #liveMats()} and {@link #liveBytes()} report the tracked matrices,
+ * so a long-running viewer can be monitored for flat native memory.
+ * </p>
+ */
+public final class MatPool {
+    /**
+     * The default maximum number of idle matrices
+     */
+    public static final int DEFAULT_MAX_IDLE = 8;
+    private static final Logger logger = LoggerFactory.getLogger(MatPool.class);
+
+    private final int maxIdle;
+    private final Deque<Mat> idle;
+    private final Set<Mat> live;
+
+    /**
+     * Creates the pool
+     */
+    public MatPool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    /**
+     * Creates the pool
+     *
+     * @param maxIdle the maximum number of idle matrices
+     */
+    public MatPool(int maxIdle) {
+        this.maxIdle = maxIdle;
+        this.idle = new ArrayDeque<>();
+        this.live = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Returns a matrix, reused if available
+     */
+    public synchronized Mat acquire() {
+        Mat mat = idle.poll();
+        if (mat == null) {
+            mat = new Mat();
+        }
+        live.add(mat);
+        return mat;
+    }
+
+    /**
+     * Releases the native memory of the idle matrices
+     */
+    public synchronized void close() {
+        for (Mat mat : idle) {
+            mat.release();
+        }
+        idle.clear();
+    }
+
+    /**
+     * Returns the number of idle matrices
+     */
+    public synchronized int idleMats() {
+        return idle.size();
+    }
+
+    /**
+     * Returns the native bytes of the tracked matrices including the idle ones
+     */
+    public synchronized long liveBytes() {
+        long bytes = 0;
+        for (Mat mat : live) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        for (Mat mat : idle) {
+            bytes += mat.total() * mat.elemSize();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of tracked matrices including the idle ones
+     */
+    public synchronized int liveMats() {
+        return live.size() + idle.size();
+    }
+
+    /**
+     * Releases a matrix owned by the pool.
+     * The matrix is kept idle for reuse or its native memory is released if the pool is full.
+     * The null, foreign and already released matrices are ignored.
+     *
+     * @param mat the matrix
+     */
+    public synchronized void release(Mat mat) {
+        if (mat == null) {
+            logger.atDebug().log("Null matrix not released");
+            return;
+        }
+        if (!live.remove(mat)) {
+            logger.atDebug().log("Matrix not owned by the pool not released");
+            return;
+        }
+        if (idle.size() < maxIdle) {
+            idle.push(mat);
+        } else {
+            mat.release();
+        }
+    }
+
+    /**
+     * Returns a scope releasing the registered matrices at close
+     */
+    public Scope scope() {
+        return new Scope();
+    }
+
+    /**
+     * Tracks a matrix created outside the pool and returns it.
+     * The pool takes the ownership of the matrix, so the creator must not reuse it after its release.
+     *
+     * @param mat the matrix
+     */
+    public synchronized Mat track(Mat mat) {
+        requireNonNull(mat);
+        // An idle matrix is owned again as if acquired
+        idle.removeIf(m -> m == mat);
+        live.add(mat);
+        return mat;
+    }
+
+    /**
+     * Scope of temporary matrices released to the pool at close.
+     * <pre>
+     * try (MatPool.Scope scope = pool.scope()) {
+     *     Mat gray = scope.acquire();
+     *     ...
+     *     return scope.keep(result);
+     * }
+     * </pre>
+     */
+    public final class Scope implements AutoCloseable {
+        private final List<Mat> mats;
+
+        /**
+         * Creates the scope
+         */
+        private Scope() {
+            this.mats = new ArrayList<>();
+        }
+
+        /**
+         * Returns a matrix of the pool released at the scope close
+         */
+        public Mat acquire() {
+            return add(MatPool.this.acquire());
+        }
+
+        /**
+         * Registers a matrix to be released at the scope close and returns it
+         *
+         * @param mat the matrix
+         */
+        public Mat add(Mat mat) {
+            track(mat);
+            mats.add(mat);
+            return mat;
+        }
+
+        @Override
+        public void close() {
+            for (Mat mat : mats) {
+                release(mat);
+            }
+            mats.clear();
+        }
+
+        /**
+         * Removes a matrix from the scope, so it survives the close, and returns it
+         *
+         * @param mat the matrix
+         */
+        public Mat keep(Mat mat) {
+            mats.removeIf(m -> m == mat);
+            return mat;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+/**
+ * Playback clock mapping the frame timestamps of a video to the wall clock.
+ * <p>
+ * The clock starts at the first frame and the frame with timestamp t is due at start + t - t0.
+ * The sources without valid timestamps (e.g. live cameras) are timed by the frame rate.
+ * The clock can be resynchronized when the playback falls behind (see {@link #resync}),
+ * so the stalls slow down the playback instead of causing bursts of frames.
+ * </p>
+ */
+public final class PlaybackClock {
+    /**
+     * The frame rate used when the source does not report it
+     */
+    public static final double DEFAULT_FPS = 30;
+
+    /**
+     * Returns the clock of a frame rate
+     *
+     * @param fps the frame rate or non-positive value if unknown
+     */
+    public static PlaybackClock create(double fps) {
+        return new PlaybackClock(Math.round(1e9 / (fps > 0 ? fps : DEFAULT_FPS)));
+    }
+
+    private final long framePeriod;
+    private long origin;
+    private long originTimestamp;
+    private long lastTimestamp;
+    private boolean started;
+    private boolean timestamped;
+
+    /**
+     * Creates the clock
+     *
+     * @param framePeriod the frame period (ns)
+     */
+    private PlaybackClock(long framePeriod) {
+        this.framePeriod = framePeriod;
+    }
+
+    /**
+     * Returns the wall clock time (System.nanoTime) when a frame is due.
+     * The first frame starts the clock.
+     *
+     * @param timestamp the frame timestamp (ns)
+     */
+    public synchronized long due(long timestamp) {
+        if (!started) {
+            started = true;
+            origin = System.nanoTime();
+            originTimestamp = timestamp;
+        }
+        return origin + timestamp - originTimestamp;
+    }
+
+    /**
+     * Returns the frame period (ns)
+     */
+    public long framePeriod() {
+        return framePeriod;
+    }
+
+    /**
+     * Returns the timestamp of the next frame.
+     * The source timestamps not increasing (e.g. not available) are replaced by the last timestamp plus the frame period.
+     *
+     * @param sourceMillis the timestamp reported by the source (ms)
+     */
+    public synchronized long next(double sourceMillis) {
+        long timestamp = Math.round(sourceMillis * 1e6);
+        if (timestamped && timestamp <= lastTimestamp) {
+            timestamp = lastTimestamp + framePeriod;
+        }
+        timestamped = true;
+        lastTimestamp = timestamp;
+        return timestamp;
+    }
+
+    /**
+     * Restarts the clock so that a frame is due now
+     *
+     * @param timestamp the frame timestamp (ns)
+     */
+    public synchronized void resync(long timestamp) {
+        started = true;
+        origin = System.nanoTime();
+        originTimestamp = timestamp;
+    }
+}
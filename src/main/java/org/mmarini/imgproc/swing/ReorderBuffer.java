@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Buffer reassembling in sequence order the elements completed out of order.
+ * <p>
+ * Each sequence number from 0 must be put exactly once,
+ * {@link #take()} waits for the next sequence number even if later ones are ready.
+ * </p>
+ *
+ * @param <T> the element type
+ */
+public final class ReorderBuffer<T> {
+    private final Map<Long, T> pending;
+    private long next;
+
+    /**
+     * Creates the buffer
+     */
+    public ReorderBuffer() {
+        this.pending = new HashMap<>();
+    }
+
+    /**
+     * Removes and returns the pending elements
+     */
+    public synchronized List<T> drain() {
+        List<T> result = new ArrayList<>(pending.values());
+        pending.clear();
+        return result;
+    }
+
+    /**
+     * Returns the number of elements waiting for an earlier sequence number
+     */
+    public synchronized int pendingSize() {
+        return pending.size();
+    }
+
+    /**
+     * Puts a completed element
+     *
+     * @param sequence the sequence number
+     * @param element  the element
+     */
+    public synchronized void put(long sequence, T element) {
+        if (sequence < next || pending.putIfAbsent(sequence, element) != null) {
+            throw new IllegalArgumentException("Duplicated sequence number " + sequence);
+        }
+        if (sequence == next) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Returns the element of the next sequence number waiting for it
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized T take() throws InterruptedException {
+        T element;
+        while ((element = pending.remove(next)) == null) {
+            wait();
+        }
+        next++;
+        return element;
+    }
+}
@@ -31,6 +31,7 @@ package org.mmarini.imgproc.swing;
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
 import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,15 +39,45 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.UnaryOperator;
 
 /**
  * Swing video box
+ * <p>
+ * The frames are decoded, processed and converted to images by pipeline stages running in their own threads,
+ * so a slow frame processor does not stall the decoding.
+ * The stages are connected by bounded queues with a backpressure policy (see {@link DropPolicy}).
+ * The decoder is paced by a clock driven by the frame rate and timestamps of the source (see {@link PlaybackClock}).
+ * The renderer presents the frames at their due time delayed by the expected pipeline latency
+ * (a frame period for each worker), and the frames presented more than a frame period after that deadline
+ * are counted as late.
+ * The frame matrices are taken from a pool and released after the rendering or the drop (see {@link MatPool}),
+ * so the native memory stays flat during the playback.
+ * The new matrices returned by the frame processor are tracked by the pool and released after the rendering too,
+ * so a processor allocating its output for each frame does not leak native memory until the GC.
+ * The processors caching their output matrix must be set with {@link #setFrameProcessor(UnaryOperator, boolean)},
+ * so their output stays owned by the processor and is not reused by the decoder.
+ * With more than one worker the processing stage hands the consecutive frames to a worker pool
+ * and the results are reassembled in presentation order by a reorder buffer (see {@link ReorderBuffer}),
+ * so the frame processors slower than the frame period can keep up with the video
+ * at the cost of the latency reported by {@link #getStats()}. The frame processor must then be thread safe.
+ * </p>
  */
 public class VideoViewer extends JComponent {
+    /**
+     * The default depth of the queues between the stages
+     */
+    public static final int DEFAULT_QUEUE_DEPTH = 2;
+    private static final long TERMINATION_TIMEOUT = 1000;
     private static final Logger logger = LoggerFactory.getLogger(VideoViewer.class);
 
     /*
@@ -56,29 +87,21 @@ public class VideoViewer extends JComponent {
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
     }
 
-    private static BufferedImage matToBufferedImage(Mat original) {
-        // init
-        BufferedImage image;
-        int width = original.width();
-        int height = original.height();
-        int channels = original.channels();
-        byte[] sourcePixels = new byte[width * height * channels];
-        original.get(0, 0, sourcePixels);
-
-        if (original.channels() > 1) {
-            image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-        } else {
-            image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        }
-        final byte[] targetPixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
-        System.arraycopy(sourcePixels, 0, targetPixels, 0, sourcePixels.length);
-
-        return image;
-    }
-
     private final VideoCapture capture;
-    private BufferedImage image;
-    private UnaryOperator<Mat> frameProcessor;
+    private final int queueDepth;
+    private final DropPolicy dropPolicy;
+    private final int workers;
+    private final List<Thread> stages;
+    private final AtomicLong droppedFrames;
+    private final AtomicLong lateFrames;
+    private final ImagePool imagePool;
+    private final MatPool matPool;
+    private final List<BlockingQueue<Frame>> queues;
+    private final FrameStats stats;
+    private ExecutorService workerPool;
+    private ReorderBuffer<Frame> reorderBuffer;
+    private volatile BufferedImage image;
+    private volatile FrameProcessor frameProcessor;
     private boolean layout;
 
     /**
@@ -92,25 +115,219 @@ public class VideoViewer extends JComponent {
      * @param frameProcessor the frame processor
      */
     public VideoViewer(UnaryOperator<Mat> frameProcessor) {
-        this.frameProcessor = frameProcessor;
+        this(frameProcessor, DEFAULT_QUEUE_DEPTH, DropPolicy.BLOCK);
+    }
+
+    /**
+     * @param frameProcessor the frame processor
+     * @param queueDepth     the depth of the queues between the stages
+     * @param dropPolicy     the backpressure policy of the queues
+     */
+    public VideoViewer(UnaryOperator<Mat> frameProcessor, int queueDepth, DropPolicy dropPolicy) {
+        this(frameProcessor, queueDepth, dropPolicy, 1);
+    }
+
+    /**
+     * @param frameProcessor the frame processor (thread safe if more than one worker)
+     * @param queueDepth     the depth of the queues between the stages
+     * @param dropPolicy     the backpressure policy of the queues
+     * @param workers        the number of frames processed in parallel
+     */
+    public VideoViewer(UnaryOperator<Mat> frameProcessor, int queueDepth, DropPolicy dropPolicy, int workers) {
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("Queue depth must be positive");
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of workers must be positive");
+        }
+        this.frameProcessor = new FrameProcessor(frameProcessor, false);
+        this.queueDepth = queueDepth;
+        this.dropPolicy = dropPolicy;
+        this.workers = workers;
+        this.stages = new ArrayList<>();
+        this.droppedFrames = new AtomicLong();
+        this.lateFrames = new AtomicLong();
+        this.imagePool = new ImagePool();
+        this.matPool = new MatPool();
+        this.queues = new ArrayList<>();
+        this.stats = new FrameStats();
         capture = new VideoCapture();
         setBackground(Color.BLACK);
     }
 
+    /**
+     * Stops the pipeline stages, waits for the frame workers and releases the capture and the queued frames
+     */
+    public void close() {
+        synchronized (stages) {
+            stages.forEach(Thread::interrupt);
+            for (Thread stage : stages) {
+                try {
+                    stage.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            stages.clear();
+            if (workerPool != null) {
+                // The workers must complete before draining the reorder buffer and closing the matrix pool
+                for (Runnable task : workerPool.shutdownNow()) {
+                    if (task instanceof FrameTask frameTask) {
+                        matPool.release(frameTask.frame.mat());
+                    }
+                }
+                try {
+                    if (!workerPool.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                        logger.atWarn().log("Frame workers still running after {} ms", TERMINATION_TIMEOUT);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                workerPool = null;
+            }
+            for (BlockingQueue<Frame> queue : queues) {
+                for (Frame frame; (frame = queue.poll()) != null; ) {
+                    matPool.release(frame.mat());
+                }
+            }
+            queues.clear();
+            if (reorderBuffer != null) {
+                for (Frame frame : reorderBuffer.drain()) {
+                    matPool.release(frame.mat());
+                }
+                reorderBuffer = null;
+            }
+        }
+        capture.release();
+        matPool.close();
+        logger.atInfo().log("Closed video with {} dropped and {} late frames, {}", droppedFrames.get(), lateFrames.get(), stats);
+    }
+
+    /**
+     * Decodes the frames at the video frame rate.
+     * With the blocking policy the clock is resynchronized when the decoder falls behind,
+     * so the stalls slow down the playback instead of causing bursts of frames.
+     *
+     * @param clock the playback clock
+     * @param out   the queue of decoded frames
+     */
+    private void decode(PlaybackClock clock, BlockingQueue<Frame> out) throws InterruptedException {
+        // The drop policies do not block on the queue, so the interruption must be checked explicitly
+        while (!Thread.currentThread().isInterrupted() && capture.isOpened()) {
+            Mat mat = matPool.acquire();
+            if (!capture.read(mat)) {
+                matPool.release(mat);
+                logger.atInfo().log("End of video");
+                return;
+            }
+            if (mat.empty()) {
+                matPool.release(mat);
+                continue;
+            }
+            long timestamp = clock.next(capture.get(Videoio.CAP_PROP_POS_MSEC));
+            long wait = clock.due(timestamp) - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } else if (dropPolicy == DropPolicy.BLOCK && -wait > clock.framePeriod()) {
+                clock.resync(timestamp);
+            }
+            enqueue(out, new Frame(mat, timestamp, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Hands the decoded frames to the worker pool.
+     * At most one frame for each worker is in flight between the queue of decoded frames and the reorder buffer.
+     *
+     * @param in       the queue of decoded frames
+     * @param pool     the worker pool
+     * @param inFlight the permits of frames in flight
+     * @param reorder  the reorder buffer
+     */
+    private void dispatch(BlockingQueue<Frame> in, ExecutorService pool, Semaphore inFlight, ReorderBuffer<Frame> reorder) throws InterruptedException {
+        for (long sequence = 0; ; sequence++) {
+            inFlight.acquire();
+            Frame frame = in.take();
+            pool.execute(new FrameTask(frame, sequence, reorder));
+        }
+    }
+
+    /**
+     * Puts a frame in a queue applying the drop policy and releases the dropped frame
+     *
+     * @param queue the queue
+     * @param frame the frame
+     */
+    private void enqueue(BlockingQueue<Frame> queue, Frame frame) throws InterruptedException {
+        Frame dropped = dropPolicy.put(queue, frame);
+        if (dropped != null) {
+            matPool.release(dropped.mat());
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of frames dropped by the queues
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
     /**
      * Returns the frame processor
      */
     public UnaryOperator<Mat> getFrameProcessor() {
-        return frameProcessor;
+        return frameProcessor.operator();
     }
 
     /**
-     * Sets the frame processor
+     * Sets the frame processor allocating its output matrices.
+     * The output matrices are tracked by the pool and released after the rendering.
      *
      * @param frameProcessor the frame processor
      */
     public void setFrameProcessor(UnaryOperator<Mat> frameProcessor) {
-        this.frameProcessor = frameProcessor;
+        setFrameProcessor(frameProcessor, false);
+    }
+
+    /**
+     * Sets the frame processor
+     *
+     * @param frameProcessor the frame processor
+     * @param cachedOutput   true if the processor owns and reuses its output matrices (they are not released by the viewer)
+     */
+    public void setFrameProcessor(UnaryOperator<Mat> frameProcessor, boolean cachedOutput) {
+        // The processor and its flag are replaced together, so the workers never see a mixed pair
+        this.frameProcessor = new FrameProcessor(frameProcessor, cachedOutput);
+    }
+
+    /**
+     * Returns true if the frame processor owns its output matrices
+     */
+    public boolean isCachedOutput() {
+        return frameProcessor.cachedOutput();
+    }
+
+    /**
+     * Returns the pool of the frame matrices (e.g. to watch the native memory gauges)
+     */
+    public MatPool getMatPool() {
+        return matPool;
+    }
+
+    /**
+     * Returns the latency and throughput statistics of the rendered frames
+     */
+    public FrameStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Returns the number of frames presented more than a frame period after their presentation deadline
+     */
+    public long getLateFrames() {
+        return lateFrames.get();
     }
 
     @Override
@@ -121,53 +338,256 @@ public class VideoViewer extends JComponent {
     }
 
     /**
+     * Opens the file
+     *
+     * @param file the video file or url
+     */
+    public void open(String file) {
+        capture.open(file);
+        PlaybackClock clock = PlaybackClock.create(capture.get(Videoio.CAP_PROP_FPS));
+        BlockingQueue<Frame> decoded = new ArrayBlockingQueue<>(queueDepth);
+        BlockingQueue<Frame> processed = new ArrayBlockingQueue<>(queueDepth);
+        synchronized (stages) {
+            queues.add(decoded);
+            queues.add(processed);
+        }
+        startStage("video-decoder", () -> decode(clock, decoded));
+        if (workers > 1) {
+            ExecutorService pool = Executors.newFixedThreadPool(workers, task -> {
+                Thread thread = new Thread(task, "video-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ReorderBuffer<Frame> reorder = new ReorderBuffer<>();
+            synchronized (stages) {
+                workerPool = pool;
+                reorderBuffer = reorder;
+            }
+            Semaphore inFlight = new Semaphore(workers);
+            startStage("video-dispatcher", () -> dispatch(decoded, pool, inFlight, reorder));
+            startStage("video-sequencer", () -> sequence(reorder, inFlight, processed));
+        } else {
+            startStage("video-processor", () -> process(decoded, processed));
+        }
+        long latency = workers * clock.framePeriod();
+        startStage("video-renderer", () -> render(clock, latency, processed));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        g.fillRect(0, 0, getWidth(), getHeight());
+        Image image = this.image;
+        if (image != null) {
+            // The image may be reused by the renderer
+            synchronized (image) {
+                g.drawImage(image, 0, 0, this);
+            }
+        }
+    }
+
+    /**
+     * Processes the decoded frames
      *
+     * @param in  the queue of decoded frames
+     * @param out the queue of processed frames
      */
-    private void grabFrame() {
-        // init everything
-        Mat frame = new Mat();
+    private void process(BlockingQueue<Frame> in, BlockingQueue<Frame> out) throws InterruptedException {
+        for (; ; ) {
+            enqueue(out, process(in.take()));
+        }
+    }
 
-        // check if the capture is open
-        if (capture.isOpened()) {
+    /**
+     * Returns the processed frame.
+     * The frames failing the processing or processed to null are passed unprocessed.
+     * The replaced source matrices are released and the matrices returned by the processor are tracked by the pool,
+     * unless the processor caches its output.
+     *
+     * @param frame the decoded frame
+     */
+    private Frame process(Frame frame) {
+        FrameProcessor processor = frameProcessor;
+        if (processor.operator() != null) {
             try {
-                // read the current frame
-                this.capture.read(frame);
-
-                // if the frame is not empty, process it
-                if (!frame.empty() && frameProcessor != null) {
-                    frame = frameProcessor.apply(frame);
-                    if (!layout) {
-                        layout = true;
-                        doLayout();
+                Mat result = processor.operator().apply(frame.mat());
+                if (result == null) {
+                    logger.atWarn().log("Null frame from the frame processor");
+                } else if (result != frame.mat()) {
+                    matPool.release(frame.mat());
+                    if (!processor.cachedOutput()) {
+                        matPool.track(result);
                     }
+                    return new Frame(result, frame.timestamp(), frame.decodedTime());
                 }
             } catch (Exception e) {
                 // log the error
                 logger.atError().setCause(e).log("Exception during the image elaboration");
             }
         }
-        this.image = matToBufferedImage(frame);
-        repaint();
+        return frame;
     }
 
     /**
-     * Opens the file
+     * Converts the processed frames to images and repaints the component.
+     * The replaced images are returned to the pool and the frame matrices are released even if the rendering fails.
+     * The frames are presented at their due time plus the expected pipeline latency,
+     * so the lateness does not include the latency of the processing stage.
      *
-     * @param file the video file or url
+     * @param clock   the playback clock
+     * @param latency the expected pipeline latency (ns)
+     * @param in      the queue of processed frames
      */
-    public void open(String file) {
-        capture.open(file);
-        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
-        timer.scheduleAtFixedRate(this::grabFrame, 0, 33, TimeUnit.MILLISECONDS);
+    private void render(PlaybackClock clock, long latency, BlockingQueue<Frame> in) throws InterruptedException {
+        for (; ; ) {
+            Frame frame = in.take();
+            try {
+                long wait = clock.due(frame.timestamp()) + latency - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } else if (-wait > clock.framePeriod()) {
+                    lateFrames.incrementAndGet();
+                }
+                BufferedImage previous = this.image;
+                this.image = toImage(frame.mat());
+                if (previous != null) {
+                    imagePool.release(previous);
+                }
+                stats.add(frame.decodedTime());
+                if (!layout) {
+                    layout = true;
+                    SwingUtilities.invokeLater(this::revalidate);
+                }
+                repaint();
+            } catch (RuntimeException e) {
+                // The frames failing the rendering are skipped
+                logger.atError().setCause(e).log("Exception during the frame rendering");
+            } finally {
+                matPool.release(frame.mat());
+            }
+        }
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        g.setColor(getBackground());
-        g.fillRect(0, 0, getWidth(), getHeight());
-        Image image = this.image;
-        if (image != null) {
-            g.drawImage(image, 0, 0, this);
+    /**
+     * Passes the frames processed by the workers in presentation order
+     *
+     * @param reorder  the reorder buffer
+     * @param inFlight the permits of frames in flight
+     * @param out      the queue of processed frames
+     */
+    private void sequence(ReorderBuffer<Frame> reorder, Semaphore inFlight, BlockingQueue<Frame> out) throws InterruptedException {
+        for (; ; ) {
+            Frame frame = reorder.take();
+            inFlight.release();
+            enqueue(out, frame);
+        }
+    }
+
+    /**
+     * Starts a pipeline stage in a daemon thread
+     *
+     * @param name  the thread name
+     * @param stage the stage loop
+     */
+    private void startStage(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                logger.atDebug().log("{} stopped", name);
+            } catch (Throwable e) {
+                logger.atError().setCause(e).log("Error in {}", name);
+            }
+        }, name);
+        thread.setDaemon(true);
+        synchronized (stages) {
+            stages.add(thread);
         }
+        thread.start();
+    }
+
+    /**
+     * Returns the pooled image with the pixels of a frame.
+     * The pixels are read directly in the data buffer of the image without intermediate copies.
+     *
+     * @param mat the 8-bit gray or bgr frame
+     */
+    private BufferedImage toImage(Mat mat) {
+        int channels = mat.channels();
+        if (channels != 1 && channels != 3) {
+            throw new IllegalArgumentException("Frame must have 1 or 3 channels: " + channels);
+        }
+        BufferedImage image = imagePool.acquire(mat.width(), mat.height(),
+                channels == 3 ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_BYTE_GRAY);
+        byte[] data = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        synchronized (image) {
+            mat.get(0, 0, data);
+        }
+        return image;
+    }
+
+    /**
+     * Decoded frame
+     *
+     * @param mat         the frame image
+     * @param timestamp   the timestamp (ns)
+     * @param decodedTime the decoding time (System.nanoTime)
+     */
+    private record Frame(Mat mat, long timestamp, long decodedTime) {
+    }
+
+    /**
+     * Frame processor with the ownership of its output
+     *
+     * @param operator     the frame processor or null if the frames are not processed
+     * @param cachedOutput true if the processor owns and reuses its output matrices
+     */
+    private record FrameProcessor(UnaryOperator<Mat> operator, boolean cachedOutput) {
+    }
+
+    /**
+     * Processing task of a frame handed to the worker pool.
+     * The task is a class, so the frames of the tasks discarded at the close can be released.
+     */
+    private final class FrameTask implements Runnable {
+        private final Frame frame;
+        private final long sequence;
+        private final ReorderBuffer<Frame> reorder;
+
+        /**
+         * Creates the task
+         *
+         * @param frame    the decoded frame
+         * @param sequence the presentation sequence number
+         * @param reorder  the reorder buffer
+         */
+        private FrameTask(Frame frame, long sequence, ReorderBuffer<Frame> reorder) {
+            this.frame = frame;
+            this.sequence = sequence;
+            this.reorder = reorder;
+        }
+
+        @Override
+        public void run() {
+            Frame result = frame;
+            try {
+                result = process(frame);
+            } finally {
+                reorder.put(sequence, result);
+            }
+        }
+    }
+
+    /**
+     * Pipeline stage loop
+     */
+    @FunctionalInterface
+    private interface Stage {
+        /**
+         * Runs the stage until interrupted or completed
+         *
+         * @throws InterruptedException if interrupted
+         */
+        void run() throws InterruptedException;
     }
 }
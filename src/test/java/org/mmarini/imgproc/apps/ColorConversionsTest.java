@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class ColorConversionsTest {
+
+    @Test
+    void hsbToRgbTest() {
+        // Given ...
+        int n = 10000;
+        Random random = new Random(1234);
+        float[] hue = new float[n];
+        float[] saturation = new float[n];
+        float[] brightness = new float[n];
+        for (int i = 0; i < n; i++) {
+            hue[i] = random.nextFloat() * 4 - 2;
+            saturation[i] = random.nextFloat();
+            brightness[i] = random.nextFloat();
+        }
+        int[] rgb = new int[n + 1];
+
+        // When ...
+        ColorConversions.hsbToRgb(hue, saturation, brightness, 0, rgb, 1, n);
+
+        // Then ...
+        for (int i = 0; i < n; i++) {
+            assertThat(rgb[i + 1], equalTo(Color.HSBtoRGB(hue[i], saturation[i], brightness[i]) & 0xffffff));
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 63, 127, 128, 200, 254, 255})
+    void rgbToHsbTest(int red) {
+        // Given the colors with a red component
+        int n = 256 * 256;
+        int[] rgb = new int[n];
+        for (int i = 0; i < n; i++) {
+            rgb[i] = (red << 16) | i;
+        }
+        float[] hue = new float[n + 1];
+        float[] saturation = new float[n + 1];
+        float[] brightness = new float[n + 1];
+        int[] back = new int[n];
+
+        // When ...
+        ColorConversions.rgbToHsb(rgb, 0, hue, saturation, brightness, 1, n);
+        ColorConversions.hsbToRgb(hue, saturation, brightness, 1, back, 0, n);
+
+        // Then the components are the same of Color and the round trip is within 1 LSB
+        float[] hsb = new float[3];
+        for (int i = 0; i < n; i++) {
+            Color.RGBtoHSB(red, (i >> 8) & 0xff, i & 0xff, hsb);
+            assertThat(hue[i + 1], equalTo(hsb[0]));
+            assertThat(saturation[i + 1], equalTo(hsb[1]));
+            assertThat(brightness[i + 1], equalTo(hsb[2]));
+            for (int shift = 0; shift < 24; shift += 8) {
+                int error = Math.abs(((rgb[i] >> shift) & 0xff) - ((back[i] >> shift) & 0xff));
+                assertThat(error, lessThanOrEqualTo(1));
+            }
+        }
+    }
+
+    @Test
+    void scalarTest() {
+        // Given the sampled rgb cube
+        BufferedImage cube = ImageProcessorsTest.cube(BufferedImage.TYPE_INT_RGB);
+        int n = cube.getWidth() * cube.getHeight();
+        int[] rgb = cube.getRGB(0, 0, cube.getWidth(), cube.getHeight(), null, 0, cube.getWidth());
+        float[] hue = new float[n];
+        float[] saturation = new float[n];
+        float[] brightness = new float[n];
+        int[] back = new int[n];
+
+        // When converting without the Vector API and back with processed components
+        ColorConversions.rgbToHsbScalar(rgb, 0, hue, saturation, brightness, 0, n, 0);
+        float[] hsb = new float[3];
+        for (int i = 0; i < n; i++) {
+            Color.RGBtoHSB((rgb[i] >> 16) & 0xff, (rgb[i] >> 8) & 0xff, rgb[i] & 0xff, hsb);
+            assertThat(hue[i], equalTo(hsb[0]));
+            assertThat(saturation[i], equalTo(hsb[1]));
+            assertThat(brightness[i], equalTo(hsb[2]));
+            hue[i] += 0.3f;
+            saturation[i] *= 0.7f;
+        }
+        ColorConversions.hsbToRgbScalar(hue, saturation, brightness, 0, back, 0, n, 0);
+
+        // Then the results are the same of Color
+        for (int i = 0; i < n; i++) {
+            assertThat(back[i], equalTo(Color.HSBtoRGB(hue[i], saturation[i], brightness[i]) & 0xffffff));
+        }
+    }
+}
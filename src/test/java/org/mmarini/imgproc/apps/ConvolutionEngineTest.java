@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mmarini.imgproc.apps.ImageProcessors.Convolution;
+import org.mmarini.imgproc.apps.TiledExecutor.TileTask;
+
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConvolutionEngineTest {
+
+    /**
+     * Asserts the images have the same size and components within a tolerance
+     *
+     * @param actual    the actual image
+     * @param expected  the expected image
+     * @param tolerance the tolerance
+     */
+    static void assertImage(FloatImage actual, FloatImage expected, double tolerance) {
+        assertThat(actual.width(), equalTo(expected.width()));
+        assertThat(actual.height(), equalTo(expected.height()));
+        for (int c = 0; c < 3; c++) {
+            for (int y = 0; y < expected.height(); y++) {
+                for (int x = 0; x < expected.width(); x++) {
+                    assertThat((double) actual.plane(c)[actual.index(x, y)],
+                            closeTo(expected.plane(c)[expected.index(x, y)], tolerance));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the convolution computed by the definition, evaluating the color matrix of each tap
+     *
+     * @param in             the source image
+     * @param ww             the window width
+     * @param wh             the window height
+     * @param matrixSupplier the supplier of color matrix
+     */
+    static FloatImage direct(FloatImage in, int ww, int wh, Function<Convolution, float[][]> matrixSupplier) {
+        int ow = in.width() - ww + 1;
+        int oh = in.height() - wh + 1;
+        FloatImage result = FloatImage.create(ow, oh);
+        Convolution conv = new Convolution();
+        conv.width = in.width();
+        conv.height = in.height();
+        conv.ww = ww;
+        conv.wh = wh;
+        for (int ty = 0; ty < oh; ty++) {
+            for (int tx = 0; tx < ow; tx++) {
+                double[] acc = new double[3];
+                for (int dy = 0; dy < wh; dy++) {
+                    for (int dx = 0; dx < ww; dx++) {
+                        conv.target.setLocation(tx + ww / 2, ty + wh / 2);
+                        conv.source.setLocation(tx + dx, ty + dy);
+                        float[][] m = matrixSupplier.apply(conv);
+                        int k = in.index(tx + dx, ty + dy);
+                        for (int j = 0; j < 3; j++) {
+                            for (int i = 0; i < 3; i++) {
+                                acc[i] += in.plane(j)[k] * m[j][i];
+                            }
+                        }
+                    }
+                }
+                for (int i = 0; i < 3; i++) {
+                    result.plane(i)[result.index(tx, ty)] = (float) acc[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the kernel of a test case
+     *
+     * @param name the kernel name
+     */
+    static Function<Convolution, float[][]> kernel(String name) {
+        float[][] mix = {{0.5f, 0.2f, 0.1f}, {0.1f, 0.6f, 0}, {-0.1f, 0.1f, 0.7f}};
+        return switch (name) {
+            // Shift-invariant scalar (taps)
+            case "smooth" -> ImageProcessors.smooth(1f / 25);
+            // Shift-invariant matrix (taps)
+            case "gray" -> ImageProcessors.gray();
+            // Position dependent sparse scalar
+            case "sparseScalar" -> Kernel.scalar(false, true, conv ->
+                    (conv.source.x + conv.source.y) % 3 == 0 ? 0 : (conv.target.x + 1f) / (conv.source.y + 2f) / 10);
+            // Position dependent scalar
+            case "scalar" -> Kernel.scalar(false, false, conv ->
+                    (conv.target.x - conv.source.x + conv.target.y * 0.5f) / 20);
+            // Position dependent matrix
+            case "matrix" -> Kernel.matrix(false, false, conv -> {
+                float w = (conv.source.x - conv.target.y) * 0.01f;
+                float[][] m = new float[3][3];
+                for (int j = 0; j < 3; j++) {
+                    for (int i = 0; i < 3; i++) {
+                        m[j][i] = mix[j][i] * w;
+                    }
+                }
+                return m;
+            });
+            // Plain color matrix function
+            default -> conv -> conv.source.x == conv.target.x ? mix : ImageProcessors.zeros;
+        };
+    }
+
+    /**
+     * Returns the image with random components
+     *
+     * @param width  the width
+     * @param height the height
+     * @param seed   the random seed
+     */
+    static FloatImage random(int width, int height, long seed) {
+        Random random = new Random(seed);
+        FloatImage result = FloatImage.create(width, height);
+        for (int c = 0; c < 3; c++) {
+            float[] plane = result.plane(c);
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = random.nextFloat();
+            }
+        }
+        return result;
+    }
+
+    @Test
+    void bankSizeTest() {
+        // Given a kernel bank of a lower image and a bank with the region out of the image
+        FloatImage in = random(40, 30, 1);
+        LucriKernelBank lower = LucriKernelBank.create(40, 29, 5, 1, 0.2, 0.5, 0.4, 1, 8);
+        LucriKernelBank translated = LucriKernelBank.create(40, 31, 5, 1, 0.2, 0.5, 0.4, 1, 8).translate(0, 2);
+        FloatImage out = FloatImage.create(36, 26);
+
+        // When ...
+        // Then the engine rejects the banks
+        assertThrows(IllegalArgumentException.class, () -> ConvolutionEngine.create(in, out, 5, 5, lower));
+        assertThrows(IllegalArgumentException.class, () -> ConvolutionEngine.create(in, out, 5, 5, translated));
+        assertThrows(IllegalArgumentException.class, () -> ConvolutionEngine.create(in, out, 3, 3, translated.translate(0, -2)));
+    }
+
+    @Test
+    void bankTest() {
+        // Given a random image and a kernel bank
+        FloatImage in = random(40, 30, 1);
+        LucriKernelBank bank = LucriKernelBank.create(40, 30, 5, 1, 0.2, 0.5, 0.4, 1, 8);
+        FloatImage out = FloatImage.create(36, 26);
+
+        // When computing the convolution
+        ConvolutionEngine.create(in, out, 5, 5, bank).apply(0, 0, 36, 26);
+
+        // Then the result is the convolution of the bank taps
+        assertImage(out, direct(in, 5, 5, bank), 1e-4);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0, 0, 40, 30",
+            "0, 0, 21, 12",
+            "7, 0, 33, 14",
+            "3, 11, 20, 19",
+            "19, 16, 21, 14"
+    })
+    void bankRegionTest(int x, int y, int width, int height) {
+        // Given a random image and a kernel bank
+        FloatImage in = random(40, 30, 1);
+        LucriKernelBank bank = LucriKernelBank.create(40, 30, 5, 1, 0.2, 0.5, 0.4, 1, 8);
+        FloatImage expected = FloatImage.create(36, 26);
+        ConvolutionEngine.create(in, expected, 5, 5, bank).apply(0, 0, 36, 26);
+        FloatImage out = FloatImage.create(width - 4, height - 4);
+
+        // When computing the convolution of a region by the translated bank
+        ConvolutionEngine.create(in.view(x, y, width, height), out, 5, 5, bank.translate(x, y))
+                .apply(0, 0, width - 4, height - 4);
+
+        // Then the result is the region of the whole image convolution
+        assertImage(out, expected.view(x, y, width - 4, height - 4), 0);
+        // And the translated bank weights are the weights of the whole image bank
+        assertImage(direct(in.view(x, y, width, height), 5, 5, bank.translate(x, y)),
+                expected.view(x, y, width - 4, height - 4), 1e-4);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "smooth, 5, 5",
+            "gray, 3, 3",
+            "sparseScalar, 5, 3",
+            "scalar, 3, 5",
+            "matrix, 3, 3",
+            "function, 5, 5"
+    })
+    void createTest(String name, int ww, int wh) {
+        // Given a random image with size not multiple of the window and a kernel
+        FloatImage in = random(23, 17, 1234);
+        Function<Convolution, float[][]> kernel = kernel(name);
+        int ow = 23 - ww + 1;
+        int oh = 17 - wh + 1;
+        FloatImage out = FloatImage.create(ow, oh);
+
+        // When computing the convolution by tiles
+        TileTask tiles = ConvolutionEngine.create(in, out, ww, wh, kernel);
+        tiles.apply(0, 0, ow / 2, oh);
+        tiles.apply(ow / 2, 0, ow, oh / 2);
+        tiles.apply(ow / 2, oh / 2, ow, oh);
+
+        // Then the result is the convolution by definition
+        assertImage(out, direct(in, ww, wh, kernel(name)), 1e-4);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static java.lang.Math.exp;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.assertImage;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.direct;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.random;
+
+class FftConvolutionTest {
+
+    /**
+     * Returns the shift-invariant kernel of a test case
+     *
+     * @param name the kernel name
+     */
+    static Kernel kernel(String name) {
+        float[][] mix = {{0.5f, 0.2f, 0.1f}, {0.1f, 0.6f, 0}, {-0.1f, 0.1f, 0.7f}};
+        return switch (name) {
+            // Asymmetric scalar weights, so a flipped kernel would fail
+            case "scalar" -> Kernel.scalar(true, false, conv -> {
+                int dx = conv.source.x - conv.target.x;
+                int dy = conv.source.y - conv.target.y;
+                return (float) exp(-(dx * dx + dy * dy) / 8d) * (1 + dx * 0.1f) / 10;
+            });
+            // Color mix depending on the offset
+            default -> Kernel.matrix(true, false, conv -> {
+                float w = (conv.source.x - conv.target.x + 2 * (conv.source.y - conv.target.y)) * 0.01f;
+                float[][] m = new float[3][3];
+                for (int j = 0; j < 3; j++) {
+                    for (int i = 0; i < 3; i++) {
+                        m[j][i] = mix[j][i] * (1 + w);
+                    }
+                }
+                return m;
+            });
+        };
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "scalar, 9, 9, 61, 47, 32",
+            "scalar, 7, 5, 50, 50, 16",
+            "scalar, 17, 17, 70, 33, 64",
+            "matrix, 9, 7, 45, 52, 32",
+            "matrix, 3, 3, 20, 13, 256"
+    })
+    void convolutionTest(String name, int ww, int wh, int width, int height, int fftSize) {
+        // Given a random image with size not multiple of the FFT block and a shift-invariant kernel
+        FloatImage in = random(width, height, 4321);
+        Kernel kernel = kernel(name);
+
+        // When computing the convolution by FFT overlap-add
+        FloatImage result = FftConvolution.convolution(ww, wh, kernel, fftSize).apply(in);
+
+        // Then the result is the direct convolution
+        assertImage(result, direct(in, ww, wh, kernel), 1e-4);
+    }
+
+    @Test
+    void invalidTest() {
+        // Given ...
+        Kernel variant = Kernel.scalar(false, false, conv -> 1);
+        Kernel invariant = kernel("scalar");
+
+        // When ...
+        // Then the position dependent kernels and the invalid FFT sizes are rejected
+        assertThrows(IllegalArgumentException.class, () -> FftConvolution.convolution(5, 5, variant, 32));
+        assertThrows(IllegalArgumentException.class, () -> FftConvolution.convolution(5, 5, invariant, 48));
+        assertThrows(IllegalArgumentException.class, () -> FftConvolution.convolution(9, 9, invariant, 16));
+    }
+}
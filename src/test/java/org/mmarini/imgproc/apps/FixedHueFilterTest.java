@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.*;
+import java.util.function.UnaryOperator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class FixedHueFilterTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "0.5, 0.2, 0.4, 0.5",
+            "0, 0.1, 0.3, 0.2"
+    })
+    void applyTest(double h0, double dh1, double dh0, double b0) {
+        // Given the fixed-point and the float filters
+        FixedHueFilter fixed = FixedHueFilter.create(h0, dh1, dh0, b0);
+        UnaryOperator<float[]> filter = PixelProcessors.hueFilter(h0, dh1, dh0, b0);
+        float[] hsb = new float[3];
+
+        for (int rgb = 0; rgb < 1 << 24; rgb += 97) {
+            // When ...
+            int result = fixed.applyAsInt(rgb);
+
+            // Then the components differ at most by 1
+            Color.RGBtoHSB((rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff, hsb);
+            float[] hsb1 = filter.apply(hsb);
+            int expected = Color.HSBtoRGB(hsb1[0], hsb1[1], hsb1[2]);
+            for (int shift = 0; shift < 24; shift += 8) {
+                int error = Math.abs(((result >> shift) & 0xff) - ((expected >> shift) & 0xff));
+                assertThat(error, lessThanOrEqualTo(1));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.random;
+
+class FloatImageTest {
+
+    @Test
+    void createTest() {
+        // Given ...
+        // When creating an image
+        FloatImage image = FloatImage.create(7, 5);
+
+        // Then the planes are contiguous rows of the image width
+        assertThat(image.width(), equalTo(7));
+        assertThat(image.height(), equalTo(5));
+        assertThat(image.offset(), equalTo(0));
+        assertThat(image.stride(), equalTo(7));
+        assertThat(image.red().length, equalTo(35));
+        assertThat(image.index(3, 2), equalTo(17));
+    }
+
+    @Test
+    void geometryTest() {
+        // Given planes of 20 values
+        float[] plane = new float[20];
+
+        // When ...
+        // Then the geometries not fitting the planes are rejected
+        assertThrows(IllegalArgumentException.class, () -> new FloatImage(5, 4, 1, 5, plane, plane, plane));
+        assertThrows(IllegalArgumentException.class, () -> new FloatImage(5, 2, 0, 4, plane, plane, plane));
+        assertThrows(IllegalArgumentException.class, () -> new FloatImage(2, 2, -1, 5, plane, plane, plane));
+        assertThat(new FloatImage(3, 3, 5, 6, plane, plane, plane).index(2, 2), equalTo(19));
+    }
+
+    @Test
+    void nestedViewTest() {
+        // Given a view of a view of a random image
+        FloatImage image = random(20, 15, 2);
+        FloatImage view = image.view(3, 2, 14, 11).view(4, 5, 6, 4);
+
+        // When ...
+        // Then the nested view addresses the composed region of the planes
+        assertThat(view.offset(), equalTo(image.index(7, 7)));
+        assertThat(view.stride(), equalTo(20));
+        for (int c = 0; c < 3; c++) {
+            for (int y = 0; y < 4; y++) {
+                for (int x = 0; x < 6; x++) {
+                    assertThat(view.plane(c)[view.index(x, y)], equalTo(image.plane(c)[image.index(x + 7, y + 7)]));
+                }
+            }
+        }
+        // And the views out of bounds are rejected
+        assertThrows(IllegalArgumentException.class, () -> image.view(3, 2, 14, 11).view(4, 5, 11, 4));
+        assertThrows(IllegalArgumentException.class, () -> image.view(3, 2, 14, 11).view(0, 8, 6, 4));
+    }
+
+    @Test
+    void roundTripTest() {
+        // Given a buffered image with all the 8-bit values in each component
+        BufferedImage img = new BufferedImage(32, 24, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 24; y++) {
+            for (int x = 0; x < 32; x++) {
+                int v = (y * 32 + x) % 256;
+                img.setRGB(x, y, (v << 16) | ((255 - v) << 8) | ((v * 7) & 0xff));
+            }
+        }
+
+        // When converting to planar and back
+        FloatImage image = FloatImage.of(img);
+        BufferedImage result = image.toBufferedImage();
+
+        // Then the components are the 8-bit values and the colors are preserved
+        assertThat(image.red()[image.index(5, 1)], equalTo(37f));
+        assertThat(image.green()[image.index(5, 1)], equalTo(218f));
+        assertThat(image.blue()[image.index(5, 1)], equalTo(3f));
+        for (int y = 0; y < 24; y++) {
+            for (int x = 0; x < 32; x++) {
+                assertThat(result.getRGB(x, y), equalTo(img.getRGB(x, y)));
+            }
+        }
+    }
+
+    @Test
+    void viewTest() {
+        // Given a random image with values out of the 8-bit range
+        FloatImage image = random(12, 9, 1);
+        for (int c = 0; c < 3; c++) {
+            float[] plane = image.plane(c);
+            for (int i = 0; i < plane.length; i++) {
+                plane[i] = plane[i] * 400 - 50;
+            }
+        }
+
+        // When viewing a region
+        FloatImage view = image.view(2, 3, 7, 4);
+
+        // Then the view shares the planes
+        assertThat(view.red(), sameInstance(image.red()));
+        assertThat(view.width(), equalTo(7));
+        assertThat(view.height(), equalTo(4));
+        assertThat(view.offset(), equalTo(3 * 12 + 2));
+        assertThat(view.stride(), equalTo(12));
+        // And the writes through the view modify the image
+        view.green()[view.index(1, 1)] = 77;
+        assertThat(image.green()[image.index(3, 4)], equalTo(77f));
+        // And the buffered image of the view has the clipped region values
+        BufferedImage result = view.toBufferedImage();
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 7; x++) {
+                assertThat(result.getRGB(x, y) & 0xffffff, equalTo(image.rgb(x + 2, y + 3)));
+                assertThat(view.rgb(x, y), equalTo(image.rgb(x + 2, y + 3)));
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Random;
+import java.util.function.UnaryOperator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FoveationPyramidTest {
+    private static final int WIDTH = 128;
+    private static final int HEIGHT = 96;
+    private static final int SIZE = 21;
+
+    /**
+     * Returns the test pattern with components in the 0...255 range
+     *
+     * @param name the pattern name
+     */
+    static FloatImage pattern(String name) {
+        FloatImage result = FloatImage.create(WIDTH, HEIGHT);
+        Random random = new Random(1);
+        for (int c = 0; c < 3; c++) {
+            float[] plane = result.plane(c);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    plane[result.index(x, y)] = switch (name) {
+                        case "flat" -> 200;
+                        case "random" -> random.nextFloat() * 255;
+                        case "checker" -> ((x / 8 + y / 8) % 2) * 255f;
+                        default -> (float) (127.5 + 127.5 * Math.sin(x * 0.3 + c) * Math.cos(y * 0.2));
+                    };
+                }
+            }
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "flat, 1.5, 7",
+            "random, 1.5, 6",
+            "sine, 3.5, 17",
+            "checker, 3.5, 20"
+    })
+    void lucriViewTest(String name, double maxMean, double maxError) {
+        // Given a test pattern and the lucri parameters of the application
+        FloatImage image = pattern(name);
+
+        // When processing by the pyramid and by the exact kernel
+        FloatImage result = FoveationPyramid.lucriView(WIDTH, HEIGHT, 1, 1d / 20, 0.2, 0.4, 1).apply(image);
+        FloatImage expected = PlanarProcessors.convolution(SIZE, SIZE,
+                ImageProcessors.lucri(WIDTH, HEIGHT, 1, 1d / 20, 0.2, 0.4, 1)).apply(image);
+
+        // Then the result has the same geometry
+        assertThat(result.width(), equalTo(expected.width()));
+        assertThat(result.height(), equalTo(expected.height()));
+        // And the errors are bounded (in levels of the 0...255 range)
+        double max = 0;
+        double sum = 0;
+        for (int c = 0; c < 3; c++) {
+            for (int y = 0; y < expected.height(); y++) {
+                for (int x = 0; x < expected.width(); x++) {
+                    double error = Math.abs(result.plane(c)[result.index(x, y)] - expected.plane(c)[expected.index(x, y)]);
+                    max = Math.max(max, error);
+                    sum += error;
+                }
+            }
+        }
+        assertThat(max, lessThanOrEqualTo(maxError));
+        assertThat(sum / 3 / expected.width() / expected.height(), lessThanOrEqualTo(maxMean));
+    }
+
+    @Test
+    void sampleTest() {
+        // Given the pyramid of a flat image with a size not power of 2
+        FloatImage image = pattern("flat");
+        FoveationPyramid pyramid = FoveationPyramid.create(image.view(0, 0, 100, 75), 10);
+
+        // When sampling each level
+        // Then the levels reduce the image down to a single pixel and keep the flat value
+        assertThat(pyramid.numLevels(), equalTo(8));
+        float[] rgb = new float[3];
+        for (int level = 0; level < pyramid.numLevels(); level++) {
+            pyramid.sample(level, 99, 74, rgb);
+            for (int c = 0; c < 3; c++) {
+                assertThat((double) rgb[c], closeTo(200, 1e-3));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "129, 96",
+            "127, 96",
+            "128, 95",
+            "128, 97"
+    })
+    void sizeTest(int width, int height) {
+        // Given the lucri view for the test size and an image of a different size
+        UnaryOperator<FloatImage> processor = FoveationPyramid.lucriView(WIDTH, HEIGHT, 1, 1d / 20, 0.2, 0.4, 1);
+        FloatImage image = FloatImage.create(width, height);
+
+        // When processing the image
+        // Then the processor rejects it
+        assertThrows(IllegalArgumentException.class, () -> processor.apply(image));
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class ImageProcessorsTest {
+    /**
+     * The stride of the sampled rgb cube, so the levels 0, 5, ..., 255 are included
+     */
+    static final int CUBE_STRIDE = 5;
+    static final int CUBE_LEVELS = 255 / CUBE_STRIDE + 1;
+
+    /**
+     * Returns the image with the colors of the rgb cube sampled by {@link #CUBE_STRIDE}
+     *
+     * @param type the image type
+     */
+    static BufferedImage cube(int type) {
+        BufferedImage img = new BufferedImage(CUBE_LEVELS * CUBE_LEVELS, CUBE_LEVELS, type);
+        for (int r = 0; r < CUBE_LEVELS; r++) {
+            for (int g = 0; g < CUBE_LEVELS; g++) {
+                for (int b = 0; b < CUBE_LEVELS; b++) {
+                    img.setRGB(g * CUBE_LEVELS + b, r,
+                            (r * CUBE_STRIDE << 16) | (g * CUBE_STRIDE << 8) | (b * CUBE_STRIDE));
+                }
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Returns the pixel processor of a test case
+     *
+     * @param name the processor name
+     */
+    static UnaryOperator<float[]> pixelProcessor(String name) {
+        return switch (name) {
+            case "hue" -> hsb -> {
+                hsb[0] += 0.3f;
+                return hsb;
+            };
+            case "saturation" -> hsb -> {
+                hsb[1] *= 0.5f;
+                return hsb;
+            };
+            case "brightness" -> hsb -> {
+                hsb[2] = 1 - hsb[2];
+                return hsb;
+            };
+            case "filter" -> PixelProcessors.hueFilter(0.3, 0.05, 0.1, 0.2);
+            default -> hsb -> hsb;
+        };
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "identity, 1, false",
+            "hue, 1, false",
+            "saturation, 5, false",
+            "brightness, 1, true",
+            "filter, 5, false",
+            "filter, 1, true"
+    })
+    void hsbProcessorTest(String name, int type, boolean parallel) {
+        // Given the sampled rgb cube and a pixel processor
+        BufferedImage source = cube(type);
+        UnaryOperator<float[]> processor = pixelProcessor(name);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            // When processing the image by batched rows
+            BufferedImage result = parallel
+                    ? ImageProcessors.hsbProcessor(processor, TiledExecutor.create(pool, 37, 11)).apply(source)
+                    : ImageProcessors.hsbProcessor(processor).apply(source);
+
+            // Then each pixel is bit-identical to the per-pixel conversions of Color
+            float[] hsb = new float[3];
+            for (int y = 0; y < source.getHeight(); y++) {
+                for (int x = 0; x < source.getWidth(); x++) {
+                    int rgb = source.getRGB(x, y);
+                    Color.RGBtoHSB((rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff, hsb);
+                    float[] hsb1 = pixelProcessor(name).apply(hsb);
+                    int expected = Color.HSBtoRGB(hsb1[0], hsb1[1], hsb1[2]);
+                    assertThat(result.getRGB(x, y), equalTo(expected));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.assertImage;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.random;
+
+class IntegralImageTest {
+
+    /**
+     * Returns the mean of a component in the box of a pixel clipped to the image by brute force
+     *
+     * @param image     the image
+     * @param component the component
+     * @param x         the x coordinate of center
+     * @param y         the y coordinate of center
+     * @param radius    the box radius
+     */
+    static double boxMean(FloatImage image, int component, int x, int y, int radius) {
+        double sum = 0;
+        int n = 0;
+        for (int j = max(y - radius, 0); j <= min(y + radius, image.height() - 1); j++) {
+            for (int i = max(x - radius, 0); i <= min(x + radius, image.width() - 1); i++) {
+                sum += image.plane(component)[image.index(i, j)];
+                n++;
+            }
+        }
+        return sum / n;
+    }
+
+    /**
+     * Returns the variable box blur by brute force
+     *
+     * @param image  the image
+     * @param radius the box radius
+     */
+    static FloatImage boxBlur(FloatImage image, IntegralImage.Radius radius) {
+        FloatImage result = FloatImage.create(image.width(), image.height());
+        for (int y = 0; y < image.height(); y++) {
+            for (int x = 0; x < image.width(); x++) {
+                float r = max(radius.radius(x, y), 0);
+                int r0 = (int) r;
+                double t = r - r0;
+                for (int c = 0; c < 3; c++) {
+                    double m0 = boxMean(image, c, x, y, r0);
+                    double m1 = boxMean(image, c, x, y, r0 + 1);
+                    result.plane(c)[result.index(x, y)] = (float) (m0 + (m1 - m0) * t);
+                }
+            }
+        }
+        return result;
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0",
+            "1",
+            "2",
+            "5",
+            "40"
+    })
+    void boxBlurConstantRadiusTest(int radius) {
+        // Given a random image
+        FloatImage image = random(23, 17, 11);
+
+        // When blurring with a constant radius, including the boxes clipped at the borders
+        FloatImage result = IntegralImage.boxBlur((x, y) -> radius).apply(image);
+
+        // Then the result is the brute force box mean
+        assertImage(result, boxBlur(image, (x, y) -> radius), 1e-5);
+    }
+
+    @Test
+    void boxBlurVariableRadiusTest() {
+        // Given a random image and fractional radii growing from the center
+        FloatImage image = random(31, 20, 12);
+        IntegralImage.Radius radius = (x, y) -> (Math.abs(x - 15) + Math.abs(y - 10)) * 0.35f - 1;
+
+        // When blurring
+        FloatImage result = IntegralImage.boxBlur(radius).apply(image);
+
+        // Then the result interpolates the brute force box means of the enclosing integer radii
+        assertImage(result, boxBlur(image, radius), 1e-5);
+    }
+
+    @Test
+    void sumTest() {
+        // Given the summed-area table of a random image
+        FloatImage image = random(19, 13, 13);
+        IntegralImage sat = IntegralImage.create(image);
+
+        // When summing rectangles, including the ones on the borders
+        // Then the sums are the brute force sums
+        for (int y0 = 0; y0 <= 13; y0 += 2) {
+            for (int y1 = y0; y1 <= 13; y1 += 3) {
+                for (int x0 = 0; x0 <= 19; x0 += 3) {
+                    for (int x1 = x0; x1 <= 19; x1 += 2) {
+                        for (int c = 0; c < 3; c++) {
+                            double expected = 0;
+                            for (int y = y0; y < y1; y++) {
+                                for (int x = x0; x < x1; x++) {
+                                    expected += image.plane(c)[image.index(x, y)];
+                                }
+                            }
+                            assertThat(sat.sum(c, x0, y0, x1, y1), closeTo(expected, 1e-9));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void variableBoxBlurTest() {
+        // Given a random image
+        FloatImage image = random(25, 18, 14);
+        IntegralImage.Radius radius = (x, y) -> x * 0.2f;
+
+        // When blurring with 3 passes
+        FloatImage result = PlanarProcessors.variableBoxBlur(radius, 3).apply(image);
+
+        // Then the result is the brute force blur iterated
+        FloatImage expected = boxBlur(boxBlur(boxBlur(image, radius), radius), radius);
+        assertImage(result, expected, 1e-5);
+    }
+}
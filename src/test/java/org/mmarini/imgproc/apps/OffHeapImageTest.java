@@ -0,0 +1,184 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.assertImage;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.random;
+
+class OffHeapImageTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void closeTest() throws IOException {
+        // Given an off-heap image
+        OffHeapImage image = OffHeapImage.allocate(10, 8, 3);
+        image.write(0, 0, random(10, 8, 1));
+
+        // When closing twice
+        image.close();
+        image.close();
+
+        // Then the accesses after closing are rejected
+        assertThat(image.isClosed(), equalTo(true));
+        assertThrows(IllegalStateException.class, () -> image.read(0, 0, 2, 2));
+        assertThrows(IllegalStateException.class, () -> image.write(0, 0, random(2, 2, 2)));
+    }
+
+    @Test
+    void mapTest() throws IOException {
+        // Given a random image written to a mapped image
+        Path file = dir.resolve("image.bin");
+        FloatImage expected = random(11, 9, 3);
+        try (OffHeapImage image = OffHeapImage.map(file, 11, 9, 4)) {
+            image.write(0, 0, expected);
+        }
+
+        // When mapping again the file
+        FloatImage result;
+        try (OffHeapImage image = OffHeapImage.map(file, 11, 9, 2)) {
+            result = image.read(0, 0, 11, 9);
+        }
+
+        // Then the file has the 3 planes and the pixels are persisted
+        assertThat(Files.size(file), equalTo(11L * 9 * 3 * Float.BYTES));
+        assertImage(result, expected, 0);
+    }
+
+    @Test
+    void ofTest() throws IOException {
+        // Given a buffered image
+        BufferedImage img = random(20, 300, 4).toBufferedImage();
+
+        // When copying off-heap by bands
+        try (OffHeapImage image = OffHeapImage.of(img)) {
+            // Then the pixels are the image pixels
+            assertImage(image.read(0, 0, 20, 300), FloatImage.of(img), 0);
+        }
+    }
+
+    @Test
+    void processTest() throws IOException {
+        // Given a random image stored in chunks of 4 rows
+        FloatImage source = random(23, 19, 5);
+        try (OffHeapImage image = OffHeapImage.allocate(23, 19, 4);
+             OffHeapImage target = OffHeapImage.allocate(21, 15, 4)) {
+            image.write(0, 0, source);
+
+            // When processing by bands of 4 rows not aligned to the chunks
+            image.process(PlanarProcessors.convolution(3, 5, ImageProcessors.smooth(1f / 15)), 3, 5, 4, target);
+
+            // Then the result is the convolution of the whole image
+            assertImage(target.read(0, 0, 21, 15),
+                    PlanarProcessors.convolution(3, 5, ImageProcessors.smooth(1f / 15)).apply(source), 1e-5);
+            // And a target not matching the window is rejected
+            assertThrows(IllegalArgumentException.class, () ->
+                    image.process(PlanarProcessors.convolution(3, 3, ImageProcessors.smooth(1f / 9)), 3, 3, 4, target));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0, 0, 13, 10",
+            "2, 1, 5, 4",
+            "4, 2, 7, 6",
+            "0, 5, 13, 1",
+            "12, 9, 1, 1",
+            "3, 3, 0, 0"
+    })
+    void regionTest(int x, int y, int width, int height) throws IOException {
+        // Given an image stored in chunks of 3 rows
+        FloatImage source = random(13, 10, 6);
+        try (OffHeapImage image = OffHeapImage.allocate(13, 10, 3)) {
+            image.write(0, 0, source);
+
+            // When writing a region crossing the chunks
+            FloatImage region = random(width, height, 7);
+            image.write(x, y, region);
+
+            // Then the region is read back
+            assertImage(image.read(x, y, width, height), region, 0);
+            // And the pixels out of the region are unchanged
+            FloatImage result = image.read(0, 0, 13, 10);
+            for (int c = 0; c < 3; c++) {
+                for (int j = 0; j < 10; j++) {
+                    for (int i = 0; i < 13; i++) {
+                        float expected = i >= x && i < x + width && j >= y && j < y + height
+                                ? region.plane(c)[region.index(i - x, j - y)]
+                                : source.plane(c)[source.index(i, j)];
+                        assertThat(result.plane(c)[result.index(i, j)], equalTo(expected));
+                    }
+                }
+            }
+            // And the regions out of the image are rejected
+            assertThrows(IllegalArgumentException.class, () -> image.read(x, y, width + 14, height));
+        }
+    }
+
+    @Test
+    void tiledTest() throws IOException {
+        // Given a random image stored in chunks of 4 rows
+        FloatImage source = random(30, 22, 9);
+        try (OffHeapImage image = OffHeapImage.allocate(30, 22, 4)) {
+            image.write(0, 0, source);
+
+            // When computing the convolution by tiles pulled from the off-heap image
+            TiledImage tiled = TiledImage.of(image)
+                    .apply(5, 3, RegionProcessor.convolution(5, 3, ImageProcessors.smooth(1f / 15)), 7, 4);
+
+            // Then the result is the convolution of the whole image
+            assertImage(tiled.region(0, 0, 26, 20),
+                    PlanarProcessors.convolution(5, 3, ImageProcessors.smooth(1f / 15)).apply(source), 1e-5);
+        }
+    }
+
+    @Test
+    void viewTest() throws IOException {
+        // Given a view of a random image
+        FloatImage view = random(17, 12, 8).view(3, 2, 9, 7);
+        try (OffHeapImage image = OffHeapImage.allocate(9, 7, 2)) {
+            // When writing the view
+            image.write(0, 0, view);
+
+            // Then the stored pixels are the view pixels
+            assertImage(image.read(0, 0, 9, 7), view, 0);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.function.DoubleUnaryOperator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
+
+class PiecewiseLinearTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "0, 0.1, 0.4",
+            "0.5, 0.2, 0.4",
+            "0.9, 0.05, 0.5"
+    })
+    void composeTest(double h0, double x1, double x0) {
+        // Given the hysteresis of the hue difference
+        PiecewiseLinear f = PiecewiseLinear.diff(h0)
+                .andThen(PiecewiseLinear.hysteresis(x1, x0))
+                .andThen(PiecewiseLinear.map(-1, 1, 3, -5));
+        DoubleUnaryOperator expected = PixelProcessors.diff(h0)
+                .andThen(PixelProcessors.hysteresis(x1, x0))
+                .andThen(PixelProcessors.map(-1, 1, 3, -5));
+
+        // When ...
+        // Then the composed function has the values of the chain
+        for (int i = 0; i <= 10000; i++) {
+            double x = i * 1e-4;
+            assertThat(f.applyAsDouble(x), closeTo(expected.applyAsDouble(x), 1e-12));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0",
+            "0.134",
+            "0.495",
+            "0.5",
+            "0.652",
+            "0.7",
+            "0.9",
+            "1"
+    })
+    void diffTest(double x0) {
+        // Given the difference function and its closed form
+        PiecewiseLinear f = PiecewiseLinear.diff(x0);
+        DoubleUnaryOperator expected = PixelProcessors.diff(x0);
+
+        // When ...
+        // Then the values around the breakpoints are the values of the closed form
+        for (double t : new double[]{x0 - 0.5, x0 + 0.5}) {
+            for (double x = Math.nextDown(Math.nextDown(t)); x <= Math.nextUp(Math.nextUp(t)); x = Math.nextUp(x)) {
+                assertThat(f.applyAsDouble(x), closeTo(expected.applyAsDouble(x), 1e-15));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0.2, 0.2",
+            "0.3, 0.2"
+    })
+    void hysteresisStepTest(double x1, double x0) {
+        // Given the hysteresis without linear segments and its closed form
+        PiecewiseLinear f = PiecewiseLinear.hysteresis(x1, x0);
+        DoubleUnaryOperator expected = PixelProcessors.hysteresis(x1, x0);
+
+        // When ...
+        // Then the function is the step function of the closed form
+        assertThat(f.numSegments(), equalTo(4));
+        for (int i = -500; i <= 500; i++) {
+            double x = i * 1e-3;
+            assertThat(f.applyAsDouble(x), equalTo(expected.applyAsDouble(x)));
+        }
+        assertThat(f.applyAsDouble(-x0), equalTo(0d));
+        assertThat(f.applyAsDouble(Math.nextUp(-x0)), equalTo(-1d));
+        assertThat(f.applyAsDouble(Math.nextDown(x0)), equalTo(1d));
+        assertThat(f.applyAsDouble(x0), equalTo(0d));
+    }
+
+    @Test
+    void mergeTest() {
+        // Given the sign of the hysteresis, with 6 segments mapped to 2 values
+        PiecewiseLinear sign = PiecewiseLinear.hysteresis(0.1, 0.4)
+                .andThen(PiecewiseLinear.hysteresis(2, 3));
+        PiecewiseLinear constant = PiecewiseLinear.diff(0.2).andThen(PiecewiseLinear.constant(3));
+
+        // When ...
+        // Then the adjacent equal segments are merged
+        assertThat(sign.numSegments(), equalTo(3));
+        double[] breakpoints = sign.breakpoints();
+        assertThat(breakpoints[0], closeTo(-0.4, 1e-12));
+        assertThat(breakpoints[1], equalTo(0d));
+        assertThat(sign.applyAsDouble(-0.5), equalTo(1d));
+        assertThat(sign.applyAsDouble(-0.2), equalTo(-1d));
+        assertThat(sign.applyAsDouble(-0.05), equalTo(-1d));
+        assertThat(sign.applyAsDouble(0), equalTo(1d));
+        assertThat(sign.applyAsDouble(0.2), equalTo(1d));
+        assertThat(sign.applyAsDouble(0.5), equalTo(1d));
+        assertThat(constant.numSegments(), equalTo(1));
+        assertThat(constant.applyAsDouble(0.7), equalTo(3d));
+    }
+
+    @Test
+    void tabulateTest() {
+        // Given the hysteresis tabulated on 0 ... 1 with 1001 samples
+        PiecewiseLinear f = PiecewiseLinear.hysteresis(0.1, 0.4);
+        DoubleUnaryOperator table = f.tabulate(0, 1, 1001);
+
+        // When ...
+        // Then the table has the function values on the samples and interpolates the continuous function between them
+        for (int i = 0; i <= 1000; i++) {
+            double x = i * 1e-3;
+            assertThat(table.applyAsDouble(x), closeTo(f.applyAsDouble(x), 1e-12));
+        }
+        for (int i = 0; i < 1000; i++) {
+            double x = (i + 0.5) * 1e-3;
+            assertThat(table.applyAsDouble(x), closeTo(f.applyAsDouble(x), 1e-12));
+        }
+        // And the values out of the range are clamped
+        assertThat(table.applyAsDouble(-1), closeTo(f.applyAsDouble(0), 1e-12));
+        assertThat(table.applyAsDouble(2), closeTo(f.applyAsDouble(1), 1e-12));
+    }
+}
@@ -29,9 +29,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
 import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.equalTo;
 
 class PixelProcessorTest {
 
@@ -59,6 +61,11 @@ class PixelProcessorTest {
             "0.501, 1, -0.499",
             "0.75, 1, -0.25",
             "1, 1, 0",
+
+            "-0.36600000000000005, 0.134, -0.5",
+            "-0.005000000000000005, 0.495, -0.5",
+            "0.152, 0.652, -0.5",
+            "1.1520000000000001, 0.652, -0.5",
     })
     void diffTest(double x, double x0, double exp) {
         // Given ...
@@ -71,6 +78,37 @@ class PixelProcessorTest {
         assertThat(y, closeTo(exp, 1e-3));
     }
 
+    @ParameterizedTest
+    @CsvSource({
+            "0.5, 0.2, 0.4, 0.5",
+            "0.3, 0.05, 0.1, 0.2",
+            "0, 0.1, 0.3, 0",
+            "0.9, 0.2, 0.2, 1"
+    })
+    void hueFilterTest(double h0, double dh1, double dh0, double b0) {
+        // Given the fused hue filter and the chain of its functions
+        UnaryOperator<float[]> filter = PixelProcessors.hueFilter(h0, dh1, dh0, b0);
+        DoubleUnaryOperator diff = PixelProcessors.diff(h0);
+        DoubleUnaryOperator hyst = PixelProcessors.hysteresis(dh1, dh0);
+        DoubleUnaryOperator bright = PixelProcessors.map(0, 1, b0, 1);
+
+        // When ...
+        // Then the fused filter is bit-identical to the chain on a grid of hsb values
+        for (int i = 0; i <= 200; i++) {
+            for (int j = 0; j <= 20; j++) {
+                float h = i / 200f;
+                float s = j / 20f;
+                float b = 0.7f;
+                float[] result = filter.apply(new float[]{h, s, b});
+                double dh = diff.applyAsDouble(h);
+                double absSens = 1 - (1 - Math.abs(hyst.applyAsDouble(dh))) * s;
+                assertThat(result[0], equalTo(h - (float) (dh * (1 - absSens))));
+                assertThat(result[1], equalTo(s * (float) absSens));
+                assertThat(result[2], equalTo(b * (float) bright.applyAsDouble(absSens)));
+            }
+        }
+    }
+
     @ParameterizedTest
     @CsvSource({
             "-0.5, 0.1,0.4, 0",
@@ -84,6 +122,14 @@ class PixelProcessorTest {
             "0.3, 0.1,0.4, 0.333",
             "0.4, 0.1,0.4, 0",
             "0.5, 0.1,0.4, 0",
+
+            "-0.3, 0.2,0.2, 0",
+            "-0.2, 0.2,0.2, 0",
+            "-0.1, 0.2,0.2, -1",
+            "0, 0.2,0.2, 1",
+            "0.1, 0.2,0.2, 1",
+            "0.2, 0.2,0.2, 0",
+            "0.3, 0.2,0.2, 0",
     })
     void hysteresisTest(double x, double dx1, double dx0, double exp) {
         // Given ...
@@ -0,0 +1,228 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.UnaryOperator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.imgproc.apps.PixelProgram.*;
+
+class PixelProgramTest {
+
+    /**
+     * Returns the hue filter by the chain of the closed-form functions
+     *
+     * @param h0  the filtered hue
+     * @param dh1 the hue difference with full sensitivity
+     * @param dh0 the hue difference with zero sensitivity
+     * @param b0  the brightness of zero sensitivity
+     */
+    static UnaryOperator<float[]> hueFilterChain(double h0, double dh1, double dh0, double b0) {
+        DoubleUnaryOperator diff = PixelProcessors.diff(h0);
+        DoubleUnaryOperator hyst = PixelProcessors.hysteresis(dh1, dh0);
+        DoubleUnaryOperator bright = PixelProcessors.map(0, 1, b0, 1);
+        return hsb -> {
+            double dh = diff.applyAsDouble(hsb[0]);
+            double absSens = 1 - (1 - Math.abs(hyst.applyAsDouble(dh))) * hsb[1];
+            hsb[0] -= (float) (dh * (1 - absSens));
+            hsb[1] *= (float) absSens;
+            hsb[2] *= (float) bright.applyAsDouble(absSens);
+            return hsb;
+        };
+    }
+
+    /**
+     * Returns the random rows of hsb components out of the range too
+     *
+     * @param n    the number of pixels
+     * @param seed the random seed
+     */
+    static float[][] random(int n, long seed) {
+        Random random = new Random(seed);
+        float[][] result = new float[3][n];
+        for (int i = 0; i < n; i++) {
+            for (int c = 0; c < 3; c++) {
+                result[c][i] = random.nextFloat() * 1.6f - 0.3f;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the stages of the test chain
+     */
+    static PixelProgram[] stages() {
+        return new PixelProgram[]{
+                map(HUE, 2, 0.1),
+                map(HUE, 0.5, -0.3),
+                clamp(SATURATION, 0, 0.8),
+                clamp(SATURATION, 0.2, 1),
+                map(BRIGHTNESS, 3, -1),
+                clamp(BRIGHTNESS, 0, 1),
+                wrap(HUE),
+                PixelProgram.hueFilter(0.3, 0.05, 0.1, 0.2),
+                map(SATURATION, 0.5, 0.1)
+        };
+    }
+
+    @Test
+    void chainTest() {
+        // Given the stages of a chain and random rows
+        PixelProgram[] stages = stages();
+        float[][] compiled = random(1000, 1234);
+        float[][] interpreted = {compiled[0].clone(), compiled[1].clone(), compiled[2].clone()};
+        float[][] sequential = {compiled[0].clone(), compiled[1].clone(), compiled[2].clone()};
+
+        // When applying the fused chain in one pass and the stages in sequence
+        PixelProgram chain = chain(stages);
+        chain.compile().apply(compiled[0], compiled[1], compiled[2], 0, 1000);
+        chain.interpreter().apply(interpreted[0], interpreted[1], interpreted[2], 0, 1000);
+        for (PixelProgram stage : stages) {
+            stage.interpreter().apply(sequential[0], sequential[1], sequential[2], 0, 1000);
+        }
+
+        // Then the fused chain is bit-identical to the sequence of stages
+        for (int c = 0; c < 3; c++) {
+            for (int i = 0; i < 1000; i++) {
+                assertThat(compiled[c][i], equalTo(sequential[c][i]));
+                assertThat(interpreted[c][i], equalTo(sequential[c][i]));
+            }
+        }
+    }
+
+    @Test
+    void hsbProcessorTest() {
+        // Given the sampled rgb cube and the fused chain of stages
+        BufferedImage source = ImageProcessorsTest.cube(BufferedImage.TYPE_INT_RGB);
+        PixelProgram[] stages = stages();
+
+        // When processing the image in a single pass by the fused chain
+        BufferedImage result = ImageProcessors.hsbProcessor(chain(stages).compile()).apply(source);
+
+        // Then the pixels are the hsb components processed by the stages in sequence
+        List<UnaryOperator<float[]>> processors = Arrays.stream(stages)
+                .map(PixelProgram::pixelProcessor)
+                .toList();
+        float[] hsb = new float[3];
+        for (int y = 0; y < source.getHeight(); y++) {
+            for (int x = 0; x < source.getWidth(); x++) {
+                int rgb = source.getRGB(x, y);
+                Color.RGBtoHSB((rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff, hsb);
+                for (UnaryOperator<float[]> processor : processors) {
+                    processor.apply(hsb);
+                }
+                assertThat(result.getRGB(x, y), equalTo(Color.HSBtoRGB(hsb[0], hsb[1], hsb[2])));
+            }
+        }
+    }
+
+    @Test
+    void identityTest() {
+        // Given a chain of identities and of stages of single components
+        PixelProgram identity = chain(identity(), identity());
+        PixelProgram clamp = chain(clamp(SATURATION, 0, 1), identity());
+
+        // When ...
+        // Then the identity has no local values and the passed components are the inputs
+        assertThat(identity.locals(), empty());
+        assertThat(identity.outputs(), arrayContaining(Builder.HUE, Builder.SATURATION, Builder.BRIGHTNESS));
+        assertThat(clamp.outputs()[0], equalTo(Builder.HUE));
+        assertThat(clamp.outputs()[2], equalTo(Builder.BRIGHTNESS));
+        // And the invalid components are rejected
+        assertThrows(IllegalArgumentException.class, () -> map(3, 1, 0));
+        assertThrows(IllegalArgumentException.class, () -> clamp(-1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> wrap(3));
+    }
+
+    @Test
+    void pixelProcessorTest() {
+        // Given the pixel processor of the fused chain and random pixels
+        PixelProgram chain = chain(stages());
+        UnaryOperator<float[]> processor = chain.pixelProcessor();
+        float[][] rows = random(1000, 4321);
+        float[][] expected = {rows[0].clone(), rows[1].clone(), rows[2].clone()};
+        chain.interpreter().apply(expected[0], expected[1], expected[2], 0, 1000);
+
+        // When ...
+        // Then the compiled pixel processor changes the pixel in place as the interpreter
+        for (int i = 0; i < 1000; i++) {
+            float[] hsb = {rows[0][i], rows[1][i], rows[2][i]};
+            assertThat(processor.apply(hsb), sameInstance(hsb));
+            assertThat(hsb[0], equalTo(expected[0][i]));
+            assertThat(hsb[1], equalTo(expected[1][i]));
+            assertThat(hsb[2], equalTo(expected[2][i]));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0.5, 0.2, 0.4, 0.5",
+            "0, 0.1, 0.3, 0.2",
+            "0.9, 0.05, 0.5, 0.8"
+    })
+    void compileTest(double h0, double dh1, double dh0, double b0) throws ReflectiveOperationException {
+        // Given the hue filter program and random rows with the hue on the thresholds
+        PixelProgram program = PixelProgram.hueFilter(h0, dh1, dh0, b0);
+        UnaryOperator<float[]> filter = hueFilterChain(h0, dh1, dh0, b0);
+        int n = 10000;
+        Random random = new Random(1234);
+        float[][] compiled = new float[3][n + 1];
+        for (int i = 1; i <= n; i++) {
+            compiled[0][i] = i % 10 == 0 ? (float) (h0 + dh0) : random.nextFloat();
+            compiled[1][i] = random.nextFloat();
+            compiled[2][i] = random.nextFloat();
+        }
+        float[][] interpreted = {compiled[0].clone(), compiled[1].clone(), compiled[2].clone()};
+        float[][] source = {compiled[0].clone(), compiled[1].clone(), compiled[2].clone()};
+
+        // When ...
+        PixelCompiler.compile(program).apply(compiled[0], compiled[1], compiled[2], 1, n);
+        program.interpreter().apply(interpreted[0], interpreted[1], interpreted[2], 1, n);
+
+        // Then the compiled, interpreted and closed-form chain results are the same
+        for (int i = 1; i <= n; i++) {
+            float[] expected = filter.apply(new float[]{source[0][i], source[1][i], source[2][i]});
+            for (int c = 0; c < 3; c++) {
+                assertThat(compiled[c][i], equalTo(interpreted[c][i]));
+                assertThat(compiled[c][i], equalTo(expected[c]));
+            }
+        }
+        assertThat(compiled[0][0], equalTo(0f));
+    }
+}
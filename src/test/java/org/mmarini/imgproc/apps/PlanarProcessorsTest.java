@@ -0,0 +1,57 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.assertImage;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.direct;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.random;
+
+class PlanarProcessorsTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 1",
+            "3, 3",
+            "5, 2",
+            "1, 7",
+            "9, 9",
+            "23, 17"
+    })
+    void boxFilterTest(int ww, int wh) {
+        // Given a random image with size not multiple of the window
+        FloatImage in = random(23, 17, ww * 31L + wh);
+        float weight = 1f / ww / wh;
+
+        // When filtering with the sliding window sums
+        FloatImage result = PlanarProcessors.boxFilter(ww, wh, weight).apply(in);
+
+        // Then the result is the convolution of the constant kernel by definition
+        assertImage(result, direct(in, ww, wh, ImageProcessors.smooth(weight)), 1e-5);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RgbLutTest {
+
+    /**
+     * The parameters of a test processor
+     *
+     * @param scale the saturation and brightness scale
+     */
+    record Scale(float scale) {
+        UnaryOperator<float[]> pixelProcessor() {
+            return hsb -> {
+                hsb[1] *= scale;
+                hsb[2] *= scale;
+                return hsb;
+            };
+        }
+    }
+
+    /**
+     * Returns the processed color by the per-pixel conversions of Color
+     *
+     * @param pixelProcessor the pixel processor
+     * @param rgb            the packed color
+     * @param hsb            the scratch hsb buffer
+     */
+    static int process(UnaryOperator<float[]> pixelProcessor, int rgb, float[] hsb) {
+        Color.RGBtoHSB((rgb >> 16) & 0xff, (rgb >> 8) & 0xff, rgb & 0xff, hsb);
+        float[] hsb1 = pixelProcessor.apply(hsb);
+        return Color.HSBtoRGB(hsb1[0], hsb1[1], hsb1[2]) & 0xffffff;
+    }
+
+    @Test
+    void cachedTest() {
+        // Given the tables of a processor cached by its parameters
+        Scale parameters = new Scale(0.5f);
+        RgbLut lut2 = RgbLut.cached(parameters, 2, parameters.pixelProcessor());
+        RgbLut lut3 = RgbLut.cached(parameters, 3, parameters.pixelProcessor());
+
+        // When requesting the tables with equal parameters
+        // Then the cached tables are returned by parameters and lattice size
+        assertThat(RgbLut.cached(new Scale(0.5f), 2, parameters.pixelProcessor()), sameInstance(lut2));
+        assertThat(RgbLut.cached(new Scale(0.5f), 3, parameters.pixelProcessor()), sameInstance(lut3));
+        assertThat(lut3, not(sameInstance(lut2)));
+
+        // When requesting more tables than the cache size
+        for (int i = 1; i <= RgbLut.CACHE_SIZE; i++) {
+            Scale other = new Scale(i / 10f);
+            RgbLut.cached(other, 2, other.pixelProcessor());
+        }
+
+        // Then the least recently used table is compiled again
+        assertThat(RgbLut.cached(new Scale(0.5f), 2, parameters.pixelProcessor()), not(sameInstance(lut2)));
+        assertThrows(IllegalArgumentException.class, () -> RgbLut.cached(parameters, 1, parameters.pixelProcessor()));
+    }
+
+    @Test
+    void exactTest() {
+        // Given the exact table of the hue filter
+        UnaryOperator<float[]> filter = PixelProcessors.hueFilter(0.5, 0.2, 0.4, 0.5);
+        RgbLut lut = RgbLut.exact(filter);
+
+        // When looking up all the 2^24 colors
+        long mismatches = IntStream.range(0, 256).parallel().mapToLong(r -> {
+            float[] hsb = new float[3];
+            long count = 0;
+            for (int gb = 0; gb < 0x10000; gb++) {
+                int rgb = (r << 16) | gb;
+                if (lut.apply(rgb) != process(filter, rgb, hsb)) {
+                    count++;
+                }
+            }
+            return count;
+        }).sum();
+
+        // Then the colors are bit-identical to the per-pixel processor
+        assertThat(lut.isExact(), equalTo(true));
+        assertThat(mismatches, equalTo(0L));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "filter, 18, 0.5, 50",
+            "filter, 52, 0.15, 42",
+            "filter, 86, 0.12, 36",
+            "scale, 18, 0.2, 2",
+            "scale, 52, 0.2, 1",
+            "scale, 86, 0.15, 1"
+    })
+    void latticeTest(String name, int size, double maxMean, int maxError) {
+        // Given the lattice table of a processor
+        UnaryOperator<float[]> processor = "filter".equals(name)
+                ? PixelProcessors.hueFilter(0.5, 0.2, 0.4, 0.5)
+                : new Scale(0.7f).pixelProcessor();
+        RgbLut lut = RgbLut.lattice(processor, size);
+
+        // When looking up all the 2^24 colors
+        long[] sums = new long[256];
+        int[] maxs = new int[256];
+        IntStream.range(0, 256).parallel().forEach(r -> {
+            float[] hsb = new float[3];
+            for (int gb = 0; gb < 0x10000; gb++) {
+                int rgb = (r << 16) | gb;
+                int result = lut.apply(rgb);
+                int expected = process(processor, rgb, hsb);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int error = Math.abs(((result >> shift) & 0xff) - ((expected >> shift) & 0xff));
+                    sums[r] += error;
+                    maxs[r] = Math.max(maxs[r], error);
+                }
+            }
+        });
+
+        // Then the mean and the maximum component errors are bounded
+        double mean = (double) LongStream.of(sums).sum() / 3 / (1 << 24);
+        assertThat(lut.isExact(), equalTo(false));
+        assertThat(mean, lessThanOrEqualTo(maxMean));
+        assertThat(IntStream.of(maxs).max().orElseThrow(), lessThanOrEqualTo(maxError));
+    }
+
+    @Test
+    void parallelProcessorTest() {
+        // Given an image and a lattice table
+        BufferedImage source = ImageProcessorsTest.cube(BufferedImage.TYPE_INT_RGB);
+        RgbLut lut = RgbLut.lattice(PixelProcessors.hueFilter(0.3, 0.05, 0.1, 0.2), 18);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            // When processing the image by tiles in parallel
+            BufferedImage result = lut.processor(TiledExecutor.create(pool, 37, 11)).apply(source);
+
+            // Then the pixels are the pixels of the sequential processor
+            BufferedImage expected = lut.processor().apply(source);
+            for (int y = 0; y < source.getHeight(); y++) {
+                for (int x = 0; x < source.getWidth(); x++) {
+                    assertThat(result.getRGB(x, y), equalTo(expected.getRGB(x, y)));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void processorTest() {
+        // Given an image and the full 256 lattice of a processor, sampling every color
+        BufferedImage source = ImageProcessorsTest.cube(BufferedImage.TYPE_3BYTE_BGR);
+        UnaryOperator<float[]> filter = PixelProcessors.hueFilter(0.3, 0.05, 0.1, 0.2);
+
+        // When processing the image by the table
+        BufferedImage result = RgbLut.lattice(filter, 256).processor().apply(source);
+
+        // Then the pixels are the per-pixel processed colors
+        float[] hsb = new float[3];
+        for (int y = 0; y < source.getHeight(); y++) {
+            for (int x = 0; x < source.getWidth(); x++) {
+                assertThat(result.getRGB(x, y) & 0xffffff, equalTo(process(filter, source.getRGB(x, y), hsb)));
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+class RgbRasterTest {
+
+    /**
+     * Returns the image of a type with random opaque colors
+     *
+     * @param type   the image type
+     * @param width  the width
+     * @param height the height
+     * @param seed   the random seed
+     */
+    static BufferedImage random(int type, int width, int height, long seed) {
+        Random random = new Random(seed);
+        BufferedImage img = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, 0xff000000 | random.nextInt(0x1000000));
+            }
+        }
+        return img;
+    }
+
+    @Test
+    void grayTest() {
+        // Given a gray image
+        BufferedImage img = random(BufferedImage.TYPE_BYTE_GRAY, 11, 7, 5);
+
+        // When reading the pixels by the raster fallback
+        RgbRaster raster = RgbRaster.of(img);
+
+        // Then the single band is replicated to the 3 components
+        assertThat(raster.isDirect(), equalTo(false));
+        for (int y = 0; y < 7; y++) {
+            for (int x = 0; x < 11; x++) {
+                assertThat(raster.rgb(x, y), equalTo(img.getRaster().getSample(x, y, 0) * 0x010101));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "0, 0, 0, 0",
+            "255, 255, 255, 16777215",
+            "-10, 300, 12.9, 65292",
+            "255.9, -0.5, 1000, 16711935",
+            "18.7, 52.2, 86.99, 1193046"
+    })
+    void packTest(float r, float g, float b, int expected) {
+        // Given the float components out of range
+        // When packing
+        int rgb = RgbRaster.pack(r, g, b);
+
+        // Then the components are truncated and clipped to 0...255
+        assertThat(rgb, equalTo(expected));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, true",  // TYPE_INT_RGB
+            "2, true",  // TYPE_INT_ARGB
+            "5, true",  // TYPE_3BYTE_BGR
+            "4, false", // TYPE_INT_BGR
+            "6, false"  // TYPE_4BYTE_ABGR
+    })
+    void rgbTest(int type, boolean direct) {
+        // Given an image of the type with random colors
+        BufferedImage img = random(type, 13, 9, type);
+
+        // When reading the pixels
+        RgbRaster raster = RgbRaster.of(img);
+
+        // Then the direct access depends on the type and the pixels are the image colors
+        assertThat(raster.isDirect(), equalTo(direct));
+        assertThat(raster.width(), equalTo(13));
+        assertThat(raster.height(), equalTo(9));
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 13; x++) {
+                assertThat(raster.rgb(x, y), equalTo(img.getRGB(x, y) & 0xffffff));
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "1",
+            "2",
+            "5",
+            "4"
+    })
+    void subimageTest(int type) {
+        // Given a sub-image of an image with random colors (translated raster)
+        BufferedImage img = random(type, 17, 12, type + 10).getSubimage(3, 4, 9, 6);
+
+        // When reading the pixels
+        RgbRaster raster = RgbRaster.of(img);
+
+        // Then the pixels are the sub-image colors
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 9; x++) {
+                assertThat(raster.rgb(x, y), equalTo(img.getRGB(x, y) & 0xffffff));
+            }
+        }
+    }
+
+    @Test
+    void toBufferedImageTest() {
+        // Given an image with random colors
+        BufferedImage img = random(BufferedImage.TYPE_3BYTE_BGR, 10, 8, 3);
+
+        // When converting to planar and back
+        BufferedImage result = FloatImage.of(img).toBufferedImage();
+
+        // Then the colors are preserved
+        for (int y = 0; y < 8; y++) {
+            for (int x = 0; x < 10; x++) {
+                assertThat(result.getRGB(x, y), equalTo(img.getRGB(x, y)));
+            }
+        }
+    }
+}
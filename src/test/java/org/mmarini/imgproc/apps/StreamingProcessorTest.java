@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamingProcessorTest {
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Returns the png file of an image with random colors
+     *
+     * @param width  the width
+     * @param height the height
+     */
+    private File createInput(int width, int height) throws IOException {
+        Random random = new Random(1);
+        BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                img.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        File file = dir.resolve("input.png").toFile();
+        ImageIO.write(img, "png", file);
+        return file;
+    }
+
+    @Test
+    void incrementalFormatTest() throws IOException {
+        // Given a png image
+        File input = createInput(20, 15);
+        File output = dir.resolve("output.jpg").toFile();
+        StreamingProcessor processor = StreamingProcessor.create(3, 3, 4,
+                RegionProcessor.convolution(3, 3, ImageProcessors.smooth(1f / 9)));
+
+        // When processing to a format without incremental writing
+        IOException ex = assertThrows(IOException.class, () -> processor.process(input, output));
+
+        // Then the format is rejected without creating the output file
+        assertThat(ex.getMessage(), containsString("incremental"));
+        assertThat(output.exists(), equalTo(false));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "smooth, 5, 3, 4",
+            "smooth, 3, 5, 1",
+            "scalar, 5, 5, 6",
+            "gray, 3, 3, 7",
+            "smooth, 3, 3, 100",
+            "bank, 5, 5, 4",
+            "bank, 3, 3, 7"
+    })
+    void processTest(String name, int ww, int wh, int bandHeight) throws IOException {
+        // Given a png image and a kernel
+        File input = createInput(31, 27);
+        File output = dir.resolve("output.tif").toFile();
+        Kernel kernel = switch (name) {
+            case "smooth" -> ImageProcessors.smooth(1f / ww / wh);
+            case "scalar" -> Kernel.scalar(false, false, conv ->
+                    (conv.target.x + conv.target.y) % 4 == 0 ? 1f / ww / wh : 0.5f / ww / wh);
+            case "bank" -> LucriKernelBank.create(31, 27, ww, 1, 0.2, 0.5, 0.4, 1, 8);
+            default -> ImageProcessors.gray();
+        };
+
+        // When streaming to tiff by bands not dividing the output height
+        StreamingProcessor.create(ww, wh, bandHeight, RegionProcessor.convolution(ww, wh, kernel))
+                .process(input, output);
+
+        // Then the output is the eager convolution of the whole image
+        BufferedImage expected = PlanarProcessors.convolution(ww, wh, kernel)
+                .apply(FloatImage.of(ImageIO.read(input)))
+                .toBufferedImage();
+        BufferedImage result = ImageIO.read(output);
+        assertThat(StreamingProcessor.size(output), equalTo(new Dimension(31 - ww + 1, 27 - wh + 1)));
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertThat(result.getRGB(x, y), equalTo(expected.getRGB(x, y)));
+            }
+        }
+    }
+}
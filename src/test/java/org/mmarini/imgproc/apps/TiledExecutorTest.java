@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mmarini.imgproc.apps.TiledExecutor.TileCost;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class TiledExecutorTest {
+    private static final int PARALLELISM = 3;
+    private ForkJoinPool pool;
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(PARALLELISM);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "100, 70, 16, 16, false",
+            "97, 61, 10, 7, false",
+            "97, 61, 10, 7, true",
+            "5, 3, 16, 16, true",
+            "200, 150, 8, 8, true"
+    })
+    void executeTest(int width, int height, int tileWidth, int tileHeight, boolean foveated) {
+        // Given an executor with a uniform cost or a cost concentrated in the center
+        TileCost cost = foveated
+                ? (x0, y0, x1, y1) -> (double) (x1 - x0) * (y1 - y0)
+                / (1 + Math.abs((x0 + x1) / 2 - width / 2) + Math.abs((y0 + y1) / 2 - height / 2))
+                : TileCost.AREA;
+        TiledExecutor executor = TiledExecutor.create(pool, tileWidth, tileHeight).cost(cost);
+        AtomicIntegerArray hits = new AtomicIntegerArray(width * height);
+        ConcurrentLinkedQueue<List<int[]>> tasks = new ConcurrentLinkedQueue<>();
+
+        // When executing tasks recording the processed tiles
+        executor.execute(width, height, () -> {
+            List<int[]> tiles = new ArrayList<>();
+            tasks.add(tiles);
+            return (x0, y0, x1, y1) -> {
+                tiles.add(new int[]{x0, y0, x1, y1});
+                for (int y = y0; y < y1; y++) {
+                    for (int x = x0; x < x1; x++) {
+                        hits.incrementAndGet(y * width + x);
+                    }
+                }
+            };
+        });
+
+        // Then the tiles cover each pixel exactly once
+        for (int i = 0; i < width * height; i++) {
+            assertThat(hits.get(i), equalTo(1));
+        }
+        // And each task processes a single tile or tiles within the grain
+        double total = 0;
+        for (List<int[]> tiles : tasks) {
+            for (int[] t : tiles) {
+                assertThat(t[2] - t[0], allOf(greaterThan(0), lessThanOrEqualTo(tileWidth)));
+                assertThat(t[3] - t[1], allOf(greaterThan(0), lessThanOrEqualTo(tileHeight)));
+                total += cost.cost(t[0], t[1], t[2], t[3]);
+            }
+        }
+        double grain = total / PARALLELISM / 4;
+        for (List<int[]> tiles : tasks) {
+            assertThat(tiles, not(empty()));
+            double taskCost = tiles.stream().mapToDouble(t -> cost.cost(t[0], t[1], t[2], t[3])).sum();
+            if (tiles.size() > 1) {
+                assertThat(taskCost, lessThanOrEqualTo(grain * (1 + 1e-9)));
+            }
+        }
+    }
+}
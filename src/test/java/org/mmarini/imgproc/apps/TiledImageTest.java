@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2024 Marco Marini
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ *
+ */
+
+package org.mmarini.imgproc.apps;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.assertImage;
+import static org.mmarini.imgproc.apps.ConvolutionEngineTest.random;
+
+class TiledImageTest {
+
+    /**
+     * Returns the region processor counting the computed tiles
+     *
+     * @param ww      the window width
+     * @param wh      the window height
+     * @param counter the counter
+     */
+    static RegionProcessor counting(int ww, int wh, AtomicInteger counter) {
+        RegionProcessor processor = RegionProcessor.convolution(ww, wh, ImageProcessors.smooth(1f / ww / wh));
+        return (region, x, y) -> {
+            counter.incrementAndGet();
+            return processor.apply(region, x, y);
+        };
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "7, 4",
+            "16, 100",
+            "64, 1"
+    })
+    void bankTest(int tileSize, int cacheSize) {
+        // Given the tiled convolution by a kernel bank of the whole image
+        FloatImage source = random(41, 33, 5);
+        LucriKernelBank bank = LucriKernelBank.create(41, 33, 5, 1, 0.2, 0.5, 0.4, 1, 8);
+        TiledImage image = TiledImage.of(source).apply(5, 5, RegionProcessor.convolution(5, 5, bank), tileSize, cacheSize);
+
+        // When requesting the whole image and a region crossing the tiles
+        FloatImage whole = image.region(0, 0, 37, 29);
+        FloatImage region = image.region(3, 9, 20, 17);
+
+        // Then the result is the eager convolution of the whole image
+        FloatImage expected = PlanarProcessors.convolution(5, 5, bank).apply(source);
+        assertImage(whole, expected, 0);
+        assertImage(region, expected.view(3, 9, 20, 17), 0);
+    }
+
+    @Test
+    void cacheTest() {
+        // Given a stage of 6 x 5 tiles with a cache of 8 tiles
+        AtomicInteger counter = new AtomicInteger();
+        TiledImage image = TiledImage.of(random(32, 27, 1)).apply(3, 3, counting(3, 3, counter), 5, 8);
+
+        // When requesting the whole image
+        image.region(0, 0, 30, 25);
+
+        // Then each tile is computed once and the cache is bounded
+        assertThat(counter.get(), equalTo(30));
+        assertThat(image.cachedTiles(), equalTo(8));
+
+        // When requesting again a region of the last 2 tiles computed
+        image.region(21, 21, 9, 4);
+
+        // Then the tiles are reused
+        assertThat(counter.get(), equalTo(30));
+
+        // When requesting a region of evicted tiles
+        image.region(0, 0, 6, 6);
+
+        // Then the 4 tiles are computed again
+        assertThat(counter.get(), equalTo(34));
+        assertThat(image.cachedTiles(), equalTo(8));
+    }
+
+    @Test
+    void concurrentTest() throws InterruptedException, ExecutionException, TimeoutException {
+        // Given a stage whose tiles wait for another tile in computation
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        RegionProcessor smooth = RegionProcessor.convolution(3, 3, ImageProcessors.smooth(1f / 9));
+        TiledImage image = TiledImage.of(random(22, 12, 2)).apply(3, 3, (region, x, y) -> {
+            try {
+                barrier.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException ex) {
+                throw new IllegalStateException("Tiles not computed in parallel", ex);
+            }
+            return smooth.apply(region, x, y);
+        }, 10, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // When requesting 2 different tiles from 2 threads
+            Future<FloatImage> left = executor.submit(() -> image.region(0, 0, 10, 10));
+            Future<FloatImage> right = executor.submit(() -> image.region(10, 0, 10, 10));
+
+            // Then the tiles are computed in parallel
+            assertThat(left.get(10, TimeUnit.SECONDS).width(), equalTo(10));
+            assertThat(right.get(10, TimeUnit.SECONDS).width(), equalTo(10));
+            assertThat(image.cachedTiles(), equalTo(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidTest() {
+        // Given a tiled image
+        TiledImage image = TiledImage.of(random(10, 8, 3));
+
+        // When ...
+        // Then the invalid stages and regions are rejected
+        assertThrows(IllegalArgumentException.class, () -> image.apply(11, 3, counting(11, 3, new AtomicInteger())));
+        assertThrows(IllegalArgumentException.class, () -> image.apply(3, 3, counting(3, 3, new AtomicInteger()), 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> image.region(5, 5, 6, 2));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "1, 1",
+            "7, 3",
+            "5, 100",
+            "64, 2",
+            "13, 1"
+    })
+    void regionTest(int tileSize, int cacheSize) {
+        // Given a chain of a shift-invariant and a position dependent stage
+        FloatImage source = random(41, 33, 4);
+        Kernel kernel = Kernel.scalar(false, false, conv ->
+                (conv.target.x * 3 + conv.target.y + conv.source.x) % 5 / 20f);
+        TiledImage image = TiledImage.of(source)
+                .apply(3, 3, RegionProcessor.convolution(3, 3, ImageProcessors.smooth(1f / 9)), tileSize, cacheSize)
+                .apply(5, 3, RegionProcessor.convolution(5, 3, kernel), tileSize, cacheSize);
+        FloatImage expected = PlanarProcessors.convolution(5, 3, kernel)
+                .apply(PlanarProcessors.convolution(3, 3, ImageProcessors.smooth(1f / 9)).apply(source));
+
+        // When requesting the whole image and a region crossing the tiles
+        FloatImage whole = image.region(0, 0, 35, 29);
+        FloatImage region = image.region(6, 4, 20, 17);
+
+        // Then the result is the eager processing of the whole image
+        assertThat(image.width(), equalTo(35));
+        assertThat(image.height(), equalTo(29));
+        assertImage(whole, expected, 1e-5);
+        assertImage(region, expected.view(6, 4, 20, 17), 1e-5);
+        assertThat(image.cachedTiles(), lessThanOrEqualTo(cacheSize));
+    }
+}
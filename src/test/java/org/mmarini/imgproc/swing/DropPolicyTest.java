@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+
+class DropPolicyTest {
+
+    @ParameterizedTest
+    @CsvSource({
+            "DROP_OLDEST, a, b c",
+            "DROP_NEWEST, c, a b"
+    })
+    void fullQueueTest(String policy, String expectedDropped, String expectedQueue) throws InterruptedException {
+        // Given a full queue
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(2);
+        queue.add("a");
+        queue.add("b");
+
+        // When putting a new element
+        String dropped = DropPolicy.valueOf(policy).put(queue, "c");
+
+        // Then the policy drops the oldest or the new element
+        assertThat(dropped, equalTo(expectedDropped));
+        assertThat(List.copyOf(queue), equalTo(List.of(expectedQueue.split(" "))));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "BLOCK",
+            "DROP_OLDEST",
+            "DROP_NEWEST"
+    })
+    void roomTest(String policy) throws InterruptedException {
+        // Given a queue with room
+        BlockingQueue<String> queue = new ArrayBlockingQueue<>(2);
+        queue.add("a");
+
+        // When putting a new element
+        String dropped = DropPolicy.valueOf(policy).put(queue, "b");
+
+        // Then no element is dropped
+        assertThat(dropped, nullValue());
+        assertThat(List.copyOf(queue), equalTo(List.of("a", "b")));
+    }
+}
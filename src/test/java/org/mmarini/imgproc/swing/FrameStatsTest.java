@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+class FrameStatsTest {
+
+    @Test
+    void addTest() throws InterruptedException {
+        // Given stats
+        FrameStats stats = new FrameStats();
+
+        // When adding two frames decoded 20 ms and 10 ms before
+        stats.add(System.nanoTime() - 20_000_000L);
+        Thread.sleep(10);
+        stats.add(System.nanoTime() - 10_000_000L);
+
+        // Then the latencies and the throughput are computed
+        assertThat(stats.frames(), equalTo(2L));
+        assertThat(stats.maxLatency(), greaterThanOrEqualTo(20d));
+        assertThat(stats.meanLatency(), greaterThanOrEqualTo(15d));
+        assertThat(stats.throughput(), greaterThan(0d));
+    }
+
+    @Test
+    void emptyTest() {
+        // Given empty stats
+        FrameStats stats = new FrameStats();
+
+        // When ...
+        // Then the statistics are zero
+        assertThat(stats.frames(), equalTo(0L));
+        assertThat(stats.meanLatency(), equalTo(0d));
+        assertThat(stats.maxLatency(), equalTo(0d));
+        assertThat(stats.throughput(), equalTo(0d));
+    }
+}
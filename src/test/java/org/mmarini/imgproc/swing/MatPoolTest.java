@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+
+package org.mmarini.imgproc.swing;
+
+import org.junit.jupiter.api.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class MatPoolTest {
+
+    /*
+     * Loads openCV native libraries
+     */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @Test
+    void acquireTest() {
+        // Given a pool with a released matrix
+        MatPool pool = new MatPool();
+        Mat mat = pool.acquire();
+        mat.create(4, 3, CvType.CV_8UC3);
+        pool.release(mat);
+
+        // When acquiring a matrix
+        Mat result = pool.acquire();
+
+        // Then the released matrix is reused
+        assertThat(result, sameInstance(mat));
+        assertThat(pool.idleMats(), equalTo(0));
+        assertThat(pool.liveMats(), equalTo(1));
+        assertThat(pool.liveBytes(), equalTo(36L));
+        pool.release(result);
+        pool.close();
+    }
+
+    @Test
+    void duplicateReleaseTest() {
+        // Given a pool with a matrix released twice
+        MatPool pool = new MatPool();
+        Mat mat = pool.acquire();
+        pool.release(mat);
+        pool.release(mat);
+
+        // When acquiring two matrices
+        Mat first = pool.acquire();
+        Mat second = pool.acquire();
+
+        // Then the matrix is idle once
+        assertThat(first, sameInstance(mat));
+        assertThat(second, not(sameInstance(mat)));
+        pool.release(first);
+        pool.release(second);
+        pool.close();
+    }
+
+    @Test
+    void foreignTest() {
+        // Given a pool and a matrix cached by a frame processor
+        MatPool pool = new MatPool();
+        Mat cached = new Mat(2, 2, CvType.CV_8UC1);
+
+        // When releasing the matrix every frame and a null matrix
+        for (int i = 0; i < 3; i++) {
+            pool.release(cached);
+        }
+        pool.release(null);
+
+        // Then the matrices are ignored and not reused
+        assertThat(pool.idleMats(), equalTo(0));
+        assertThat(pool.liveMats(), equalTo(0));
+        assertThat(pool.acquire(), not(sameInstance(cached)));
+        assertThat(cached.empty(), equalTo(false));
+        pool.close();
+    }
+
+    @Test
+    void maxIdleTest() {
+        // Given a pool of 1 idle matrix
+        MatPool pool = new MatPool(1);
+        Mat mat1 = pool.acquire();
+        Mat mat2 = pool.acquire();
+        mat1.create(2, 2, CvType.CV_8UC1);
+        mat2.create(2, 2, CvType.CV_8UC1);
+
+        // When releasing 2 matrices
+        pool.release(mat1);
+        pool.release(mat2);
+
+        // Then the matrix exceeding the limit frees its native memory
+        assertThat(pool.idleMats(), equalTo(1));
+        assertThat(mat1.empty(), equalTo(false));
+        assertThat(mat2.empty(), equalTo(true));
+        pool.close();
+        assertThat(pool.idleMats(), equalTo(0));
+        assertThat(mat1.empty(), equalTo(true));
+    }
+
+    @Test
+    void scopeTest() {
+        // Given a pool and a scope with 2 matrices
+        MatPool pool = new MatPool();
+        Mat kept;
+        try (MatPool.Scope scope = pool.scope()) {
+            scope.acquire();
+            scope.add(new Mat());
+            kept = scope.keep(scope.acquire());
+        }
+
+        // When ...
+        // Then the matrices not kept are released at the close
+        assertThat(pool.idleMats(), equalTo(2));
+        assertThat(pool.liveMats(), equalTo(3));
+        pool.release(kept);
+        assertThat(pool.idleMats(), equalTo(3));
+        pool.close();
+    }
+
+    @Test
+    void trackTest() {
+        // Given a pool tracking a matrix created outside the pool
+        MatPool pool = new MatPool();
+        Mat mat = pool.track(new Mat());
+
+        // When releasing the matrix and tracking it again while idle
+        pool.release(mat);
+        pool.track(mat);
+
+        // Then the matrix is owned once
+        assertThat(pool.idleMats(), equalTo(0));
+        assertThat(pool.liveMats(), equalTo(1));
+        pool.release(mat);
+        assertThat(pool.idleMats(), equalTo(1));
+        pool.close();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+class PlaybackClockTest {
+
+    @Test
+    void dueTest() {
+        // Given a clock
+        PlaybackClock clock = PlaybackClock.create(25);
+        long before = System.nanoTime();
+
+        // When computing the due times of the frames
+        long due0 = clock.due(1_000_000_000L);
+        long after = System.nanoTime();
+        long due1 = clock.due(1_040_000_000L);
+
+        // Then the first frame starts the clock and the next ones are due after their timestamp difference
+        assertThat(due0, greaterThanOrEqualTo(before));
+        assertThat(due0, lessThanOrEqualTo(after));
+        assertThat(due1 - due0, equalTo(40_000_000L));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "25, 40000000",
+            "0, 33333333",
+            "-1, 33333333"
+    })
+    void framePeriodTest(double fps, long expected) {
+        // Given a clock of a frame rate
+        PlaybackClock clock = PlaybackClock.create(fps);
+
+        // When ...
+        // Then the frame period is the inverse of the frame rate or of the default one
+        assertThat(clock.framePeriod(), equalTo(expected));
+    }
+
+    @Test
+    void nextTest() {
+        // Given a clock
+        PlaybackClock clock = PlaybackClock.create(25);
+
+        // When computing the timestamps of increasing, repeated and decreasing source timestamps
+        long t0 = clock.next(0);
+        long t1 = clock.next(0);
+        long t2 = clock.next(120);
+        long t3 = clock.next(-1);
+        long t4 = clock.next(200);
+
+        // Then the timestamps not increasing are replaced by the last timestamp plus the frame period
+        assertThat(t0, equalTo(0L));
+        assertThat(t1, equalTo(40_000_000L));
+        assertThat(t2, equalTo(120_000_000L));
+        assertThat(t3, equalTo(160_000_000L));
+        assertThat(t4, equalTo(200_000_000L));
+    }
+
+    @Test
+    void resyncTest() {
+        // Given a started clock
+        PlaybackClock clock = PlaybackClock.create(25);
+        clock.due(0);
+
+        // When resynchronizing at a later frame
+        long before = System.nanoTime();
+        clock.resync(4_000_000_000L);
+        long after = System.nanoTime();
+
+        // Then the frame is due now
+        long due = clock.due(4_000_000_000L);
+        assertThat(due, greaterThanOrEqualTo(before));
+        assertThat(due, lessThanOrEqualTo(after));
+        assertThat(clock.due(4_040_000_000L) - due, equalTo(40_000_000L));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+
+package org.mmarini.imgproc.swing;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReorderBufferTest {
+
+    @Test
+    void drainTest() throws InterruptedException {
+        // Given a buffer with elements waiting for a missing sequence number
+        ReorderBuffer<String> buffer = new ReorderBuffer<>();
+        buffer.put(0, "a");
+        buffer.put(2, "c");
+        buffer.take();
+
+        // When draining
+        List<String> drained = buffer.drain();
+
+        // Then the pending elements are returned and removed
+        assertThat(drained, equalTo(List.of("c")));
+        assertThat(buffer.pendingSize(), equalTo(0));
+    }
+
+    @Test
+    void duplicateTest() throws InterruptedException {
+        // Given a buffer with the sequence number 0 put and 1 put and taken
+        ReorderBuffer<String> buffer = new ReorderBuffer<>();
+        buffer.put(1, "b");
+        buffer.put(0, "a");
+        buffer.take();
+
+        // When ...
+        // Then the pending and the taken sequence numbers are rejected
+        assertThrows(IllegalArgumentException.class, () -> buffer.put(1, "x"));
+        assertThrows(IllegalArgumentException.class, () -> buffer.put(0, "x"));
+        assertThat(buffer.take(), equalTo("b"));
+    }
+
+    @Test
+    void takeTest() throws InterruptedException {
+        // Given a buffer with the elements put out of order
+        ReorderBuffer<String> buffer = new ReorderBuffer<>();
+        buffer.put(2, "c");
+        buffer.put(1, "b");
+        assertThat(buffer.pendingSize(), equalTo(2));
+        buffer.put(3, "d");
+        buffer.put(0, "a");
+
+        // When taking the elements
+        String e0 = buffer.take();
+        String e1 = buffer.take();
+        String e2 = buffer.take();
+        String e3 = buffer.take();
+
+        // Then the elements are returned in sequence order
+        assertThat(List.of(e0, e1, e2, e3), equalTo(List.of("a", "b", "c", "d")));
+        assertThat(buffer.pendingSize(), equalTo(0));
+    }
+
+    @Test
+    void takeWaitTest() throws InterruptedException {
+        // Given a buffer with a later element and a thread putting the next one
+        ReorderBuffer<String> buffer = new ReorderBuffer<>();
+        buffer.put(1, "b");
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            buffer.put(0, "a");
+        });
+        producer.start();
+
+        // When taking the next element
+        String e0 = buffer.take();
+        producer.join();
+
+        // Then the take waits for the missing sequence number
+        assertThat(e0, equalTo("a"));
+        assertThat(buffer.take(), equalTo("b"));
+    }
+}
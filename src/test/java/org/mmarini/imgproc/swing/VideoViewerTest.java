@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2024 Marco Marini, marco.marini@mmarini.org
+ *
+ *  Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.imgproc.swing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.*;
+import org.opencv.videoio.VideoWriter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class VideoViewerTest {
+    private static final int WIDTH = 64;
+    private static final int HEIGHT = 48;
+    private static final int FRAMES = 40;
+    private static final long TIMEOUT = 10000;
+    /**
+     * Upper bound of the pooled matrices: the frames in flight in the pipeline and the idle ones
+     */
+    private static final int MAX_MATS = MatPool.DEFAULT_MAX_IDLE + 4 * VideoViewer.DEFAULT_QUEUE_DEPTH;
+
+    /*
+     * Loads openCV native libraries
+     */
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @TempDir
+    Path dir;
+
+    /**
+     * Plays the video until all the frames are rendered and released
+     *
+     * @param viewer the viewer
+     * @param file   the video file
+     */
+    static void play(VideoViewer viewer, String file) throws InterruptedException {
+        viewer.open(file);
+        MatPool pool = viewer.getMatPool();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (viewer.getStats().frames() < FRAMES || pool.liveMats() != pool.idleMats()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Video not played: " + viewer.getStats());
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    void cachedOutputTest() throws InterruptedException {
+        // Given a viewer with a processor caching its output
+        String file = video();
+        VideoViewer viewer = new VideoViewer();
+        MatPool pool = viewer.getMatPool();
+        Mat cache = new Mat();
+        AtomicInteger maxMats = new AtomicInteger();
+        viewer.setFrameProcessor(mat -> {
+            maxMats.accumulateAndGet(pool.liveMats(), Math::max);
+            Core.bitwise_not(mat, cache);
+            return cache;
+        }, true);
+
+        // When playing the video
+        play(viewer, file);
+        viewer.close();
+
+        // Then the cached output is neither released nor reused by the pool
+        assertThat(viewer.isCachedOutput(), equalTo(true));
+        assertThat(cache.empty(), equalTo(false));
+        assertThat(cache.size(), equalTo(new Size(WIDTH, HEIGHT)));
+        // And the gauges stay flat
+        assertThat(maxMats.get(), lessThanOrEqualTo(MAX_MATS));
+        cache.release();
+    }
+
+    @Test
+    void newOutputTest() throws InterruptedException {
+        // Given a viewer with a processor allocating a new output for each frame
+        String file = video();
+        VideoViewer viewer = new VideoViewer();
+        MatPool pool = viewer.getMatPool();
+        List<Mat> outputs = new ArrayList<>();
+        AtomicInteger maxMats = new AtomicInteger();
+        viewer.setFrameProcessor(mat -> {
+            maxMats.accumulateAndGet(pool.liveMats(), Math::max);
+            Mat result = new Mat();
+            Core.bitwise_not(mat, result);
+            synchronized (outputs) {
+                outputs.add(result);
+            }
+            return result;
+        });
+
+        // When playing the video
+        play(viewer, file);
+
+        // Then the gauges stay flat
+        assertThat(viewer.isCachedOutput(), equalTo(false));
+        assertThat(maxMats.get(), lessThanOrEqualTo(MAX_MATS));
+        assertThat(pool.liveBytes(), lessThanOrEqualTo((long) MAX_MATS * WIDTH * HEIGHT * 3));
+        // And the outputs not yet released are reported by the gauges
+        assertThat(outputs, hasSize(FRAMES));
+        long retained = outputs.stream().filter(m -> !m.empty()).count();
+        assertThat(retained, lessThanOrEqualTo((long) pool.liveMats()));
+
+        // When closing the viewer
+        viewer.close();
+
+        // Then the native memory of all the outputs is released
+        for (Mat output : outputs) {
+            assertThat(output.empty(), equalTo(true));
+        }
+    }
+
+    /**
+     * Returns the path of a motion jpeg test video
+     */
+    String video() {
+        String file = dir.resolve("test.avi").toString();
+        VideoWriter writer = new VideoWriter(file, VideoWriter.fourcc('M', 'J', 'P', 'G'), 100, new Size(WIDTH, HEIGHT), true);
+        assertThat(writer.isOpened(), equalTo(true));
+        Mat frame = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3);
+        for (int i = 0; i < FRAMES; i++) {
+            frame.setTo(new Scalar(i * 5, 128, 255 - i * 5));
+            writer.write(frame);
+        }
+        frame.release();
+        writer.release();
+        return file;
+    }
+}